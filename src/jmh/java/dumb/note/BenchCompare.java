@@ -0,0 +1,69 @@
+package dumb.note;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class BenchCompare {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchCompare <baseline.json> <result.json> [tolerancePercent]");
+            System.exit(2);
+        }
+        var baseline = Path.of(args[0]);
+        var current = Path.of(args[1]);
+        var tolerance = args.length > 2 ? Double.parseDouble(args[2]) / 100 : 0.10;
+        if (!Files.exists(baseline)) {
+            Files.createDirectories(baseline.toAbsolutePath().getParent());
+            Files.copy(current, baseline, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("No baseline at " + baseline + "; published " + current + " as the baseline.");
+            return;
+        }
+        var json = new ObjectMapper();
+        var before = scores(json.readTree(baseline.toFile()));
+        var after = scores(json.readTree(current.toFile()));
+        var regressions = 0;
+        System.out.printf("%-70s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (var e : after.entrySet()) {
+            var now = e.getValue();
+            var was = before.get(e.getKey());
+            if (was == null) {
+                System.out.printf("%-70s %14s %14s %9s%n", e.getKey(), "-", now.format(), "new");
+                continue;
+            }
+            var change = now.higherIsBetter ? (was.score - now.score) / was.score : (now.score - was.score) / was.score;
+            var regressed = change > tolerance && Math.abs(now.score - was.score) > now.error + was.error;
+            if (regressed) regressions++;
+            System.out.printf("%-70s %14s %14s %+8.1f%%%s%n", e.getKey(), was.format(), now.format(), change * 100, regressed ? "  REGRESSION" : "");
+        }
+        before.keySet().stream().filter(k -> !after.containsKey(k)).forEach(k -> System.out.printf("%-70s %14s %14s %9s%n", k, before.get(k).format(), "-", "missing"));
+        System.out.printf("%d regression(s) beyond %.0f%% against %s.%n", regressions, tolerance * 100, baseline);
+        if (regressions > 0) System.exit(1);
+    }
+
+    private static Map<String, Score> scores(JsonNode results) {
+        var m = new TreeMap<String, Score>();
+        for (var r : results) {
+            var key = new StringBuilder(r.path("benchmark").asText().replaceFirst("^dumb\\.note\\.", ""));
+            var params = new TreeMap<String, String>();
+            r.path("params").properties().forEach(p -> params.put(p.getKey(), p.getValue().asText()));
+            if (!params.isEmpty()) key.append(params);
+            var pm = r.path("primaryMetric");
+            var error = pm.path("scoreError").asDouble(0);
+            m.put(key.toString(), new Score(pm.path("score").asDouble(), Double.isNaN(error) ? 0 : error, pm.path("scoreUnit").asText(), "thrpt".equals(r.path("mode").asText())));
+        }
+        return m;
+    }
+
+    private record Score(double score, double error, String unit, boolean higherIsBetter) {
+        String format() {
+            return String.format("%.3f %s", score, unit);
+        }
+    }
+}
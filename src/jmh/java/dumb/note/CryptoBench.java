@@ -0,0 +1,52 @@
+package dumb.note;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CryptoBench {
+    private final byte[] aux = new byte[32];
+    private byte[] secret, publicKey, eventId, signature;
+    private String npub;
+
+    @Setup
+    public void setup() throws Exception {
+        var r = new Random(5);
+        secret = Crypto.generatePrivateKey();
+        publicKey = Crypto.getPublicKeyXOnly(secret);
+        eventId = Crypto.hexToBytes(Fixtures.hex(r, 32));
+        r.nextBytes(aux);
+        signature = Crypto.Schnorr.sign(eventId, secret, aux);
+        npub = Crypto.Bech32.nip19Encode("npub", publicKey);
+    }
+
+    @Benchmark
+    public byte[] sign() throws NoSuchAlgorithmException {
+        return Crypto.Schnorr.sign(eventId, secret, aux);
+    }
+
+    @Benchmark
+    public boolean verify() throws NoSuchAlgorithmException {
+        return Crypto.Schnorr.verify(eventId, publicKey, signature);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String bech32Encode() throws Exception {
+        return Crypto.Bech32.nip19Encode("npub", publicKey);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public byte[] bech32Decode() throws Exception {
+        return Crypto.Bech32.nip19Decode(npub);
+    }
+}
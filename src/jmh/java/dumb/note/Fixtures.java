@@ -0,0 +1,70 @@
+package dumb.note;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.util.*;
+
+import static dumb.note.Netention.*;
+
+final class Fixtures {
+    private static final String[] WORDS = ("plan goal note relay contact meeting draft review summary agent search " +
+            "schedule follow up idea project budget travel research reading list weekly report question answer").split(" ");
+    private static final String[] TAGS = {"work", "personal", "ideas", "reading", "project-x", "travel", "#urgent"};
+    private static final String[] SYSTEM_TAGS = {SystemTag.NOSTR_FEED.value, SystemTag.SYSTEM_EVENT.value, SystemTag.CHAT.value, SystemTag.GOAL_WITH_PLAN.value, SystemTag.CONTACT.value};
+
+    private Fixtures() {
+    }
+
+    static String text(Random r, int words) {
+        var sb = new StringBuilder(words * 8);
+        for (var i = 0; i < words; i++) {
+            if (i > 0) sb.append(i % 40 == 0 ? "\n\n" : " ");
+            sb.append(WORDS[r.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    static float[] embedding(Random r, int dims) {
+        var v = new float[dims];
+        var norm = 0.0;
+        for (var i = 0; i < dims; i++) norm += (v[i] = (float) r.nextGaussian()) * v[i];
+        var inv = (float) (1 / Math.sqrt(norm));
+        for (var i = 0; i < dims; i++) v[i] *= inv;
+        return v;
+    }
+
+    static Note note(Random r, int dims) {
+        var n = new Note(text(r, 4 + r.nextInt(6)), text(r, 120 + r.nextInt(160)));
+        n.tags.add(TAGS[r.nextInt(TAGS.length)]);
+        if (r.nextBoolean()) n.tags.add(TAGS[r.nextInt(TAGS.length)]);
+        if (r.nextInt(4) == 0) n.tags.add(SYSTEM_TAGS[r.nextInt(SYSTEM_TAGS.length)]);
+        n.meta.put(Metadata.NOSTR_PUB_KEY_HEX.key, hex(r, 32));
+        if (dims > 0) n.embeddingV1 = embedding(r, dims);
+        return n;
+    }
+
+    static List<Note> notes(long seed, int count, int dims) {
+        var r = new Random(seed);
+        var l = new ArrayList<Note>(count);
+        for (var i = 0; i < count; i++) l.add(note(r, dims));
+        return l;
+    }
+
+    static String eventFrame(Random r, int kind, int words) throws JsonProcessingException {
+        var e = new LinkedHashMap<String, Object>();
+        e.put("id", hex(r, 32));
+        e.put("pubkey", hex(r, 32));
+        e.put("created_at", 1_700_000_000L + r.nextInt(10_000_000));
+        e.put("kind", kind);
+        e.put("tags", List.of(List.of("p", hex(r, 32)), List.of("e", hex(r, 32), "", "reply")));
+        e.put("content", text(r, words));
+        e.put("sig", hex(r, 64));
+        return Nostr.NostrUtil.toJson(List.of("EVENT", "netention_kind" + kind, e));
+    }
+
+    static String hex(Random r, int bytes) {
+        var b = new byte[bytes];
+        r.nextBytes(b);
+        return Crypto.bytesToHex(b);
+    }
+}
@@ -0,0 +1,97 @@
+package dumb.note;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class LMBench {
+    private static final Vectors.Kernel SCALAR = new Vectors.Scalar();
+    @Param({"384", "768", "1024"})
+    public int dims;
+    @Param({"10000"})
+    public int corpus;
+    private float[] a, b, query, matrix, scores;
+    private float[][] vectors;
+    private final Embeddings index = new Embeddings();
+
+    @Setup
+    public void setup() {
+        var r = new Random(3);
+        a = Fixtures.embedding(r, dims);
+        b = Fixtures.embedding(r, dims);
+        query = Vectors.normalized(a);
+        vectors = new float[corpus][];
+        matrix = new float[corpus * dims];
+        scores = new float[corpus];
+        for (var i = 0; i < corpus; i++) {
+            vectors[i] = Fixtures.embedding(r, dims);
+            System.arraycopy(Vectors.normalized(vectors[i]), 0, matrix, i * dims, dims);
+            index.put("n" + i, vectors[i]);
+        }
+    }
+
+    private static double legacy(float[] vA, float[] vB) {
+        double dotProduct = 0.0, normA = 0.0, normB = 0.0;
+        for (var i = 0; i < vA.length; i++) {
+            dotProduct += vA[i] * vB[i];
+            normA += vA[i] * vA[i];
+            normB += vB[i] * vB[i];
+        }
+        return (normA == 0 || normB == 0) ? 0.0 : dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    @Benchmark
+    public double legacyCosine() {
+        return legacy(a, b);
+    }
+
+    @Benchmark
+    public double scalarCosine() {
+        return SCALAR.cosine(a, b);
+    }
+
+    @Benchmark
+    public double cosine() {
+        return LM.cosineSimilarity(a, b);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Integer> legacySearch() {
+        return IntStream.range(0, corpus).boxed().map(i -> new AbstractMap.SimpleEntry<>(i, legacy(a, vectors[i])))
+                .filter(e -> e.getValue() >= 0.0).sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
+                .limit(5).map(Map.Entry::getKey).toList();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int[] scalarSearch() {
+        for (int r = 0, off = 0; r < corpus; r++, off += dims) scores[r] = SCALAR.dot(query, matrix, off, dims);
+        return Vectors.topK(scores, corpus, 5, 0f, i -> true);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int[] search() {
+        Vectors.scores(query, matrix, corpus, scores);
+        return Vectors.topK(scores, corpus, 5, 0f, i -> true);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void indexSearch(Blackhole bh) {
+        bh.consume(index.search(a, 5, 0f, id -> true));
+    }
+}
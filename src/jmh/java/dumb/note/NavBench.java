@@ -0,0 +1,39 @@
+package dumb.note;
+
+import dumb.note.ui.UI;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static dumb.note.Netention.Note;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NavBench {
+    @Param({"5000"})
+    public int notes;
+    @Param({"", "weekly rep"})
+    public String search;
+    private List<Note> all;
+
+    @Setup
+    public void setup() {
+        all = Fixtures.notes(11, notes, 0);
+    }
+
+    @Benchmark
+    public List<Note> filter() {
+        return all.stream().filter(UI.NavPanel.filter(UI.NavPanel.View.NOTES, Set.of(), search)).toList();
+    }
+
+    @Benchmark
+    public List<Note> filterByTag() {
+        return all.stream().filter(UI.NavPanel.filter(UI.NavPanel.View.NOTES, Set.of("work"), search)).toList();
+    }
+}
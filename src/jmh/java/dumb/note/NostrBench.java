@@ -0,0 +1,37 @@
+package dumb.note;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NostrBench {
+    private static final TypeReference<List<Object>> FRAME = new TypeReference<>() {
+    };
+    @Param({"1", "4"})
+    public int kind;
+    @Param({"40", "400"})
+    public int words;
+    private String frame;
+
+    @Setup
+    public void setup() throws Exception {
+        frame = Fixtures.eventFrame(new Random(7), kind, words);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Nostr.NostrEvent parseFrame() throws Exception {
+        var m = Nostr.NostrUtil.fromJson(frame, FRAME);
+        return Nostr.mapToNostrEvent((Map<String, Object>) m.get(2));
+    }
+}
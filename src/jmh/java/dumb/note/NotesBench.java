@@ -0,0 +1,59 @@
+package dumb.note;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static dumb.note.Netention.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotesBench {
+    @Param({"1000"})
+    public int notes;
+    @Param({"768"})
+    public int dims;
+    private Path dir;
+    private Notes store;
+    private List<Note> edits;
+    private int i;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("netention-bench-notes");
+        store = new Notes(dir);
+        Fixtures.notes(1, notes, dims).forEach(n -> store.save(n, false));
+        edits = store.getAll(n -> true).stream().limit(64).map(store::copy).toList();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var ps = Files.walk(dir)) {
+            ps.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Note save() {
+        var n = edits.get(i++ & 63);
+        n.setText(Fixtures.text(new Random(i), 200));
+        return store.save(n, false);
+    }
+
+    @Benchmark
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    public Notes load() {
+        return new Notes(dir);
+    }
+}
@@ -0,0 +1,86 @@
+package dumb.note;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static dumb.note.Netention.*;
+import static dumb.note.Netention.Planner.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlannerBench {
+    private final ObjectMapper json = Core.createObjectMapper();
+    private final Plans plans = new Plans();
+    private final Map<String, Object> payload = Map.of("id", "e1", "pubkey", "abcd", "content", "hello", "created_at", 1700000000L);
+    private Note handler;
+    private Planner planner;
+    private PlanExecution resolved;
+
+    @Setup
+    public void setup() throws IOException {
+        handler = new Note("bench handler", "");
+        handler.content.put(ContentKey.PLAN_STEPS.getKey(), List.of(
+                step("s0_get_payload", Core.Tool.GET_NOTE_PROPERTY, Map.of(ToolParam.NOTE_ID.getKey(), "$trigger.sourceEventNoteId", ToolParam.PROPERTY_PATH.getKey(), "content.payload")),
+                step("s1_check_exists", Core.Tool.GET_NOTE_PROPERTY, Map.of(ToolParam.NOTE_ID.getKey(), "$s0_get_payload.result.id", ToolParam.PROPERTY_PATH.getKey(), "id", ToolParam.FAIL_IF_NOT_FOUND.getKey(), false), "s0_get_payload"),
+                step("s2_create", Core.Tool.CREATE_NOTE, Map.of(ToolParam.TITLE.getKey(), "$s0_get_payload.result.content", ToolParam.TEXT.getKey(), "$s0_get_payload.result.content", ToolParam.METADATA.getKey(), Map.of("pubkey", "$s0_get_payload.result.pubkey")), "s1_check_exists"),
+                step("s3_mark_processed", Core.Tool.MODIFY_NOTE_CONTENT, Map.of(ToolParam.NOTE_ID.getKey(), "$trigger.sourceEventNoteId", ToolParam.CONTENT_UPDATE.getKey(), Map.of(ContentKey.STATUS.getKey(), "PROCESSED")), "s2_create")));
+        planner = new Planner(null, Files.createTempDirectory("netention-bench-plans"));
+        resolved = execution();
+        var s0 = new PlanStep("s0_get_payload");
+        s0.status = PlanStepState.COMPLETED;
+        s0.result = Map.of("id", "e1", "pubkey", "abcd", "content", "hello", "tags", List.of(List.of("p", "abcd")), "profile", Map.of("name", "alice", "about", "x"));
+        resolved.steps.add(s0);
+    }
+
+    private static Map<String, Object> step(String id, Core.Tool tool, Map<String, Object> params, String... dependsOn) {
+        return Map.of(PlanStepKey.ID.getKey(), id, PlanStepKey.TOOL_NAME.getKey(), tool.name(), PlanStepKey.TOOL_PARAMS.getKey(), params, PlanStepKey.DEPENDS_ON_STEP_IDS.getKey(), List.of(dependsOn));
+    }
+
+    private PlanExecution execution() {
+        return new PlanExecution(handler.id, Map.of("trigger", Map.of("sourceEventNoteId", "event_1")));
+    }
+
+    private void complete(PlanExecution exec, PlanStep s, Map<String, Object> params, Blackhole bh) {
+        bh.consume(params);
+        s.result = payload;
+        s.status = PlanStepState.COMPLETED;
+        exec.context.put(s.id + ".result", s.result);
+    }
+
+    @Benchmark
+    public Object resolveStepPath() {
+        return planner.resolveContextValue("$s0_get_payload.result.profile.name", resolved);
+    }
+
+    @Benchmark
+    public Object resolveTrigger() {
+        return planner.resolveContextValue("$trigger.sourceEventNoteId", resolved);
+    }
+
+    @Benchmark
+    public void uncompiled(Blackhole bh) {
+        var exec = execution();
+        for (var raw : (List<?>) handler.content.get(ContentKey.PLAN_STEPS.getKey()))
+            exec.steps.add(json.convertValue(raw, PlanStep.class));
+        for (var s : exec.steps)
+            complete(exec, s, Plans.Binding.of(s.toolName, s.toolParams).resolve(exec), bh);
+    }
+
+    @Benchmark
+    public void compiled(Blackhole bh) {
+        var exec = execution();
+        exec.steps.addAll(plans.template(handler).instantiate());
+        for (var s : exec.steps)
+            complete(exec, s, s.binding.resolve(exec), bh);
+    }
+}
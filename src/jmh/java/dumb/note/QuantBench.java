@@ -0,0 +1,122 @@
+package dumb.note;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class QuantBench {
+    private static final int CLUSTERS = 64, QUERIES = 200, K = 10;
+    @Param({"FLOAT", "INT8", "BINARY"})
+    public String mode;
+    @Param({"768"})
+    public int dims;
+    @Param({"10000"})
+    public int corpus;
+    private Embeddings index;
+    private Path dir;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("quantbench");
+        var r = new Random(7);
+        var vectors = vectors(r, corpus, dims);
+        index = index(dir, Embeddings.Mode.of(mode), vectors);
+        queries = queries(r, vectors);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        index.mode(Embeddings.Mode.FLOAT);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public List<Embeddings.Hit> search() {
+        return index.search(queries[next++ % queries.length], K, -1f, id -> true);
+    }
+
+    private static float[][] vectors(Random r, int n, int dims) {
+        var centroids = new float[CLUSTERS][];
+        for (var c = 0; c < CLUSTERS; c++) centroids[c] = Fixtures.embedding(r, dims);
+        var v = new float[n][];
+        for (var i = 0; i < n; i++) v[i] = near(r, centroids[r.nextInt(CLUSTERS)]);
+        return v;
+    }
+
+    private static float[] near(Random r, float[] c) {
+        var noise = Fixtures.embedding(r, c.length);
+        var v = new float[c.length];
+        for (var i = 0; i < c.length; i++) v[i] = c[i] + 0.8f * noise[i];
+        return v;
+    }
+
+    private static float[][] queries(Random r, float[][] vectors) {
+        var q = new float[QUERIES][];
+        for (var i = 0; i < QUERIES; i++) q[i] = near(r, vectors[r.nextInt(vectors.length)]);
+        return q;
+    }
+
+    private static Embeddings index(Path dir, Embeddings.Mode m, float[][] vectors) {
+        var e = new Embeddings(dir);
+        e.mode(m);
+        for (var i = 0; i < vectors.length; i++) e.put("n" + i, vectors[i]);
+        return e;
+    }
+
+    public static void main(String[] args) throws IOException {
+        var out = Path.of(args.length > 0 ? args[0] : "target/quantization-report.json");
+        var rows = new ArrayList<Map<String, Object>>();
+        for (var dims : new int[]{384, 768}) {
+            var r = new Random(7);
+            var vectors = vectors(r, 10_000, dims);
+            var queries = queries(r, vectors);
+            var exact = index(null, Embeddings.Mode.FLOAT, vectors);
+            var truth = Arrays.stream(queries).map(q -> exact.search(q, K, -1f, id -> true).stream().map(Embeddings.Hit::id).toList()).toList();
+            for (var m : Embeddings.Mode.values()) {
+                var dir = Files.createTempDirectory("quantbench");
+                var e = index(dir, m, vectors);
+                for (var factor : m == Embeddings.Mode.FLOAT ? new int[]{1} : new int[]{1, 2, 4, 8, 16}) {
+                    e.rerankFactor(factor);
+                    for (var q : queries) e.search(q, K, -1f, id -> true);
+                    var found = 0L;
+                    var t = System.nanoTime();
+                    for (var i = 0; i < queries.length; i++) {
+                        var want = truth.get(i);
+                        found += e.search(queries[i], K, -1f, id -> true).stream().filter(h -> want.contains(h.id())).count();
+                    }
+                    var micros = (System.nanoTime() - t) / 1e3 / queries.length;
+                    var metrics = e.metrics();
+                    var row = new LinkedHashMap<String, Object>();
+                    row.put("dims", dims);
+                    row.put("mode", m.name());
+                    row.put("rerankFactor", factor);
+                    row.put("recallAt10", (double) found / (K * queries.length));
+                    row.put("heapBytesPerVector", m.heapBytes(dims));
+                    row.put("mappedBytesPerVector", (long) metrics.get("mappedBytes") / vectors.length);
+                    row.put("searchMicros", Math.round(micros * 10) / 10.0);
+                    rows.add(row);
+                    System.out.printf("%4d %-6s x%-2d recall@10 %.3f  heap %5d B/vector  search %8.1f us%n", dims, m, factor, row.get("recallAt10"), m.heapBytes(dims), micros);
+                }
+                e.mode(Embeddings.Mode.FLOAT);
+                Files.deleteIfExists(dir);
+            }
+        }
+        Files.createDirectories(out.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(out.toFile(), Map.of("corpus", 10_000, "queries", QUERIES, "results", rows));
+        System.out.println("Wrote " + out);
+    }
+}
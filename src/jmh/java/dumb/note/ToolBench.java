@@ -0,0 +1,45 @@
+package dumb.note;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import static dumb.note.Netention.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ToolBench {
+    private final Map<Core.Tool, BiFunction<Core, Map<String, Object>, Object>> tools = new EnumMap<>(Core.Tool.class);
+    private final Map<String, Object> params = Map.of(ToolParam.NOTE_ID.getKey(), "event_1", ToolParam.PROPERTY_PATH.getKey(), "content.payload", ToolParam.FAIL_IF_NOT_FOUND.getKey(), false,
+            ToolParam.DEFAULT_VALUE.getKey(), Map.of("id", "e1", "pubkey", "abcd", "content", "hello ".repeat(40), "tags", List.of(List.of("p", "abcd"))));
+    private final Binder<Tools.GetNoteProperty> binder = Binder.of(Tools.GetNoteProperty.class);
+
+    @Setup
+    public void setup() {
+        Tools.registerAllTools(tools);
+    }
+
+    @Benchmark
+    public Object bind() {
+        return binder.bind(params);
+    }
+
+    @Benchmark
+    public Object echo() {
+        return tools.get(Core.Tool.ECHO).apply(null, params);
+    }
+
+    @Benchmark
+    public void eagerParamsLog(Blackhole bh) {
+        bh.consume("Executing tool: " + Core.Tool.GET_NOTE_PROPERTY.name() + " with params: " + params);
+    }
+}
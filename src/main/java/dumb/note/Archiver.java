@@ -0,0 +1,99 @@
+package dumb.note;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static dumb.note.Netention.*;
+
+public class Archiver {
+    private static final Logger logger = LoggerFactory.getLogger(Archiver.class);
+    private static final Set<String> PROTECTED_TAGS = Set.of(SystemTag.SYSTEM_NOTE.value, SystemTag.CONFIG.value, SystemTag.SYSTEM_PROCESS_HANDLER.value, SystemTag.MY_PROFILE.value);
+    private final Core core;
+    private final Config.RetentionSettings cfg;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        var t = new Thread(r, "NetentionArchiver");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    private final AtomicLong archivedNotes = new AtomicLong(), reclaimedBytes = new AtomicLong(), trimmedMessages = new AtomicLong(), sweeps = new AtomicLong();
+    private volatile Instant lastSweep;
+    private int cursor;
+
+    public Archiver(Core core) {
+        this.core = core;
+        this.cfg = core.cfg.retention;
+        scheduler.schedule(this::tick, cfg.sweepIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private void tick() {
+        var more = false;
+        var policies = cfg.policies;
+        try {
+            if (cfg.enabled && !policies.isEmpty()) more = sweep(policies.get(Math.floorMod(cursor++, policies.size())));
+        } catch (Exception e) {
+            logger.error("Retention sweep failed: {}", e.getMessage(), e);
+        } finally {
+            scheduler.schedule(this::tick, more ? 1 : Math.max(1, cfg.sweepIntervalSeconds / Math.max(1, policies.size())), TimeUnit.SECONDS);
+        }
+    }
+
+    public boolean sweep(Config.RetentionPolicy p) {
+        var batchSize = cfg.sweepBatchSize;
+        Predicate<Note> eligible = n -> n.tags.contains(p.tag()) && n.tags.stream().noneMatch(PROTECTED_TAGS::contains) && (p.status() == null || p.status().equals(n.content.get(ContentKey.STATUS.getKey()))) && core.planner.getPlanExecution(n.id).isEmpty() && !core.planner.handling(n.id);
+        var matching = core.notes.tagged(p.tag()).stream().filter(eligible).toList();
+        var oldestFirst = Comparator.comparing((Note n) -> n.updatedAt);
+        var cutoff = Instant.now().minusSeconds(p.ttlSeconds());
+        var overflow = p.maxCount() > 0 ? Math.max(0, matching.size() - p.maxCount()) : 0;
+        var expired = Stream.concat(p.ttlSeconds() > 0 ? matching.stream().filter(n -> n.updatedAt.isBefore(cutoff)) : Stream.empty(), matching.stream().sorted(oldestFirst).limit(overflow)).distinct().sorted(oldestFirst).limit(batchSize).map(n -> n.id).toList();
+        var more = expired.size() >= batchSize;
+        if (!expired.isEmpty()) {
+            var archived = core.archiveNotes(expired, eligible);
+            reclaimedBytes.addAndGet(archived.bytes());
+            archivedNotes.addAndGet(archived.ids().size());
+            logger.info("Retention archived {} '{}' notes.", archived.ids().size(), p.tag());
+        }
+        if (p.maxMessages() > 0) more |= trimMessages(matching, p.maxMessages(), batchSize);
+        sweeps.incrementAndGet();
+        lastSweep = Instant.now();
+        return more;
+    }
+
+    private boolean trimMessages(List<Note> notes, int maxMessages, int batchSize) {
+        var over = notes.stream().filter(n -> n.content.get(ContentKey.MESSAGES.getKey()) instanceof List<?> l && l.size() > maxMessages).limit(batchSize).toList();
+        over.forEach(n -> {
+            if (!(n.content.get(ContentKey.MESSAGES.getKey()) instanceof List<?> current) || current.size() <= maxMessages) return;
+            var trimmed = List.copyOf(current.subList(0, current.size() - maxMessages));
+            if (!core.notes.archiveRecords(List.of(Map.of(NoteProperty.ID.getKey(), n.id, ContentKey.MESSAGES.getKey(), trimmed, "archivedAt", Instant.now().toString()))))
+                return;
+            var before = core.notes.size(n.id);
+            core.updateNote(n.id, c -> {
+                if (!(c.content.get(ContentKey.MESSAGES.getKey()) instanceof List<?> l) || l.size() < trimmed.size() || !l.subList(0, trimmed.size()).equals(trimmed))
+                    return null;
+                c.content.put(ContentKey.MESSAGES.getKey(), new ArrayList<>(l.subList(trimmed.size(), l.size())));
+                return c;
+            }).ifPresent(_ -> {
+                reclaimedBytes.addAndGet(Math.max(0, before - core.notes.size(n.id)));
+                trimmedMessages.addAndGet(trimmed.size());
+            });
+        });
+        return over.size() >= batchSize;
+    }
+
+    public Map<String, Object> metrics() {
+        return Map.of("archivedNotes", archivedNotes.get(), "reclaimedBytes", reclaimedBytes.get(), "trimmedMessages", trimmedMessages.get(), "sweeps", sweeps.get(), "lastSweep", Objects.toString(lastSweep, ""));
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,165 @@
+package dumb.note;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.ParameterizedType;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static dumb.note.Netention.ToolParam;
+
+public final class Binder<P extends Record> {
+    private static final ObjectMapper json = Netention.Core.createObjectMapper();
+    private static final ClassValue<Binder<?>> binders = new ClassValue<>() {
+        @Override
+        protected Binder<?> computeValue(Class<?> type) {
+            return new Binder<>(type.asSubclass(Record.class));
+        }
+    };
+    private final Class<P> type;
+    private final String[] keys;
+    private final boolean[] required;
+    private final Function<Object, Object>[] converters;
+    private final MethodHandle constructor;
+
+    @SuppressWarnings("unchecked")
+    public static <P extends Record> Binder<P> of(Class<P> type) {
+        return (Binder<P>) binders.get(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Binder(Class<P> type) {
+        this.type = type;
+        var components = type.getRecordComponents();
+        var n = components.length;
+        keys = new String[n];
+        required = new boolean[n];
+        converters = new Function[n];
+        var types = new Class<?>[n];
+        for (var i = 0; i < n; i++) {
+            var c = components[i];
+            var key = keys[i] = c.getName().replaceAll("([A-Z])", "_$1").toLowerCase();
+            if (Stream.of(ToolParam.values()).noneMatch(p -> p.getKey().equals(key)))
+                throw new IllegalStateException(type.getSimpleName() + "." + c.getName() + " is not a ToolParam");
+            types[i] = c.getType();
+            required[i] = c.isAnnotationPresent(Required.class) || c.getType().isPrimitive();
+            converters[i] = converter(keys[i], c.getType(), c.getGenericType() instanceof ParameterizedType pt && pt.getActualTypeArguments()[0] == String.class);
+        }
+        try {
+            var ctor = type.getDeclaredConstructor(types);
+            ctor.setAccessible(true);
+            constructor = MethodHandles.lookup().unreflectConstructor(ctor).asSpreader(Object[].class, n).asType(MethodType.methodType(Record.class, Object[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No canonical constructor for " + type, e);
+        }
+    }
+
+    public List<String> keys() {
+        return List.of(keys);
+    }
+
+    public Class<P> type() {
+        return type;
+    }
+
+    @SuppressWarnings("unchecked")
+    public P bind(Map<String, Object> params) {
+        var args = new Object[keys.length];
+        for (var i = 0; i < keys.length; i++) {
+            var v = params.get(keys[i]);
+            if (v == null || v instanceof JsonNode j && j.isNull()) {
+                if (required[i]) throw new IllegalArgumentException(keys[i].toUpperCase() + " is required for " + type.getSimpleName() + ".");
+            } else args[i] = converters[i].apply(v);
+            if (required[i] && "".equals(args[i])) throw new IllegalArgumentException(keys[i].toUpperCase() + " must not be empty for " + type.getSimpleName() + ".");
+        }
+        try {
+            return (P) (Record) constructor.invokeExact(args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static Function<Object, Object> converter(String key, Class<?> t, boolean stringElements) {
+        if (t == Object.class) return v -> v;
+        if (t == String.class) return v -> switch (v) {
+            case CharSequence s -> s.toString();
+            case Number x -> x.toString();
+            case Boolean b -> b.toString();
+            case JsonNode j when j.isValueNode() -> j.asText();
+            default -> throw mismatch(key, "text", v);
+        };
+        if (t == boolean.class || t == Boolean.class) return v -> switch (v) {
+            case Boolean b -> b;
+            case String s when s.equalsIgnoreCase("true") || s.equalsIgnoreCase("false") -> Boolean.parseBoolean(s);
+            case JsonNode j when j.isBoolean() -> j.asBoolean();
+            default -> throw mismatch(key, "boolean", v);
+        };
+        if (t == int.class || t == Integer.class) return v -> number(key, v).intValue();
+        if (t == long.class || t == Long.class) return v -> number(key, v).longValue();
+        if (t == double.class || t == Double.class) return v -> number(key, v).doubleValue();
+        if (t.isEnum()) return v -> {
+            var name = String.valueOf(v).trim();
+            for (var e : t.getEnumConstants()) if (((Enum<?>) e).name().equalsIgnoreCase(name)) return e;
+            throw new IllegalArgumentException(key.toUpperCase() + ": unknown " + t.getSimpleName() + " '" + name + "'");
+        };
+        if (t == Map.class) return v -> {
+            if (v instanceof Map<?, ?> m) return m;
+            throw mismatch(key, "object", v);
+        };
+        if (t == List.class) return v -> {
+            if (!(v instanceof Collection<?> c)) throw mismatch(key, "list", v);
+            if (!stringElements) return c instanceof List<?> l ? l : new ArrayList<>(c);
+            var l = new ArrayList<String>(c.size());
+            for (var x : c) l.add(x == null ? null : String.valueOf(x));
+            return l;
+        };
+        if (t.isRecord()) return v -> {
+            if (t.isInstance(v)) return v;
+            if (!(v instanceof Map<?, ?>) && !(v instanceof JsonNode j && j.isObject())) throw mismatch(key, "object", v);
+            try {
+                return json.convertValue(v, t);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(key.toUpperCase() + ": not a valid " + t.getSimpleName() + ": " + e.getMessage(), e);
+            }
+        };
+        return v -> {
+            if (t.isInstance(v)) return v;
+            throw mismatch(key, t.getSimpleName(), v);
+        };
+    }
+
+    private static Number number(String key, Object v) {
+        return switch (v) {
+            case Number n -> n;
+            case String s -> {
+                try {
+                    yield s.contains(".") ? (Number) Double.parseDouble(s.trim()) : (Number) Long.parseLong(s.trim());
+                } catch (NumberFormatException e) {
+                    throw mismatch(key, "number", v);
+                }
+            }
+            case JsonNode j when j.isNumber() -> j.numberValue();
+            default -> throw mismatch(key, "number", v);
+        };
+    }
+
+    private static IllegalArgumentException mismatch(String key, String expected, Object v) {
+        return new IllegalArgumentException(key.toUpperCase() + ": expected " + expected + " but got " + v.getClass().getSimpleName());
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.RECORD_COMPONENT)
+    public @interface Required {
+    }
+}
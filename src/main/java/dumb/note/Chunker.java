@@ -0,0 +1,89 @@
+package dumb.note;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public final class Chunker {
+    private static final Pattern TOKEN = Pattern.compile("\\w+|[^\\w\\s]", Pattern.UNICODE_CHARACTER_CLASS);
+    private static final byte SENTENCE = 1, PARAGRAPH = 2;
+
+    private Chunker() {
+    }
+
+    public record Chunk(int start, int end, String hash, float[] embedding) {
+        public Chunk withEmbedding(float[] e) {
+            return new Chunk(start, end, hash, e);
+        }
+    }
+
+    public static List<Chunk> split(String text, int maxTokens, int overlapTokens) {
+        maxTokens = Math.max(1, maxTokens);
+        overlapTokens = Math.clamp(overlapTokens, 0, maxTokens / 2);
+        var m = TOKEN.matcher(text);
+        var n = 0;
+        var starts = new int[64];
+        var ends = new int[64];
+        var cost = new int[65];
+        while (m.find()) {
+            if (n == starts.length) {
+                starts = Arrays.copyOf(starts, n * 2);
+                ends = Arrays.copyOf(ends, n * 2);
+                cost = Arrays.copyOf(cost, n * 2 + 1);
+            }
+            starts[n] = m.start();
+            ends[n] = m.end();
+            cost[n + 1] = cost[n] + Math.max(1, (m.end() - m.start() + 3) / 4);
+            n++;
+        }
+        if (n == 0) return List.of(chunk(text, 0, text.length()));
+        var breaks = new byte[n];
+        for (var b = 1; b < n; b++) {
+            var gap = text.substring(ends[b - 1], starts[b]);
+            breaks[b] = gap.contains("\n\n") ? PARAGRAPH : gap.contains("\n") || ".!?".indexOf(text.charAt(ends[b - 1] - 1)) >= 0 ? SENTENCE : 0;
+        }
+        var chunks = new ArrayList<Chunk>();
+        for (var s = 0; ; ) {
+            var e = s + 1;
+            while (e < n && cost[e + 1] - cost[s] <= maxTokens) e++;
+            if (e < n) e = cut(breaks, s, e);
+            chunks.add(chunk(text, starts[s], ends[e - 1]));
+            if (e >= n) return chunks;
+            var next = e;
+            if (breaks[e] != PARAGRAPH) {
+                while (next > s + 1 && cost[e] - cost[next - 1] <= overlapTokens) next--;
+                for (var b = next; b < e; b++)
+                    if (breaks[b] != 0) {
+                        next = b;
+                        break;
+                    }
+            }
+            s = next;
+        }
+    }
+
+    private static int cut(byte[] breaks, int s, int e) {
+        var sentence = -1;
+        for (var b = e; b > s; b--) {
+            if (breaks[b] == PARAGRAPH) return b;
+            if (sentence < 0 && breaks[b] == SENTENCE && b > s + (e - s) / 2) sentence = b;
+        }
+        return sentence > 0 ? sentence : e;
+    }
+
+    private static Chunk chunk(String text, int start, int end) {
+        return new Chunk(start, end, hash(text.substring(start, end)), null);
+    }
+
+    public static String hash(String s) {
+        try {
+            return Crypto.bytesToHex(Arrays.copyOf(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)), 8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
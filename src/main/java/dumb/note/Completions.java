@@ -0,0 +1,218 @@
+package dumb.note;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static dumb.note.Netention.*;
+
+public class Completions {
+    private static final Logger logger = LoggerFactory.getLogger(Completions.class);
+    private static final int COMPACT_MIN = 256;
+    private final Config.LMSettings cfg;
+    private final Path log;
+    private final ObjectMapper json = Core.createObjectMapper();
+    private final ObjectWriter line = json.writer().without(SerializationFeature.INDENT_OUTPUT);
+    private final Object io = new Object();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<Optional<String>>> inflight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), coalesced = new LongAdder(), expired = new LongAdder(), evicted = new LongAdder();
+    private long bytes;
+    private int logged;
+
+    public Completions(Config.LMSettings cfg, Path log) {
+        this.cfg = cfg;
+        this.log = log;
+        load();
+    }
+
+    public static String key(String model, String template, String content) {
+        return model + "|" + Chunker.hash(template) + "|" + Chunker.hash(content);
+    }
+
+    public Optional<String> get(String key, Supplier<Optional<String>> compute) {
+        if (!cfg.cacheEnabled) return compute.get();
+        var v = lookup(key);
+        if (v != null) {
+            hits.increment();
+            return Optional.of(v);
+        }
+        var mine = new CompletableFuture<Optional<String>>();
+        var running = inflight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.increment();
+            try {
+                return running.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Optional.empty();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException x ? x : new CompletionException(e.getCause());
+            }
+        }
+        try {
+            if ((v = lookup(key)) != null) {
+                hits.increment();
+                mine.complete(Optional.of(v));
+                return Optional.of(v);
+            }
+            misses.increment();
+            var r = compute.get();
+            r.ifPresent(x -> put(key, x));
+            mine.complete(r);
+            return r;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, mine);
+        }
+    }
+
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            bytes = 0;
+        }
+        compact();
+    }
+
+    public Map<String, Object> metrics() {
+        var h = hits.sum() + coalesced.sum();
+        var total = h + misses.sum();
+        int size;
+        long b;
+        synchronized (this) {
+            size = entries.size();
+            b = bytes;
+        }
+        return Map.of("enabled", cfg.cacheEnabled, "hits", hits.sum(), "misses", misses.sum(), "coalesced", coalesced.sum(), "expired", expired.sum(), "evicted", evicted.sum(),
+                "size", size, "bytes", b, "hitRate", total == 0 ? 0.0 : (double) h / total);
+    }
+
+    private synchronized String lookup(String key) {
+        var e = entries.get(key);
+        if (e == null) return null;
+        if (!expired(e, System.currentTimeMillis())) return e.value();
+        remove(key);
+        expired.increment();
+        return null;
+    }
+
+    private void put(String key, String value) {
+        var e = new Entry(key, value, System.currentTimeMillis());
+        synchronized (this) {
+            add(e);
+            evict();
+        }
+        append(e);
+    }
+
+    private void add(Entry e) {
+        var old = entries.put(e.key(), e);
+        if (old != null) bytes -= old.bytes();
+        bytes += e.bytes();
+    }
+
+    private void remove(String key) {
+        var old = entries.remove(key);
+        if (old != null) bytes -= old.bytes();
+    }
+
+    private void evict() {
+        for (var it = entries.values().iterator(); it.hasNext() && (entries.size() > cfg.cacheMaxEntries || bytes > (long) cfg.cacheMaxMegabytes << 20); ) {
+            bytes -= it.next().bytes();
+            it.remove();
+            evicted.increment();
+        }
+    }
+
+    private boolean expired(Entry e, long now) {
+        return cfg.cacheTtlHours > 0 && now - e.at() > cfg.cacheTtlHours * 3_600_000L;
+    }
+
+    private void load() {
+        if (log == null || !Files.exists(log)) return;
+        var now = System.currentTimeMillis();
+        try (var lines = Files.lines(log)) {
+            for (var it = lines.iterator(); it.hasNext(); ) {
+                try {
+                    var e = json.readValue(it.next(), Entry.class);
+                    if (expired(e, now)) remove(e.key());
+                    else add(e);
+                } catch (IOException x) {
+                    logger.warn("Truncated LM cache log {}; ignoring the remainder.", log);
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to read LM cache log {}: {}", log, e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            evict();
+        }
+        compact();
+        if (!entries.isEmpty()) logger.info("Restored {} cached LM responses.", entries.size());
+    }
+
+    private void compact() {
+        if (log == null) return;
+        var tmp = log.resolveSibling(log.getFileName() + ".tmp");
+        synchronized (io) {
+            List<Entry> live;
+            synchronized (this) {
+                live = List.copyOf(entries.values());
+            }
+            try {
+                var sb = new StringBuilder();
+                for (var e : live) sb.append(line.writeValueAsString(e)).append('\n');
+                Files.writeString(tmp, sb);
+                Files.move(tmp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                logged = live.size();
+            } catch (IOException e) {
+                logger.error("Failed to compact LM cache log {}: {}", log, e.getMessage());
+            }
+        }
+    }
+
+    private void append(Entry e) {
+        if (log == null) return;
+        synchronized (io) {
+            int size;
+            synchronized (this) {
+                size = entries.size();
+            }
+            if (++logged > Math.max(COMPACT_MIN, 2 * size)) {
+                compact();
+                return;
+            }
+            try {
+                Files.writeString(log, line.writeValueAsString(e) + '\n', StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException x) {
+                logger.error("Failed to log LM response {}: {}", e.key(), x.getMessage());
+            }
+        }
+    }
+
+    private record Entry(String key, String value, long at) {
+        long bytes() {
+            return 2L * (key.length() + value.length());
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package dumb.note;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+public class Embeddings {
+    private static final Logger logger = LoggerFactory.getLogger(Embeddings.class);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Block> blocks = new HashMap<>();
+    private final Map<String, Block> owners = new HashMap<>();
+    private final Map<String, Integer> chunks = new HashMap<>();
+    private final Path dir;
+    private volatile Mode mode = Mode.FLOAT;
+    private volatile int rerankFactor = 4;
+
+    public enum Mode {
+        FLOAT, INT8, BINARY;
+
+        public static Mode of(String s) {
+            return Stream.of(values()).filter(m -> m.name().equalsIgnoreCase(s)).findFirst().orElse(FLOAT);
+        }
+
+        public long heapBytes(int dims) {
+            return switch (this) {
+                case FLOAT -> 4L * dims + 4;
+                case INT8 -> dims + 4L;
+                case BINARY -> 8L * ((dims + 63) / 64);
+            };
+        }
+    }
+
+    public record Hit(String id, float score) {
+    }
+
+    public static String chunkId(String noteId, int i) {
+        return noteId + "#" + i;
+    }
+
+    static String noteId(String rowId) {
+        var i = separator(rowId);
+        return i < 0 ? rowId : rowId.substring(0, i);
+    }
+
+    private static int separator(String rowId) {
+        var i = rowId.length();
+        while (i > 0 && Character.isDigit(rowId.charAt(i - 1))) i--;
+        return i > 0 && i < rowId.length() && rowId.charAt(i - 1) == '#' ? i - 1 : -1;
+    }
+
+    public Embeddings() {
+        this(null);
+    }
+
+    public Embeddings(Path dir) {
+        this.dir = dir;
+        if (dir == null || !Files.isDirectory(dir)) return;
+        try (var ps = Files.list(dir)) {
+            for (var f : ps.filter(p -> p.getFileName().toString().matches("vectors-\\d+\\.f32")).toList()) {
+                var m = VectorFile.mode(f);
+                if (m == null || m == Mode.FLOAT) continue;
+                var name = f.getFileName().toString();
+                var dims = Integer.parseInt(name.substring(8, name.length() - 4));
+                var b = new Block(dims, m, VectorFile.open(f, dims, m));
+                b.reload();
+                blocks.put(dims, b);
+                for (var i = 0; i < b.size; i++) {
+                    owners.put(b.ids[i], b);
+                    counted(b.ids[i]);
+                }
+                mode = m;
+            }
+            if (!owners.isEmpty()) logger.info("Reopened {} {} embeddings from {}.", owners.size(), mode, dir);
+        } catch (IOException e) {
+            logger.error("Failed to reopen vector files in {}: {}", dir, e.getMessage(), e);
+        }
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public boolean quantized() {
+        return mode != Mode.FLOAT;
+    }
+
+    public void rerankFactor(int f) {
+        rerankFactor = Math.max(1, f);
+    }
+
+    public void mode(Mode m) {
+        if (m != Mode.FLOAT && dir == null) {
+            logger.warn("No vector directory; embeddings stay in FLOAT mode.");
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (var b : blocks.values())
+                if (b.file != null) try {
+                    b.file.delete();
+                } catch (IOException e) {
+                    logger.warn("Failed to delete vector file for {} dimensions: {}", b.dims, e.getMessage());
+                }
+            blocks.clear();
+            owners.clear();
+            chunks.clear();
+            mode = m;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void put(String id, float[] v) {
+        if (v == null || v.length == 0) {
+            remove(id);
+            return;
+        }
+        var u = Vectors.normalized(v);
+        var norm = (float) Math.sqrt(Vectors.dot(v, v));
+        lock.writeLock().lock();
+        try {
+            if (mode != Mode.FLOAT && !VectorFile.fits(id)) {
+                logger.warn("Note id {} is too long for the vector file; its embedding is not indexed.", id);
+                return;
+            }
+            var b = owners.get(id);
+            if (b != null && b.dims != u.length) {
+                b.remove(id);
+                b = null;
+            }
+            if (b == null) {
+                b = blocks.get(u.length);
+                if (b == null) blocks.put(u.length, b = new Block(u.length, mode, mode == Mode.FLOAT ? null : VectorFile.open(dir.resolve("vectors-" + u.length + ".f32"), u.length, mode)));
+                owners.put(id, b);
+            }
+            b.put(id, u, norm);
+            counted(id);
+        } catch (IOException e) {
+            owners.remove(id);
+            logger.error("Failed to store embedding of {}: {}", id, e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            var b = owners.remove(id);
+            if (b != null) b.remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void counted(String id) {
+        var i = separator(id);
+        if (i >= 0) chunks.merge(id.substring(0, i), Integer.parseInt(id, i + 1, id.length(), 10) + 1, Math::max);
+    }
+
+    public void retainChunks(String noteId, int n) {
+        lock.writeLock().lock();
+        try {
+            var count = chunks.getOrDefault(noteId, 0);
+            for (var i = n; i < count; i++) {
+                var b = owners.remove(chunkId(noteId, i));
+                if (b != null) b.remove(chunkId(noteId, i));
+            }
+            if (n > 0 && count > 0) chunks.put(noteId, Math.min(n, count));
+            else chunks.remove(noteId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeNote(String noteId) {
+        remove(noteId);
+        retainChunks(noteId, 0);
+    }
+
+    public boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return owners.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public float[] vector(String id) {
+        lock.readLock().lock();
+        try {
+            var b = owners.get(id);
+            return b == null ? null : b.vector(b.rows.get(id));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Hit> search(float[] query, int k, float min, Predicate<String> accept) {
+        var q = Vectors.normalized(query);
+        lock.readLock().lock();
+        try {
+            var b = blocks.get(q.length);
+            return b == null || b.size == 0 ? List.of() : b.search(q, k, min, accept, rerankFactor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return owners.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> metrics() {
+        lock.readLock().lock();
+        try {
+            var m = new LinkedHashMap<String, Object>();
+            m.put("kernel", Vectors.KERNEL.toString());
+            m.put("mode", mode.name());
+            m.put("rerankFactor", rerankFactor);
+            m.put("vectors", owners.size());
+            m.put("chunkedNotes", chunks.size());
+            var dims = new TreeMap<Integer, Integer>();
+            blocks.forEach((d, b) -> dims.put(d, b.size));
+            m.put("byDimensions", dims);
+            m.put("heapBytes", blocks.values().stream().mapToLong(b -> b.mode.heapBytes(b.dims) * b.ids.length).sum());
+            m.put("mappedBytes", blocks.values().stream().filter(b -> b.file != null).mapToLong(b -> b.file.bytes()).sum());
+            return m;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void force() {
+        lock.readLock().lock();
+        try {
+            for (var b : blocks.values())
+                if (b.file != null) try {
+                    b.file.force();
+                } catch (UncheckedIOException e) {
+                    logger.warn("Failed to force vector file for {} dimensions: {}", b.dims, e.getMessage());
+                }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            for (var b : blocks.values())
+                if (b.file != null) try {
+                    b.file.close();
+                } catch (IOException e) {
+                    logger.warn("Failed to close vector file for {} dimensions: {}", b.dims, e.getMessage());
+                }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static final class Block {
+        final int dims, words;
+        final Mode mode;
+        final VectorFile file;
+        final Map<String, Integer> rows = new HashMap<>();
+        String[] ids = new String[0];
+        float[] data = new float[0], norms = new float[0], scales = new float[0];
+        byte[] codes = new byte[0];
+        long[] bits = new long[0];
+        int size;
+
+        Block(int dims, Mode mode, VectorFile file) {
+            this.dims = dims;
+            this.words = (dims + 63) / 64;
+            this.mode = mode;
+            this.file = file;
+        }
+
+        void reload() {
+            var u = new float[dims];
+            for (var r = 0; r < file.count(); r++) {
+                grow(r + 1);
+                ids[r] = file.id(r);
+                rows.put(ids[r], r);
+                file.read(r, u);
+                encode(r, u);
+                size = r + 1;
+            }
+        }
+
+        void put(String id, float[] u, float norm) throws IOException {
+            var r = rows.get(id);
+            if (r == null) {
+                grow(size + 1);
+                r = size;
+                if (file != null) file.write(r, id, norm, u);
+                rows.put(id, r);
+                ids[r] = id;
+                size++;
+            } else if (file != null) file.write(r, id, norm, u);
+            encode(r, u);
+            if (file == null) norms[r] = norm;
+        }
+
+        private void grow(int needed) {
+            if (needed <= ids.length) return;
+            var cap = Math.max(16, Math.max(needed, ids.length + (ids.length >> 1)));
+            ids = Arrays.copyOf(ids, cap);
+            switch (mode) {
+                case FLOAT -> {
+                    data = Arrays.copyOf(data, cap * dims);
+                    norms = Arrays.copyOf(norms, cap);
+                }
+                case INT8 -> {
+                    codes = Arrays.copyOf(codes, cap * dims);
+                    scales = Arrays.copyOf(scales, cap);
+                }
+                case BINARY -> bits = Arrays.copyOf(bits, cap * words);
+            }
+        }
+
+        private void encode(int r, float[] u) {
+            switch (mode) {
+                case FLOAT -> System.arraycopy(u, 0, data, r * dims, dims);
+                case INT8 -> scales[r] = quantize(u, codes, r * dims);
+                case BINARY -> signs(u, bits, r * words);
+            }
+        }
+
+        void remove(String id) {
+            var r = rows.remove(id);
+            if (r == null) return;
+            var last = --size;
+            if (r != last) {
+                ids[r] = ids[last];
+                rows.put(ids[r], r);
+                switch (mode) {
+                    case FLOAT -> {
+                        System.arraycopy(data, last * dims, data, r * dims, dims);
+                        norms[r] = norms[last];
+                    }
+                    case INT8 -> {
+                        System.arraycopy(codes, last * dims, codes, r * dims, dims);
+                        scales[r] = scales[last];
+                    }
+                    case BINARY -> System.arraycopy(bits, last * words, bits, r * words, words);
+                }
+            }
+            ids[last] = null;
+            if (file != null) file.removeByMovingLast(r);
+        }
+
+        float[] vector(int r) {
+            var v = new float[dims];
+            if (file == null) System.arraycopy(data, r * dims, v, 0, dims);
+            else file.read(r, v);
+            var n = file == null ? norms[r] : file.norm(r);
+            for (var i = 0; i < dims; i++) v[i] *= n;
+            return v;
+        }
+
+        List<Hit> search(float[] q, int k, float min, Predicate<String> accept, int factor) {
+            var scores = new float[size];
+            if (mode == Mode.FLOAT) {
+                Vectors.scores(q, data, size, scores);
+                return notes(scores, size, k, min, accept, i -> i);
+            }
+            if (mode == Mode.INT8) {
+                var qc = new byte[dims];
+                var qs = quantize(q, qc, 0);
+                for (int r = 0, off = 0; r < size; r++, off += dims) scores[r] = Vectors.KERNEL.dot(qc, codes, off, dims) * qs * scales[r];
+            } else {
+                var qb = new long[words];
+                signs(q, qb, 0);
+                for (int r = 0, off = 0; r < size; r++, off += words) {
+                    var h = 0;
+                    for (var w = 0; w < words; w++) h += Long.bitCount(qb[w] ^ bits[off + w]);
+                    scores[r] = 1 - 2f * h / dims;
+                }
+            }
+            var candidates = Vectors.topK(scores, size, (int) Math.min(size, (long) k * factor), Float.NEGATIVE_INFINITY, i -> accept.test(noteId(ids[i])));
+            var exact = new float[candidates.length];
+            var row = new float[dims];
+            for (var j = 0; j < candidates.length; j++) {
+                file.read(candidates[j], row);
+                exact[j] = Vectors.KERNEL.dot(q, row, 0, dims);
+            }
+            return notes(exact, exact.length, k, min, accept, j -> candidates[j]);
+        }
+
+        private List<Hit> notes(float[] scores, int n, int k, float min, Predicate<String> accept, IntUnaryOperator row) {
+            if (k <= 0) return List.of();
+            for (var want = k; ; want = (int) Math.min(n, 4L * want)) {
+                var top = Vectors.topK(scores, n, want, min, i -> accept.test(noteId(ids[row.applyAsInt(i)])));
+                var hits = new ArrayList<Hit>();
+                var seen = new HashSet<String>();
+                for (var i : top) {
+                    var id = noteId(ids[row.applyAsInt(i)]);
+                    if (seen.add(id) && hits.add(new Hit(id, scores[i])) && hits.size() == k) return hits;
+                }
+                if (top.length < want || want >= n) return hits;
+            }
+        }
+
+        private static float quantize(float[] u, byte[] codes, int off) {
+            var max = 0f;
+            for (var x : u) max = Math.max(max, Math.abs(x));
+            if (max == 0) {
+                Arrays.fill(codes, off, off + u.length, (byte) 0);
+                return 0;
+            }
+            var scale = max / 127;
+            for (var i = 0; i < u.length; i++) codes[off + i] = (byte) Math.round(u[i] / scale);
+            return scale;
+        }
+
+        private static void signs(float[] u, long[] bits, int off) {
+            Arrays.fill(bits, off, off + (u.length + 63) / 64, 0L);
+            for (var i = 0; i < u.length; i++) if (u[i] > 0) bits[off + (i >>> 6)] |= 1L << i;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package dumb.note;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static dumb.note.Netention.Planner.PlanExecution;
+
+public final class Expr {
+    public final String source;
+    private final Node root;
+
+    private Expr(String source, Node root) {
+        this.source = source;
+        this.root = root;
+    }
+
+    public static Expr compile(String source) {
+        return new Expr(source, new Parser(source).parse());
+    }
+
+    public static Expr interpolate(String source) {
+        var parts = new ArrayList<Node>();
+        var i = 0;
+        while (i < source.length()) {
+            var d = source.indexOf('$', i);
+            if (d < 0 || d + 1 >= source.length() || !isRefChar(source.charAt(d + 1))) {
+                parts.add(new Const(source.substring(i)));
+                break;
+            }
+            if (d > i) parts.add(new Const(source.substring(i, d)));
+            var end = d + 1;
+            while (end < source.length() && isRefChar(source.charAt(end))) end++;
+            while (source.charAt(end - 1) == '.') end--;
+            parts.add(new Text(Plans.Ref.parse(source.substring(d, end))));
+            i = end;
+        }
+        return new Expr(source, parts.size() == 1 ? parts.getFirst() : new Concat(parts.toArray(Node[]::new)));
+    }
+
+    public Object eval(PlanExecution exec) {
+        return root.eval(exec);
+    }
+
+    public boolean test(PlanExecution exec) {
+        return truthy(root.eval(exec));
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    public static boolean truthy(Object o) {
+        return switch (o) {
+            case null -> false;
+            case Boolean b -> b;
+            case Number n -> n.doubleValue() != 0;
+            case String s -> !s.isEmpty() && !"false".equalsIgnoreCase(s);
+            case Collection<?> c -> !c.isEmpty();
+            case Map<?, ?> m -> !m.isEmpty();
+            default -> true;
+        };
+    }
+
+    static boolean isRefChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    }
+
+    static boolean eq(Object a, Object b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+        if (a instanceof Number x && b instanceof Number y) return x.doubleValue() == y.doubleValue();
+        if (a instanceof Boolean x && b instanceof String y) return x == Boolean.parseBoolean(y);
+        if (a instanceof String x && b instanceof Boolean y) return y == Boolean.parseBoolean(x);
+        if (a instanceof Number || b instanceof Number) return number(a) == number(b);
+        return a.equals(b);
+    }
+
+    private static boolean ordered(Op op, Object a, Object b) {
+        int c;
+        if (a instanceof String x && b instanceof String y) c = x.compareTo(y);
+        else {
+            if (a == null || b == null) throw new IllegalArgumentException("Cannot order null.");
+            var x = number(a);
+            var y = number(b);
+            if (Double.isNaN(x) || Double.isNaN(y)) return false;
+            c = Double.compare(x, y);
+        }
+        return switch (op) {
+            case LT -> c < 0;
+            case LE -> c <= 0;
+            case GT -> c > 0;
+            case GE -> c >= 0;
+            case EQ -> c == 0;
+            case NE -> c != 0;
+        };
+    }
+
+    static boolean isEmpty(Object o) {
+        return switch (o) {
+            case null -> true;
+            case String s -> s.isEmpty();
+            case Collection<?> c -> c.isEmpty();
+            case Map<?, ?> m -> m.isEmpty();
+            case JsonNode jn -> jn.isNull() || jn.isContainerNode() && jn.isEmpty() || jn.isTextual() && jn.asText().isEmpty();
+            default -> false;
+        };
+    }
+
+    private static double number(Object o) {
+        return switch (o) {
+            case Number n -> n.doubleValue();
+            case String s -> {
+                try {
+                    yield Double.parseDouble(s.trim());
+                } catch (NumberFormatException e) {
+                    yield Double.NaN;
+                }
+            }
+            default -> throw new IllegalArgumentException("Not a number: " + o);
+        };
+    }
+
+    private static String str(Object o) {
+        return o == null ? null : o instanceof String s ? s : o.toString();
+    }
+
+    private sealed interface Node permits Const, Var, Text, Concat, Not, And, Or, Cmp, Call, Matches {
+        Object eval(PlanExecution exec);
+    }
+
+    private record Const(Object value) implements Node {
+        public Object eval(PlanExecution exec) {
+            return value;
+        }
+    }
+
+    private record Var(Plans.Ref ref) implements Node {
+        public Object eval(PlanExecution exec) {
+            return ref.value(exec);
+        }
+    }
+
+    private record Text(Plans.Ref ref) implements Node {
+        public Object eval(PlanExecution exec) {
+            return ref.resolve(exec);
+        }
+    }
+
+    private record Concat(Node[] parts) implements Node {
+        public Object eval(PlanExecution exec) {
+            var sb = new StringBuilder();
+            for (var p : parts) sb.append(p.eval(exec));
+            return sb.toString();
+        }
+    }
+
+    private record Not(Node e) implements Node {
+        public Object eval(PlanExecution exec) {
+            return !truthy(e.eval(exec));
+        }
+    }
+
+    private record And(Node a, Node b) implements Node {
+        public Object eval(PlanExecution exec) {
+            return truthy(a.eval(exec)) && truthy(b.eval(exec));
+        }
+    }
+
+    private record Or(Node a, Node b) implements Node {
+        public Object eval(PlanExecution exec) {
+            return truthy(a.eval(exec)) || truthy(b.eval(exec));
+        }
+    }
+
+    private enum Op {EQ, NE, LT, LE, GT, GE}
+
+    private record Cmp(Op op, Node a, Node b) implements Node {
+        public Object eval(PlanExecution exec) {
+            var x = a.eval(exec);
+            var y = b.eval(exec);
+            return switch (op) {
+                case EQ -> eq(x, y);
+                case NE -> !eq(x, y);
+                default -> ordered(op, x, y);
+            };
+        }
+    }
+
+    public enum Fn {
+        CONTAINS(2), STARTSWITH(2), ENDSWITH(2), MATCHES(2), LOWER(1), UPPER(1), TRIM(1), LENGTH(1), ISNULL(1), NOTNULL(1), ISEMPTY(1);
+
+        final int arity;
+
+        Fn(int arity) {
+            this.arity = arity;
+        }
+
+        Object apply(Object a, Object b) {
+            return switch (this) {
+                case CONTAINS -> a instanceof Collection<?> c ? c.contains(b) : a != null && b != null && str(a).contains(str(b));
+                case STARTSWITH -> a != null && b != null && str(a).startsWith(str(b));
+                case ENDSWITH -> a != null && b != null && str(a).endsWith(str(b));
+                case MATCHES -> a != null && b != null && str(a).matches(str(b));
+                case LOWER -> a == null ? null : str(a).toLowerCase();
+                case UPPER -> a == null ? null : str(a).toUpperCase();
+                case TRIM -> a == null ? null : str(a).trim();
+                case LENGTH -> switch (a) {
+                    case null -> 0;
+                    case Collection<?> c -> c.size();
+                    case Map<?, ?> m -> m.size();
+                    case JsonNode jn -> jn.size();
+                    default -> str(a).length();
+                };
+                case ISNULL -> a == null;
+                case NOTNULL -> a != null;
+                case ISEMPTY -> isEmpty(a);
+            };
+        }
+    }
+
+    private record Call(Fn fn, Node a, Node b) implements Node {
+        public Object eval(PlanExecution exec) {
+            return fn.apply(a.eval(exec), b == null ? null : b.eval(exec));
+        }
+    }
+
+    private record Matches(Node a, Pattern p) implements Node {
+        public Object eval(PlanExecution exec) {
+            var v = a.eval(exec);
+            return v != null && p.matcher(str(v)).matches();
+        }
+    }
+
+    private static final class Parser {
+        private final String s;
+        private int pos;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        Node parse() {
+            var n = or();
+            ws();
+            if (pos < s.length()) throw error("Unexpected '" + s.charAt(pos) + "'");
+            return n;
+        }
+
+        private IllegalArgumentException error(String msg) {
+            return new IllegalArgumentException(msg + " at " + pos + " in expression: " + s);
+        }
+
+        private void ws() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        private boolean eat(String tok) {
+            ws();
+            if (!s.startsWith(tok, pos)) return false;
+            var end = pos + tok.length();
+            if (Character.isLetter(tok.charAt(0)) && end < s.length() && isRefChar(s.charAt(end))) return false;
+            pos = end;
+            return true;
+        }
+
+        private Node or() {
+            var n = and();
+            while (eat("||") || eat("or")) n = new Or(n, and());
+            return n;
+        }
+
+        private Node and() {
+            var n = not();
+            while (eat("&&") || eat("and")) n = new And(n, not());
+            return n;
+        }
+
+        private Node not() {
+            if (!s.startsWith("!=", skip()) && (eat("!") || eat("not"))) return new Not(not());
+            return cmp();
+        }
+
+        private int skip() {
+            ws();
+            return pos;
+        }
+
+        private Node cmp() {
+            var a = primary();
+            Op op = eat("==") ? Op.EQ : eat("!=") ? Op.NE : eat("<=") ? Op.LE : eat(">=") ? Op.GE : eat("<") ? Op.LT : eat(">") ? Op.GT : null;
+            return op == null ? a : new Cmp(op, a, primary());
+        }
+
+        private Node primary() {
+            ws();
+            if (pos >= s.length()) throw error("Unexpected end");
+            var c = s.charAt(pos);
+            if (c == '(') {
+                pos++;
+                var n = or();
+                if (!eat(")")) throw error("Expected ')'");
+                return n;
+            }
+            if (c == '\'' || c == '"') return new Const(string(c));
+            if (c == '$') {
+                var start = pos++;
+                while (pos < s.length() && isRefChar(s.charAt(pos))) pos++;
+                if (pos - start < 2) throw error("Empty reference");
+                return new Var(Plans.Ref.parse(s.substring(start, pos)));
+            }
+            if (Character.isDigit(c) || c == '-') return new Const(number());
+            if (Character.isLetter(c)) {
+                var start = pos;
+                while (pos < s.length() && Character.isLetterOrDigit(s.charAt(pos))) pos++;
+                var word = s.substring(start, pos);
+                switch (word) {
+                    case "true":
+                        return new Const(Boolean.TRUE);
+                    case "false":
+                        return new Const(Boolean.FALSE);
+                    case "null":
+                        return new Const(null);
+                }
+                return call(word);
+            }
+            throw error("Unexpected '" + c + "'");
+        }
+
+        private Node call(String name) {
+            Fn fn;
+            try {
+                fn = Fn.valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw error("Unknown function '" + name + "'");
+            }
+            if (!eat("(")) throw error("Expected '(' after " + name);
+            var a = or();
+            var b = fn.arity > 1 && eat(",") ? or() : null;
+            if (fn.arity > 1 && b == null) throw error(name + " takes " + fn.arity + " arguments");
+            if (!eat(")")) throw error("Expected ')'");
+            return fn == Fn.MATCHES && b instanceof Const(String regex) ? new Matches(a, Pattern.compile(regex)) : new Call(fn, a, b);
+        }
+
+        private String string(char quote) {
+            var sb = new StringBuilder();
+            pos++;
+            while (pos < s.length() && s.charAt(pos) != quote) {
+                var ch = s.charAt(pos++);
+                sb.append(ch == '\\' && pos < s.length() ? s.charAt(pos++) : ch);
+            }
+            if (pos >= s.length()) throw error("Unterminated string");
+            pos++;
+            return sb.toString();
+        }
+
+        private Number number() {
+            var start = pos++;
+            while (pos < s.length() && (Character.isDigit(s.charAt(pos)) || s.charAt(pos) == '.')) pos++;
+            var t = s.substring(start, pos);
+            try {
+                return t.contains(".") ? Double.parseDouble(t) : Long.parseLong(t);
+            } catch (NumberFormatException e) {
+                throw error("Bad number '" + t + "'");
+            }
+        }
+    }
+}
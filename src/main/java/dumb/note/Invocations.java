@@ -0,0 +1,204 @@
+package dumb.note;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static dumb.note.Netention.*;
+
+public class Invocations {
+    public static final Limits DEFAULT = new Limits(64, Duration.ofSeconds(10), false);
+    private static final ThreadLocal<Call> current = new ThreadLocal<>();
+    private final Core core;
+    private final Map<Core.Tool, Limits> limits = new EnumMap<>(Core.Tool.class);
+    private final Map<Core.Tool, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+    private final Map<String, Set<Call>> scopes = new ConcurrentHashMap<>();
+    private final ExecutorService isolated = Executors.newCachedThreadPool(r -> {
+        var t = new Thread(r, "NetentionTool");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public Invocations(Core core) {
+        this.core = core;
+        var lm = new Limits(2, Duration.ofSeconds(150), true);
+        var net = new Limits(8, Duration.ofSeconds(30), true);
+        for (var t : new Core.Tool[]{Core.Tool.SUGGEST_PLAN_STEPS, Core.Tool.DECOMPOSE_GOAL, Core.Tool.SUMMARIZE, Core.Tool.GENERATE, Core.Tool.EXECUTE_SEMANTIC_QUERY}) limits.put(t, lm);
+        for (var t : new Core.Tool[]{Core.Tool.SEND_DM, Core.Tool.SEND_FRIEND_REQUEST, Core.Tool.ACCEPT_FRIEND_REQUEST}) limits.put(t, net);
+    }
+
+    public synchronized Limits limits(Core.Tool tool) {
+        return limits.getOrDefault(tool, DEFAULT);
+    }
+
+    public synchronized void configure(Core.Tool tool, Limits l) {
+        limits.put(tool, l);
+        bulkheads.remove(tool);
+    }
+
+    public <T> T call(Core.Tool tool, String scope, Supplier<T> body) {
+        var l = limits(tool);
+        var b = bulkheads.computeIfAbsent(tool, t -> new Bulkhead(l.maxConcurrent()));
+        if (!b.permits.tryAcquire()) {
+            b.rejected.increment();
+            throw new RejectedExecutionException("Bulkhead full for " + tool + " (" + l.maxConcurrent() + " in use)");
+        }
+        b.calls.increment();
+        var c = new Call(tool, scope, l.deadline());
+        if (scope != null) scopes.computeIfAbsent(scope, k -> ConcurrentHashMap.newKeySet()).add(c);
+        try {
+            return l.isolated() ? isolated(c, l, b, body) : inline(c, l, b, body);
+        } finally {
+            if (scope != null) scopes.computeIfPresent(scope, (k, s) -> s.remove(c) && s.isEmpty() ? null : s);
+            if (!l.isolated()) b.permits.release();
+        }
+    }
+
+    private <T> T inline(Call c, Limits l, Bulkhead b, Supplier<T> body) {
+        var timers = core.timers;
+        var deadline = timers == null ? null : timers.schedule(l.deadline(), () -> c.interrupt(false));
+        var outer = current.get();
+        current.set(c);
+        try {
+            return body.get();
+        } finally {
+            current.set(outer);
+            if (deadline != null) timers.cancel(deadline.timerId());
+            if (c.timedOut) b.timedOut.increment();
+            if (c.cancelled) b.cancelled.increment();
+        }
+    }
+
+    private <T> T isolated(Call c, Limits l, Bulkhead b, Supplier<T> body) {
+        var claimed = new AtomicBoolean();
+        var submitted = System.nanoTime();
+        var f = new FutureTask<T>(() -> {
+            if (!claimed.compareAndSet(false, true)) return null;
+            core.traces.toolWait(c.tool, System.nanoTime() - submitted);
+            c.attach(Thread.currentThread());
+            current.set(c);
+            try {
+                return body.get();
+            } finally {
+                current.remove();
+                c.detach();
+                b.permits.release();
+            }
+        }) {
+            @Override
+            protected void done() {
+                if (claimed.compareAndSet(false, true)) b.permits.release();
+            }
+        };
+        c.future = f;
+        if (c.cancelled) f.cancel(false);
+        try {
+            isolated.execute(f);
+        } catch (RejectedExecutionException e) {
+            f.cancel(false);
+            throw e;
+        }
+        try {
+            return f.get(l.deadline().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            c.timedOut = true;
+            b.timedOut.increment();
+            f.cancel(true);
+            throw new DeadlineExceededException(c.tool, l.deadline(), e, true);
+        } catch (CancellationException e) {
+            b.cancelled.increment();
+            throw new CancellationException(c.tool + " cancelled");
+        } catch (InterruptedException e) {
+            f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException(c.tool + " interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException x) throw x;
+            if (e.getCause() instanceof Error x) throw x;
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    public int cancel(String scope) {
+        var n = 0;
+        for (var k : scopes.keySet()) {
+            if (!k.equals(scope) && !k.startsWith(scope + "/")) continue;
+            var s = scopes.remove(k);
+            if (s == null) continue;
+            s.forEach(c -> c.interrupt(true));
+            n += s.size();
+        }
+        return n;
+    }
+
+    public static void checkpoint() {
+        var c = current.get();
+        if (c == null) return;
+        if (c.cancelled) throw new CancellationException(c.tool + " cancelled");
+        if (c.timedOut) throw new DeadlineExceededException(c.tool, c.deadline, new TimeoutException(), false);
+    }
+
+    public Map<String, Object> metrics() {
+        var m = new TreeMap<String, Object>();
+        bulkheads.forEach((t, b) -> m.put(t.name(), Map.of("inFlight", b.max - b.permits.availablePermits(), "max", b.max, "calls", b.calls.sum(), "rejected", b.rejected.sum(), "timedOut", b.timedOut.sum(), "cancelled", b.cancelled.sum())));
+        return m;
+    }
+
+    public record Limits(int maxConcurrent, Duration deadline, boolean isolated) {
+    }
+
+    public static class DeadlineExceededException extends RuntimeException {
+        public final boolean abandoned;
+
+        public DeadlineExceededException(Core.Tool tool, Duration deadline, TimeoutException cause, boolean abandoned) {
+            super(tool + " exceeded its " + deadline.toMillis() + "ms deadline", cause);
+            this.abandoned = abandoned;
+        }
+    }
+
+    private static final class Bulkhead {
+        final int max;
+        final Semaphore permits;
+        final LongAdder calls = new LongAdder(), rejected = new LongAdder(), timedOut = new LongAdder(), cancelled = new LongAdder();
+
+        Bulkhead(int max) {
+            this.max = max;
+            this.permits = new Semaphore(max);
+        }
+    }
+
+    private static final class Call {
+        final Core.Tool tool;
+        final String scope;
+        final Duration deadline;
+        volatile boolean cancelled, timedOut;
+        volatile Future<?> future;
+        private Thread thread;
+
+        Call(Core.Tool tool, String scope, Duration deadline) {
+            this.tool = tool;
+            this.scope = scope;
+            this.deadline = deadline;
+        }
+
+        synchronized void attach(Thread t) {
+            thread = t;
+        }
+
+        synchronized void detach() {
+            if (thread == Thread.currentThread() && (cancelled || timedOut)) Thread.interrupted();
+            thread = null;
+        }
+
+        synchronized void interrupt(boolean cancel) {
+            if (cancel) cancelled = true;
+            else timedOut = true;
+            if (thread != null) thread.interrupt();
+            var f = future;
+            if (f != null && cancel) f.cancel(true);
+        }
+    }
+}
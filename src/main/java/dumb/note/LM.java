@@ -17,24 +17,29 @@ import static java.util.Optional.empty;
 
 public class LM {
     private static final Logger logger = LoggerFactory.getLogger(LM.class);
+    private static final String SUMMARIZE = "Summarize concisely:\n\n",
+            ASK = "Context:\n\"\"\"\n%s\n\"\"\"\n\nQuestion: %s\nAnswer:",
+            DECOMPOSE = "Decompose this goal into a sequence of actionable sub-tasks. Prefix each sub-task with '- '. If the goal is simple, return just one task. Be concise.\nGoal: ";
     private final Netention.Config.LMSettings cfg;
     private EmbeddingModel embedding;
     private ChatLanguageModel chat;
     private volatile boolean isInitialized = false, isReady = false;
+    private volatile Completions cache;
 
     public LM(Netention.Config cs) {
         this.cfg = cs.lm;
     }
 
     public static double cosineSimilarity(float[] vA, float[] vB) {
-        if (vA == null || vB == null || vA.length == 0 || vA.length != vB.length) return 0.0;
-        double dotProduct = 0.0, normA = 0.0, normB = 0.0;
-        for (var i = 0; i < vA.length; i++) {
-            dotProduct += vA[i] * vB[i];
-            normA += vA[i] * vA[i];
-            normB += vB[i] * vB[i];
-        }
-        return (normA == 0 || normB == 0) ? 0.0 : dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+        return Vectors.cosine(vA, vB);
+    }
+
+    public void cache(Completions c) {
+        cache = c;
+    }
+
+    public Completions cache() {
+        return cache;
     }
 
     public synchronized void init() {
@@ -99,17 +104,22 @@ public class LM {
         }
     }
 
+    public Optional<String> chat(String template, String content, String prompt) {
+        var c = cache;
+        return c == null ? chat(prompt) : c.get(Completions.key(cfg.provider + ":" + cfg.ollamaChatModelName, template, content), () -> chat(prompt));
+    }
+
     public Optional<String> summarize(String t) {
-        return (t == null || t.trim().isEmpty()) ? Optional.of("") : chat("Summarize concisely:\n\n" + t);
+        return (t == null || t.trim().isEmpty()) ? Optional.of("") : chat(SUMMARIZE, t, SUMMARIZE + t);
     }
 
     public Optional<String> askAboutText(String t, String q) {
-        return (t == null || t.trim().isEmpty() || q == null || q.trim().isEmpty()) ? empty() : chat("Context:\n\"\"\"\n" + t + "\n\"\"\"\n\nQuestion: " + q + "\nAnswer:");
+        return (t == null || t.trim().isEmpty() || q == null || q.trim().isEmpty()) ? empty() : chat(ASK, t + "\0" + q, ASK.formatted(t, q));
     }
 
     public Optional<List<String>> decomposeTask(String task) {
         return (task == null || task.trim().isEmpty()) ? empty() :
-                chat("Decompose this goal into a sequence of actionable sub-tasks. Prefix each sub-task with '- '. If the goal is simple, return just one task. Be concise.\nGoal: " + task)
+                chat(DECOMPOSE, task, DECOMPOSE + task)
                         .map(r -> Stream.of(r.split("\\n")).map(String::trim).filter(s -> s.startsWith("- ")).map(s -> s.substring(2).trim()).filter(s -> !s.isEmpty()).collect(Collectors.toList()));
     }
 }
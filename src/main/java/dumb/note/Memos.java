@@ -0,0 +1,168 @@
+package dumb.note;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static dumb.note.Netention.*;
+
+public class Memos {
+    private static final int CAPACITY = 256;
+    private final Core core;
+    private final Map<Core.Tool, Cache> caches = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+
+    public enum Dependency {PURE, NOTE, NOTES, CONFIG}
+
+    public Memos(Core core) {
+        this.core = core;
+    }
+
+    public void configChanged() {
+        epoch.incrementAndGet();
+    }
+
+    public void declare(Core.Tool tool, Dependency d) {
+        caches.put(tool, new Cache(d));
+    }
+
+    public Object get(Core.Tool tool, Map<String, Object> params, Supplier<Object> compute) {
+        var c = caches.get(tool);
+        if (c == null) return compute.get();
+        var key = key(params);
+        var stamp = stamp(c.dependency, params);
+        Entry e;
+        synchronized (c) {
+            e = c.entries.get(key);
+        }
+        if (e != null && e.stamp.equals(stamp) && e.epoch == epoch.get()) {
+            c.hits.increment();
+            return copy(e.value);
+        }
+        if (e != null) c.stale.increment();
+        c.misses.increment();
+        var epochBefore = epoch.get();
+        var v = compute.get();
+        synchronized (c) {
+            c.entries.put(key, new Entry(copy(v), stamp, epochBefore));
+        }
+        return v;
+    }
+
+    public void clear() {
+        caches.values().forEach(c -> {
+            synchronized (c) {
+                c.entries.clear();
+            }
+        });
+    }
+
+    public Map<String, Object> metrics() {
+        var m = new TreeMap<String, Object>();
+        caches.forEach((t, c) -> {
+            var hits = c.hits.sum();
+            var total = hits + c.misses.sum();
+            int size;
+            synchronized (c) {
+                size = c.entries.size();
+            }
+            m.put(t.name(), Map.of("dependency", c.dependency.name(), "hits", hits, "misses", c.misses.sum(), "stale", c.stale.sum(), "evicted", c.evicted, "size", size, "hitRate", total == 0 ? 0.0 : (double) hits / total));
+        });
+        return m;
+    }
+
+    private Object stamp(Dependency d, Map<String, Object> params) {
+        return switch (d) {
+            case PURE, CONFIG -> "";
+            case NOTE -> params.get(ToolParam.NOTE_ID.getKey()) instanceof String id ? core.notes.get(id).map(n -> n.version + "@" + n.updatedAt).orElse("") : "";
+            case NOTES -> core.notes.generation();
+        };
+    }
+
+    private Object copy(Object v) {
+        return switch (v) {
+            case JsonNode j -> j.deepCopy();
+            case Note n -> core.notes.copy(n);
+            case Map<?, ?> m -> {
+                var c = new LinkedHashMap<Object, Object>();
+                m.forEach((k, x) -> c.put(k, copy(x)));
+                yield c;
+            }
+            case Set<?> s -> s.stream().map(this::copy).collect(LinkedHashSet::new, Set::add, Set::addAll);
+            case Collection<?> c -> c.stream().map(this::copy).collect(ArrayList::new, List::add, List::addAll);
+            case null, default -> v;
+        };
+    }
+
+    static String key(Map<String, Object> params) {
+        var sb = new StringBuilder();
+        canonical(params, sb);
+        return sb.toString();
+    }
+
+    private static void canonical(Object v, StringBuilder sb) {
+        switch (v) {
+            case null -> sb.append("null");
+            case Map<?, ?> m -> {
+                var sorted = new TreeMap<String, Object>();
+                m.forEach((k, x) -> sorted.put(String.valueOf(k), x));
+                sb.append('{');
+                sorted.forEach((k, x) -> {
+                    quote(k, sb);
+                    sb.append(':');
+                    canonical(x, sb);
+                    sb.append(',');
+                });
+                sb.append('}');
+            }
+            case Collection<?> c -> {
+                sb.append('[');
+                for (var x : c) {
+                    canonical(x, sb);
+                    sb.append(',');
+                }
+                sb.append(']');
+            }
+            case Number n when n.doubleValue() == Math.rint(n.doubleValue()) && !Double.isInfinite(n.doubleValue()) -> sb.append(n.longValue());
+            case Number n -> sb.append(n.doubleValue());
+            case CharSequence s -> quote(s.toString(), sb);
+            case JsonNode j -> sb.append(j);
+            default -> sb.append(v.getClass().getSimpleName()).append(':').append(v);
+        }
+    }
+
+    private static void quote(String s, StringBuilder sb) {
+        sb.append('"');
+        for (var i = 0; i < s.length(); i++) {
+            var ch = s.charAt(i);
+            if (ch == '"' || ch == '\\') sb.append('\\');
+            sb.append(ch);
+        }
+        sb.append('"');
+    }
+
+    private record Entry(Object value, Object stamp, long epoch) {
+    }
+
+    private static final class Cache {
+        final Dependency dependency;
+        final LongAdder hits = new LongAdder(), misses = new LongAdder(), stale = new LongAdder();
+        long evicted;
+        final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= CAPACITY) return false;
+                evicted++;
+                return true;
+            }
+        };
+
+        Cache(Dependency dependency) {
+            this.dependency = dependency;
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package dumb.note;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.slf4j.Logger;
@@ -13,7 +16,11 @@ import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import javax.swing.text.BadLocationException;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -21,14 +28,28 @@ import java.lang.annotation.Target;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import static java.util.Optional.ofNullable;
 
@@ -77,9 +98,10 @@ public class Netention {
 
     public enum NoteProperty {
         ID, TITLE, TEXT, CONTENT_TYPE, TAGS, LINKS, METADATA, CONTENT, CREATED_AT, UPDATED_AT;
+        private final String key = name().toLowerCase();
 
         public String getKey() {
-            return name().toLowerCase();
+            return key;
         }
     }
 
@@ -99,29 +121,32 @@ public class Netention {
 
     public enum ContentKey {
         TITLE, TEXT, CONTENT_TYPE, PLAN_STEPS, EVENT_TYPE, PAYLOAD, STATUS, MESSAGES, PROFILE_NAME, PROFILE_ABOUT, PROFILE_PICTURE_URL, RESULTS, LAST_RUN, RELAY_URL, RELAY_ENABLED, RELAY_READ, RELAY_WRITE, PRIORITY;
+        private final String key = name().toLowerCase();
 
         public String getKey() {
-            return name().toLowerCase();
+            return key;
         }
     }
 
     public enum ToolParam {
-        MESSAGE, NOTE_ID, PROPERTY_PATH, FAIL_IF_NOT_FOUND, DEFAULT_VALUE, JSON_STRING, ID, TITLE, TEXT, AS_HTML, TAGS, CONTENT, METADATA, CONTENT_UPDATE, NOSTR_PUB_KEY_HEX, PROFILE_DATA, CONDITION, TRUE_STEPS, FALSE_STEPS, EVENT_PAYLOAD_MAP, PARTNER_PUB_KEY_HEX, SENDER_PUB_KEY_HEX, MESSAGE_CONTENT, TIMESTAMP_EPOCH_SECONDS, EVENT_TYPE, EVENT_DATA, GOAL_TEXT, PAYLOAD, DELAY_SECONDS, TAG, LIST, LOOP_VAR, LOOP_STEPS, QUERY_TEXT, MIN_SIMILARITY, MAX_RESULTS, SOURCE_NOTE_ID, LINKS, STALL_THRESHOLD_SECONDS, CONFIG_TYPE, STATE_MAP, PROMPT, CALLBACK_KEY, PLAN_NOTE_ID, FRIEND_REQUEST_SENDER_NPUB, ACTIONABLE_ITEM_ID, RECIPIENT_NPUB, TOOL_PARAMS;
+        MESSAGE, NOTE_ID, PROPERTY_PATH, FAIL_IF_NOT_FOUND, DEFAULT_VALUE, JSON_STRING, ID, TITLE, TEXT, AS_HTML, TAGS, CONTENT, METADATA, CONTENT_UPDATE, NOSTR_PUB_KEY_HEX, PROFILE_DATA, CONDITION, TRUE_STEPS, FALSE_STEPS, EVENT_PAYLOAD_MAP, PARTNER_PUB_KEY_HEX, SENDER_PUB_KEY_HEX, MESSAGE_CONTENT, TIMESTAMP_EPOCH_SECONDS, EVENT_TYPE, EVENT_DATA, GOAL_TEXT, PAYLOAD, DELAY_SECONDS, TIMER_ID, TAG, LIST, LOOP_VAR, LOOP_STEPS, MAX_PARALLELISM, QUERY_TEXT, MIN_SIMILARITY, MAX_RESULTS, SOURCE_NOTE_ID, LINKS, STALL_THRESHOLD_SECONDS, CONFIG_TYPE, STATE_MAP, PROMPT, CALLBACK_KEY, PLAN_NOTE_ID, FRIEND_REQUEST_SENDER_NPUB, ACTIONABLE_ITEM_ID, RECIPIENT_NPUB, TOOL_PARAMS, MAX_DEPTH, RELATION_TYPE, CACHE;
+        private final String key = name().toLowerCase();
 
         public String getKey() {
-            return name().toLowerCase();
+            return key;
         }
     }
 
-    public enum PlanState {PENDING, RUNNING, COMPLETED, FAILED, STUCK, PARSING, FAILED_PARSING, FAILED_NO_STEPS}
+    public enum PlanState {PENDING, RUNNING, COMPLETED, FAILED, STUCK, PARSING, FAILED_PARSING, FAILED_NO_STEPS, CANCELLED}
 
     public enum PlanStepState {PENDING, RUNNING, COMPLETED, FAILED, WAITING_FOR_USER, PENDING_RETRY}
 
     public enum PlanStepKey {
-        ID, DESCRIPTION, TOOL_NAME, TOOL_PARAMS, DEPENDS_ON_STEP_IDS, STATUS, RESULT, OUTPUT_NOTE_ID, START_TIME, END_TIME, ALTERNATIVES, RETRY_COUNT, MAX_RETRIES, CURRENT_ALTERNATIVE_INDEX;
+        ID, DESCRIPTION, TOOL_NAME, TOOL_PARAMS, DEPENDS_ON_STEP_IDS, STATUS, RESULT, OUTPUT_NOTE_ID, START_TIME, END_TIME, ALTERNATIVES, RETRY_COUNT, MAX_RETRIES, RETRY, RETRY_AT, HEDGE, CURRENT_ALTERNATIVE_INDEX;
+        private final String key = name().toLowerCase();
 
         public String getKey() {
-            return name().toLowerCase();
+            return key;
         }
     }
 
@@ -150,6 +175,7 @@ public class Netention {
         public int version = 1;
         public Instant createdAt, updatedAt;
         public float[] embeddingV1;
+        public List<Chunker.Chunk> chunks;
 
         public Note() {
             createdAt = updatedAt = Instant.now();
@@ -197,7 +223,7 @@ public class Netention {
         }
 
         public int getPriority() {
-            return (int) content.getOrDefault(ContentKey.PRIORITY.getKey(), 0);
+            return content.get(ContentKey.PRIORITY.getKey()) instanceof Number n ? n.intValue() : 0;
         }
 
         public void setPriority(int priority) {
@@ -268,54 +294,241 @@ public class Netention {
 
     public static class Planner {
         private static final Logger logger = LoggerFactory.getLogger(Planner.class);
-        private static final int DEFAULT_MAX_RETRIES = 2;
         private final Core core;
+        private static final int DEFAULT_MAX_CONCURRENCY = 4, DEFAULT_BACKLOG_CAPACITY = 256;
+        private static final long STEAL_AFTER_MS = 50;
+        public static final String DROPPED = "DROPPED";
+        private final AtomicLong forks = new AtomicLong();
         private final Map<String, PlanExecution> active = new ConcurrentHashMap<>();
+        private final Map<String, Admission> admissions = new ConcurrentHashMap<>();
         private final ObjectMapper json = Core.createObjectMapper();
+        private final PlanJournal journal;
+        public final Retries retries = new Retries();
+        private final Map<String, LongAdder> hedgeWins = new ConcurrentHashMap<>();
+        final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+            var t = new Thread(r, "NetentionPlanStep");
+            t.setDaemon(true);
+            return t;
+        });
+        public final Scheduler scheduler = new Scheduler(workers, Scheduler.DEFAULT_SLOTS);
+        public final Watchdog watchdog;
 
-        public Planner(Core core) {
+        public Planner(Core core, Path journalDir) {
             this.core = core;
+            this.journal = new PlanJournal(journalDir);
+            this.watchdog = new Watchdog(core, this);
+        }
+
+        public int resume() {
+            var resumed = journal.recover().stream().filter(exec -> active.putIfAbsent(exec.id, exec) == null).toList();
+            resumed.forEach(exec -> {
+                exec.span = core.traces.plan(exec, System.nanoTime());
+                core.notes.get(exec.planNoteId).ifPresent(goal -> {
+                    exec.prioritize(goal);
+                    rebind(exec, core.plans.template(goal));
+                });
+                watchdog.track(exec);
+                if (exec.isInstance()) {
+                    var a = admissions.computeIfAbsent(exec.planNoteId, k -> new Admission());
+                    synchronized (a) {
+                        a.running++;
+                    }
+                }
+                logger.info("Resuming plan {} ({} of {} steps completed).", exec.id, exec.steps.stream().filter(s -> Netention.PlanStepState.COMPLETED.equals(s.status)).count(), exec.steps.size());
+                exec.steps.stream().filter(s -> s.retryAt != null && Netention.PlanStepState.PENDING_RETRY.equals(s.status)).forEach(s ->
+                        core.timers.schedule(Duration.between(Instant.now(), s.retryAt), () -> SwingUtilities.invokeLater(() -> processExecution(exec))));
+            });
+            if (!resumed.isEmpty()) tick();
+            return resumed.size();
+        }
+
+        private static void rebind(PlanExecution exec, Plans.Template template) {
+            if (template == null) return;
+            var bindings = new HashMap<String, Plans.Binding>();
+            template.steps().forEach(t -> bindings.put(t.id(), t.binding()));
+            exec.steps.forEach(s -> {
+                if (s.binding == null) s.binding = bindings.get(s.id);
+            });
+        }
+
+        public void trigger(Note handler, Note event) {
+            var a = admissions.computeIfAbsent(handler.id, k -> new Admission());
+            Map<String, Object> context = new HashMap<>();
+            context.put("trigger", Map.of("sourceEventNoteId", event.id, "eventContent", new HashMap<>(event.content)));
+            var t = new Trigger(handler.id, event.id, handler.id + "#" + event.id, context, System.nanoTime());
+            var running = active.get(t.id());
+            if (running != null && Netention.PlanState.RUNNING.equals(running.currentStatus)) {
+                logger.debug("Handler {} is already running for event {}; ignoring duplicate trigger.", handler.id, event.id);
+                return;
+            }
+            Trigger start = null, dropped = null;
+            synchronized (a) {
+                a.configure(handler.content);
+                a.admitted++;
+                if (a.running < a.maxConcurrency) {
+                    a.running++;
+                    start = t;
+                } else if (a.backlog.size() < a.backlogCapacity) {
+                    a.backlog.add(t);
+                } else if (a.overflow == Overflow.DROP_OLDEST) {
+                    dropped = a.backlog.poll();
+                    a.backlog.add(t);
+                } else {
+                    dropped = t;
+                }
+                if (dropped != null) a.dropped++;
+            }
+            if (dropped != null) drop(dropped, a.backlogCapacity);
+            if (start != null) start(start);
+        }
+
+        private void drop(Trigger t, int capacity) {
+            logger.warn("Handler {} backlog full ({}); dropped trigger {}.", t.handlerId(), capacity, t.id());
+            core.updateNote(t.eventId(), n -> {
+                if (!Netention.PlanState.PENDING.name().equals(n.content.get(ContentKey.STATUS.getKey()))) return null;
+                n.content.put(ContentKey.STATUS.getKey(), DROPPED);
+                n.content.put("droppedBy", t.handlerId());
+                return n;
+            });
+        }
+
+        public boolean handling(String eventNoteId) {
+            var suffix = "#" + eventNoteId;
+            if (active.keySet().stream().anyMatch(id -> id.endsWith(suffix))) return true;
+            for (var a : admissions.values())
+                synchronized (a) {
+                    if (a.backlog.stream().anyMatch(t -> t.id().endsWith(suffix))) return true;
+                }
+            return false;
+        }
+
+        private void start(Trigger t) {
+            core.notes.get(t.handlerId()).ifPresentOrElse(h -> execute(h, t.id(), t.context(), t.queuedAt()), () -> release(t.handlerId()));
+        }
+
+        private void release(String handlerId) {
+            var a = admissions.get(handlerId);
+            if (a == null) return;
+            Trigger next;
+            synchronized (a) {
+                next = a.backlog.poll();
+                if (next == null) a.running--;
+            }
+            if (next != null) start(next);
+        }
+
+        private void finish(PlanExecution exec) {
+            if (active.remove(exec.id, exec)) {
+                watchdog.untrack(exec);
+                if (exec.span != null) exec.span.end(Netention.PlanState.COMPLETED.equals(exec.currentStatus));
+                journal.end(exec.id);
+                if (exec.isInstance()) release(exec.planNoteId);
+            }
+        }
+
+        public boolean cancel(String id) {
+            var exec = getPlanExecution(id).orElse(null);
+            if (exec == null || exec.cancelled) return false;
+            exec.cancelled = true;
+            exec.currentStatus = Netention.PlanState.CANCELLED;
+            exec.errorMessage = "Cancelled.";
+            exec.waitingCallbacks.clear();
+            exec.steps.stream().filter(s -> Set.of(Netention.PlanStepState.PENDING, Netention.PlanStepState.PENDING_RETRY, Netention.PlanStepState.WAITING_FOR_USER).contains(s.status)).forEach(s -> {
+                s.status = Netention.PlanStepState.FAILED;
+                s.result = "Cancelled.";
+                s.addLog("Cancelled before running.");
+            });
+            var interrupted = core.invocations.cancel(exec.id);
+            logger.info("Cancelled plan {} ({} tool calls interrupted).", exec.id, interrupted);
+            exec.markUpdated();
+            if (!exec.isInstance()) core.updateNote(exec.planNoteId, n -> {
+                n.meta.put(Metadata.PLAN_STATUS.key, exec.currentStatus.name());
+                n.meta.put(Metadata.PLAN_END_TIME.key, exec.lastPlanUpdatedAt.toString());
+                return n;
+            });
+            finish(exec);
+            core.fireCoreEvent(Core.CoreEventType.PLAN_UPDATED, exec);
+            return true;
+        }
+
+        public boolean evict(String id) {
+            var exec = active.get(id);
+            if (exec == null) return false;
+            exec.cancelled = true;
+            core.invocations.cancel(exec.id);
+            finish(exec);
+            logger.info("Evicted plan execution {} ({}).", exec.id, exec.currentStatus);
+            return true;
+        }
+
+        boolean isActive(PlanExecution exec) {
+            return active.get(exec.id) == exec;
+        }
+
+        public Map<String, Map<String, Object>> handlerMetrics() {
+            var m = new TreeMap<String, Map<String, Object>>();
+            admissions.forEach((id, a) -> {
+                synchronized (a) {
+                    m.put(id, Map.of("running", a.running, "queued", a.backlog.size(), "dropped", a.dropped, "admitted", a.admitted, "maxConcurrency", a.maxConcurrency));
+                }
+            });
+            return m;
+        }
+
+        public Map<String, Long> hedgeMetrics() {
+            var m = new TreeMap<String, Long>();
+            hedgeWins.forEach((k, v) -> m.put(k, v.sum()));
+            return m;
         }
 
-        @SuppressWarnings("unchecked")
         public void execute(Note goal, Map<String, Object> initialContext) {
             if (goal == null) {
                 logger.warn("Goal note is null, cannot execute plan.");
                 return;
             }
+            execute(goal, goal.id, initialContext, System.nanoTime());
+        }
 
-            var exe = active.compute(goal.id, (k, existingExec) -> (existingExec != null && Netention.PlanState.RUNNING.equals(existingExec.currentStatus)) ? existingExec : new PlanExecution(goal.id, initialContext));
+        @SuppressWarnings("unchecked")
+        private void execute(Note goal, String id, Map<String, Object> initialContext, long queuedAt) {
+            var created = new boolean[1];
+            var exe = active.compute(id, (k, existingExec) -> {
+                if (existingExec != null && Netention.PlanState.RUNNING.equals(existingExec.currentStatus)) return existingExec;
+                created[0] = true;
+                return new PlanExecution(null, id, goal.id, initialContext);
+            });
+            if (!created[0] && exe.isInstance()) {
+                release(goal.id);
+                return;
+            }
             if (exe.context.isEmpty() && !initialContext.isEmpty()) exe.context.putAll(initialContext);
-
+            exe.prioritize(goal);
+            watchdog.track(exe);
+            var report = !exe.isInstance();
+            Map<String, Object> status = new HashMap<>();
 
             if (!Netention.PlanState.RUNNING.equals(exe.currentStatus) || exe.steps.isEmpty()) {
+                if (exe.span == null) exe.span = core.traces.plan(exe, queuedAt);
                 exe.currentStatus = Netention.PlanState.PARSING;
-                goal.meta.putAll(Map.of(Metadata.PLAN_STATUS.key, exe.currentStatus.name(), Metadata.PLAN_START_TIME.key, Instant.now().toString()));
-                core.saveNote(goal);
+                status.putAll(Map.of(Metadata.PLAN_STATUS.key, exe.currentStatus.name(), Metadata.PLAN_START_TIME.key, Instant.now().toString()));
 
-                var planStepsData = goal.content.get(ContentKey.PLAN_STEPS.getKey());
-                if (planStepsData instanceof List<?> rawStepsList && exe.steps.isEmpty()) {
+                Plans.Template template = null;
+                if (exe.steps.isEmpty()) {
                     try {
-                        for (var i = 0; i < rawStepsList.size(); i++) {
-                            if (rawStepsList.get(i) instanceof Map rawStepObj) {
-                                var step = json.convertValue(rawStepObj, PlanStep.class);
-                                if (step.id == null || step.id.isEmpty() || step.id.matches("step\\d+_id_placeholder")) {
-                                    step.id = "step_" + i + "_" + UUID.randomUUID().toString().substring(0, 4);
-                                }
-                                exe.steps.add(step);
-                            }
-                        }
+                        template = core.plans.template(goal);
+                        if (template != null) exe.steps.addAll(template.instantiate());
                     } catch (Exception e) {
                         logger.error("Failed to parse plan steps for note {}", goal.id, e);
                         exe.currentStatus = Netention.PlanState.FAILED_PARSING;
-                        goal.meta.put(Metadata.PLAN_STATUS.key, exe.currentStatus.name());
-                        core.saveNote(goal);
-                        active.remove(goal.id);
+                        status.put(Metadata.PLAN_STATUS.key, exe.currentStatus.name());
+                        if (report) report(goal, status, Map.of());
+                        finish(exe);
                         return;
                     }
                 }
 
                 if (exe.steps.isEmpty() && goal.tags.contains(SystemTag.GOAL_WITH_PLAN.value)) {
+                    if (report) report(goal, status, Map.of());
                     try {
                         var initialSteps = (List<PlanStep>) core.executeTool(Core.Tool.SUGGEST_PLAN_STEPS, Map.of(Netention.ToolParam.GOAL_TEXT.getKey(), goal.getText().isEmpty() ? goal.getTitle() : goal.getText()));
                         if (initialSteps != null && !initialSteps.isEmpty()) exe.steps.addAll(initialSteps);
@@ -327,16 +540,18 @@ public class Netention {
                 } else if (exe.steps.isEmpty()) {
                     logger.warn("Plan {} has no steps defined and is not a typical user goal for LM suggestion.", goal.id);
                     exe.currentStatus = Netention.PlanState.FAILED_NO_STEPS;
-                    goal.meta.put(Metadata.PLAN_STATUS.key, exe.currentStatus.name());
-                    core.saveNote(goal);
-                    active.remove(goal.id);
+                    status.put(Metadata.PLAN_STATUS.key, exe.currentStatus.name());
+                    if (report) report(goal, status, Map.of());
+                    finish(exe);
                     return;
                 }
 
-                goal.content.put(ContentKey.PLAN_STEPS.getKey(), exe.steps.stream().map(s -> json.convertValue(s, Map.class)).collect(Collectors.toList()));
                 exe.currentStatus = Netention.PlanState.RUNNING;
-                goal.meta.put(Metadata.PLAN_STATUS.key, exe.currentStatus.name());
-                core.saveNote(goal);
+                status.put(Metadata.PLAN_STATUS.key, exe.currentStatus.name());
+                if (report) report(goal, status, template == null || template.generatedIds() || template.steps().isEmpty()
+                        ? Map.of(ContentKey.PLAN_STEPS.getKey(), exe.steps.stream().map(s -> json.convertValue(s, Map.class)).collect(Collectors.toList()))
+                        : Map.of());
+                journal.start(exe);
             }
             core.fireCoreEvent(Core.CoreEventType.PLAN_UPDATED, exe);
             tick();
@@ -346,6 +561,14 @@ public class Netention {
             execute(goal, new HashMap<>());
         }
 
+        private void report(Note goal, Map<String, Object> meta, Map<String, Object> content) {
+            core.updateNote(goal.id, n -> {
+                n.meta.putAll(meta);
+                n.content.putAll(content);
+                return n;
+            });
+        }
+
         private void addDefaultInitialStep(PlanExecution execution, Note goalNote) {
             var initialStep = new PlanStep();
             initialStep.description = "Initial analysis of goal: " + goalNote.getTitle();
@@ -363,6 +586,7 @@ public class Netention {
                 if (Netention.PlanStepState.PENDING.equals(currentStep.status) || Netention.PlanStepState.PENDING_RETRY.equals(currentStep.status)) {
                     currentStep.status = Netention.PlanStepState.RUNNING;
                     currentStep.startTime = Instant.now();
+                    currentStep.retryAt = null;
                     currentStep.lastUpdatedAt = currentStep.startTime; // Set lastUpdatedAt
                     currentStep.addLog("Execution started."); // Add log
                     exec.markUpdated(); // Mark execution updated
@@ -373,8 +597,9 @@ public class Netention {
         }
 
         private void updateOverallPlanStatus(PlanExecution exec) {
+            if (exec.cancelled) return;
             var allCompleted = exec.steps.stream().allMatch(s -> Netention.PlanStepState.COMPLETED.equals(s.status));
-            var anyFailedNoAlternativesOrRetries = exec.steps.stream().anyMatch(s -> Netention.PlanStepState.FAILED.equals(s.status) && s.retryCount >= s.maxRetries && (s.alternatives.isEmpty() || s.currentAlternativeIndex >= s.alternatives.size() - 1));
+            var anyFailedNoAlternativesOrRetries = exec.steps.stream().anyMatch(s -> Netention.PlanStepState.FAILED.equals(s.status));
             var anyRunningOrWaiting = exec.steps.stream().anyMatch(s -> Set.of(Netention.PlanStepState.RUNNING, Netention.PlanStepState.WAITING_FOR_USER, Netention.PlanStepState.PENDING_RETRY).contains(s.status));
 
             Netention.PlanState oldStatus = exec.currentStatus;
@@ -402,7 +627,7 @@ public class Netention {
 
             if (oldStatus != exec.currentStatus || !Objects.equals(oldErrorMessage, exec.errorMessage)) {
                 exec.markUpdated(); // Mark updated
-                core.notes.get(exec.planNoteId).ifPresent(n -> {
+                if (!exec.isInstance()) core.updateNote(exec.planNoteId, n -> {
                     n.meta.put(Metadata.PLAN_STATUS.key, exec.currentStatus.name());
                     if (Set.of(Netention.PlanState.COMPLETED, Netention.PlanState.FAILED, Netention.PlanState.STUCK).contains(exec.currentStatus)) {
                         n.meta.put(Metadata.PLAN_END_TIME.key, exec.lastPlanUpdatedAt.toString()); // Use plan's last update time
@@ -412,72 +637,37 @@ public class Netention {
                             n.meta.remove("plan_error_message"); // Remove if no error
                         }
                     }
-                    core.saveNote(n);
+                    return n;
                 });
 
                 if (Set.of(Netention.PlanState.COMPLETED, Netention.PlanState.FAILED, Netention.PlanState.STUCK).contains(exec.currentStatus) &&
                     exec.steps.stream().noneMatch(s -> Netention.PlanStepState.PENDING_RETRY.equals(s.status))) {
-                     active.remove(exec.planNoteId);
+                     finish(exec);
                 }
                 core.fireCoreEvent(Core.CoreEventType.PLAN_UPDATED, exec);
             }
         }
 
         private Optional<PlanStep> nextRunnableStep(PlanExecution exec) {
-            return exec.steps.stream().filter(step -> Netention.PlanStepState.PENDING.equals(step.status) || Netention.PlanStepState.PENDING_RETRY.equals(step.status)).filter(step -> step.dependsOnStepIds.isEmpty() || step.dependsOnStepIds.stream().allMatch(depId -> exec.getStepById(depId).map(depStep -> Netention.PlanStepState.COMPLETED.equals(depStep.status)).orElseGet(() -> {
+            if (exec.cancelled) return Optional.empty();
+            var now = Instant.now();
+            return exec.steps.stream().filter(step -> Netention.PlanStepState.PENDING.equals(step.status) || (Netention.PlanStepState.PENDING_RETRY.equals(step.status) && (step.retryAt == null || !step.retryAt.isAfter(now)))).filter(step -> step.dependsOnStepIds.isEmpty() || step.dependsOnStepIds.stream().allMatch(depId -> exec.getStepById(depId).map(depStep -> Netention.PlanStepState.COMPLETED.equals(depStep.status)).orElseGet(() -> {
                 logger.warn("Dependency step {} not found for step {}", depId, step.id);
                 return false;
             }))).findFirst();
         }
 
-        private Object traversePath(Object current, String[] parts, int startIndex, PlanStep currentStepContext) {
-            Object c = current;
-            for (var i = startIndex; i < parts.length; i++) {
-                if (c == null) return null;
-                var part = parts[i];
-                int I = i;
-                c = switch (c) {
-                    case PlanStep ps when "result".equals(part) && I == startIndex && ps == currentStepContext ->
-                            ps.result;
-                    case Map map -> map.get(part);
-                    case JsonNode jn -> jn.has(part) ? jn.get(part) : null;
-                    default -> null;
-                };
-            }
-            return c;
-        }
-
         public Object resolveContextValue(String path, PlanExecution planExec) {
-            if (path == null || !path.startsWith("$")) return path;
-            var key = path.substring(1);
-            var parts = key.split("\\.");
-            Object currentValue;
-
-            if ("trigger".equals(parts[0])) {
-                currentValue = traversePath(planExec.context.get(parts[0]), parts, 1, null);
-            } else {
-                var stepOpt = planExec.getStepById(parts[0]);
-                if (stepOpt.isPresent()) {
-                    currentValue = traversePath(stepOpt.get(), parts, 1, stepOpt.get());
-                } else {
-                    currentValue = planExec.context.get(key);
-                }
-            }
-
-            if (currentValue instanceof JsonNode jn && jn.isValueNode()) {
-                if (jn.isTextual()) return jn.asText();
-                if (jn.isNumber()) return jn.numberValue();
-                if (jn.isBoolean()) return jn.asBoolean();
-                return jn.toString();
-            }
-            return (currentValue != null) ? currentValue : path;
+            return path == null || !path.startsWith("$") ? path : Plans.Ref.parse(path).resolve(planExec);
         }
 
         private void executeStep(PlanExecution planExec, PlanStep step) {
-            new Thread(() -> {
+            var queuedAt = System.nanoTime();
+            var root = planExec.root();
+            scheduler.submit(root.lane, root.priority, () -> {
                 var currentToolNameStr = step.toolName;
                 if (currentToolNameStr == null) {
-                    step.addLog("Critical Error: Tool name is null for step ID " + step.id);
+                    step.addLog("Critical Error: Tool name is null for step ID {}", step.id);
                     step.status = Netention.PlanStepState.FAILED;
                     step.result = "Tool name was null.";
                     step.endTime = step.lastUpdatedAt = Instant.now();
@@ -486,76 +676,309 @@ public class Netention {
                     SwingUtilities.invokeLater(() -> processExecution(planExec));
                     return;
                 }
-                // Make a mutable copy of original toolParams for resolution
-                Map<String, Object> paramsForExecution = step.toolParams != null ? new HashMap<>(step.toolParams) : new HashMap<>();
-
+                var binding = step.binding;
                 if (step.currentAlternativeIndex >= 0 && step.currentAlternativeIndex < step.alternatives.size()) {
                     var alt = step.alternatives.get(step.currentAlternativeIndex);
                     currentToolNameStr = alt.toolName();
-                    // Ensure paramsForExecution is replaced, not merged, if alternative has its own params
-                    paramsForExecution = alt.toolParams() != null ? new HashMap<>(alt.toolParams()) : new HashMap<>();
-                    step.addLog("Using alternative " + step.currentAlternativeIndex + ": " + currentToolNameStr);
+                    binding = Plans.Binding.of(currentToolNameStr, alt.toolParams() != null ? alt.toolParams() : Map.of());
+                    step.addLog("Using alternative {}: {}", step.currentAlternativeIndex, currentToolNameStr);
                 } else {
-                    step.addLog("Using primary tool: " + currentToolNameStr);
+                    if (binding == null) binding = Plans.Binding.of(currentToolNameStr, step.toolParams != null ? step.toolParams : Map.of());
+                    step.addLog("Using primary tool: {}", currentToolNameStr);
                 }
                 step.lastUpdatedAt = Instant.now();
+                var span = step.span = core.traces.step(planExec.span, step, currentToolNameStr, queuedAt);
+                span.start();
+                var ok = false;
 
                 try {
-                    Map<String, Object> resolvedParams = new HashMap<>();
-                    if (paramsForExecution != null) {
-                        for (var entry : paramsForExecution.entrySet()) {
-                            var value = entry.getValue();
-                            resolvedParams.put(entry.getKey(), (value instanceof String valStr && valStr.startsWith("$")) ? resolveContextValue(valStr, planExec) : value);
-                        }
-                    }
+                    var resolvedParams = binding.resolve(planExec);
                     // Update step.toolParams to store the *resolved* parameters for viewing
                     // This replaces the original (potentially unresolved) parameters.
                     step.toolParams = resolvedParams;
 
 
-                    var currentTool = Core.Tool.fromString(currentToolNameStr);
+                    var currentTool = binding.tool() != null ? binding.tool() : Core.Tool.fromString(currentToolNameStr);
                     if (Core.Tool.USER_INTERACTION.equals(currentTool)) {
-                        var callbackKey = planExec.planNoteId + "_" + step.id;
+                        var callbackKey = planExec.id + "_" + step.id;
                         planExec.waitingCallbacks.put(callbackKey, step);
                         step.status = Netention.PlanStepState.WAITING_FOR_USER;
-                        step.addLog("Waiting for user interaction: " + resolvedParams.getOrDefault(Netention.ToolParam.PROMPT.getKey(), "Provide input:"));
+                        step.addLog("Waiting for user interaction: {}", resolvedParams.getOrDefault(Netention.ToolParam.PROMPT.getKey(), "Provide input:"));
                         step.lastUpdatedAt = Instant.now();
                         planExec.markUpdated();
                         core.fireCoreEvent(Core.CoreEventType.USER_INTERACTION_REQUESTED, Map.of(Netention.ToolParam.PROMPT.getKey(), resolvedParams.getOrDefault(Netention.ToolParam.PROMPT.getKey(), "Provide input:"), Netention.ToolParam.CALLBACK_KEY.getKey(), callbackKey, Netention.ToolParam.PLAN_NOTE_ID.getKey(), planExec.planNoteId));
                         core.fireCoreEvent(Core.CoreEventType.PLAN_UPDATED, planExec);
+                        ok = true;
                         return;
                     }
 
-                    var result = core.executeTool(currentTool, resolvedParams);
+                    var hedged = step.hedge == null || step.currentAlternativeIndex >= 0 ? List.<AlternativeExecution>of() : step.alternatives.stream().filter(a -> a.confidenceScore() >= step.hedge.minConfidence()).toList();
+                    var result = hedged.isEmpty() ? invoke(planExec, step, currentTool, binding, resolvedParams) : hedge(planExec, step, currentTool, binding, resolvedParams, hedged);
                     step.result = result;
                     if (step.id != null && result != null) planExec.context.put(step.id + ".result", result);
                     step.status = Netention.PlanStepState.COMPLETED;
-                    step.addLog("Completed. Result: " + (result != null ? result.toString().substring(0, Math.min(result.toString().length(), 100)) : "null"));
+                    ok = true;
+                    step.addLog("Completed. Result: {}", result);
                 } catch (Exception e) {
                     String errorMsg = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
                     logger.error("Step {} (Tool: {}) failed: {}", step.description, currentToolNameStr, errorMsg, e);
-                    step.addLog("Failed: " + errorMsg);
+                    step.addLog("Failed: {}", errorMsg);
+                    var tool = binding.tool();
+                    var policy = retries.policy(step, tool);
+                    step.maxRetries = policy.maxRetries();
                     if (step.currentAlternativeIndex < step.alternatives.size() - 1) {
                         step.currentAlternativeIndex++;
                         step.status = Netention.PlanStepState.PENDING_RETRY;
                         step.addLog("Will attempt next alternative.");
-                    } else if (step.retryCount < step.maxRetries) {
+                    } else if (planExec.root().cancelled || !Retries.retryable(e)) {
+                        step.status = Netention.PlanStepState.FAILED;
+                        step.result = errorMsg;
+                        step.addLog("Not retryable ({}).", e.getClass().getSimpleName());
+                    } else if (step.retryCount < policy.maxRetries()) {
                         step.retryCount++;
                         step.currentAlternativeIndex = -1;
                         step.status = Netention.PlanStepState.PENDING_RETRY;
-                        step.addLog("Will attempt retry #" + step.retryCount + ".");
+                        var delay = Math.max(policy.delay(step.retryCount), tool == null ? 0 : retries.breaker(tool).retryAfterMs());
+                        step.retryAt = Instant.now().plusMillis(delay);
+                        step.addLog("Will attempt retry #{} in {}ms.", step.retryCount, delay);
+                        core.timers.schedule(Duration.ofMillis(delay), () -> SwingUtilities.invokeLater(() -> processExecution(planExec)));
                     } else {
                         step.status = Netention.PlanStepState.FAILED;
                         step.result = errorMsg;
                     }
                 } finally {
+                    span.end(ok);
                     step.endTime = Instant.now();
                     step.lastUpdatedAt = step.endTime;
                     planExec.markUpdated();
+                    if (!planExec.cancelled) journal.step(planExec, step);
                     core.fireCoreEvent(Core.CoreEventType.PLAN_UPDATED, planExec);
                     SwingUtilities.invokeLater(() -> processExecution(planExec));
                 }
-            }).start();
+            });
+        }
+
+        private Object invoke(PlanExecution exec, PlanStep step, Core.Tool tool, Plans.Binding binding, Map<String, Object> params) throws Exception {
+            return switch (tool) {
+                case IF_ELSE -> {
+                    var condition = Expr.truthy(params.get(ToolParam.CONDITION.getKey()));
+                    var body = binding.body((condition ? ToolParam.TRUE_STEPS : ToolParam.FALSE_STEPS).getKey());
+                    step.addLog("Condition {}; running {} branch steps.", condition, body == null ? 0 : body.steps().size());
+                    var r = new HashMap<String, Object>();
+                    r.put("condition", condition);
+                    r.put("result", body == null ? null : run(exec, step, body, Map.of()));
+                    yield r;
+                }
+                case FOR_EACH -> {
+                    var items = params.get(ToolParam.LIST.getKey()) instanceof Collection<?> c ? List.copyOf(c) : List.of();
+                    var loopVar = params.get(ToolParam.LOOP_VAR.getKey()) instanceof String v && !v.isBlank() ? v : "item";
+                    var parallelism = params.get(ToolParam.MAX_PARALLELISM.getKey()) instanceof Number n ? Math.max(1, n.intValue()) : 1;
+                    var body = binding.body(ToolParam.LOOP_STEPS.getKey());
+                    if (body == null || items.isEmpty()) yield List.of();
+                    step.addLog("Iterating {} items as '{}' (parallelism {}).", items.size(), loopVar, parallelism);
+                    yield forEach(exec, step, body, items, loopVar, parallelism);
+                }
+                case USER_INTERACTION -> throw new UnsupportedOperationException("USER_INTERACTION is not supported in nested steps.");
+                default -> call(exec, tool, params);
+            };
+        }
+
+        private Object hedge(PlanExecution exec, PlanStep step, Core.Tool tool, Plans.Binding binding, Map<String, Object> params, List<AlternativeExecution> alts) throws Exception {
+            var n = alts.size() + 1;
+            var delay = step.hedge.delayMs();
+            var done = new LinkedBlockingQueue<Future<Win>>();
+            var attempts = new ArrayList<Task<Win>>(n);
+            Callable<Win> primary = () -> new Win(0, tool.name(), invoke(exec, step, tool, binding, params));
+            attempts.add(fork(exec, primary, done));
+            step.addLog("Hedging over {} alternatives {}.", alts.size(), delay > 0 ? "after " + delay + "ms" : "in parallel");
+            try {
+                for (var failures = 0; ; ) {
+                    if (delay <= 0) while (attempts.size() < n) attempts.add(fork(exec, alternative(exec, step, alts, attempts.size()), done));
+                    var f = done.poll(attempts.size() < n ? delay : STEAL_AFTER_MS, TimeUnit.MILLISECONDS);
+                    if (f == null) {
+                        if (attempts.size() < n) attempts.add(fork(exec, alternative(exec, step, alts, attempts.size()), done));
+                        else if (attempts.stream().noneMatch(Task::steal)) f = done.take();
+                        if (f == null) continue;
+                    }
+                    try {
+                        var w = f.get();
+                        var label = w.index == 0 ? "primary" : "alternative " + w.index + " (" + w.toolName + ")";
+                        hedgeWins.computeIfAbsent(tool.name() + " <- " + label, k -> new LongAdder()).increment();
+                        step.addLog("Hedge won by {} of {} started.", label, attempts.size());
+                        return w.result;
+                    } catch (ExecutionException e) {
+                        step.addLog("Hedged attempt failed: {}", e.getCause().getMessage());
+                        if (++failures == n) {
+                            step.currentAlternativeIndex = step.alternatives.size() - 1;
+                            throw e.getCause() instanceof Exception x ? x : e;
+                        }
+                        if (attempts.size() < n) attempts.add(fork(exec, alternative(exec, step, alts, attempts.size()), done));
+                    }
+                }
+            } finally {
+                attempts.forEach(this::abandon);
+            }
+        }
+
+        private Callable<Win> alternative(PlanExecution exec, PlanStep step, List<AlternativeExecution> alts, int index) {
+            var alt = alts.get(index - 1);
+            return () -> {
+                var b = Plans.Binding.of(alt.toolName(), alt.toolParams() != null ? alt.toolParams() : Map.of());
+                return new Win(index, alt.toolName(), invoke(exec, step, b.tool() != null ? b.tool() : Core.Tool.fromString(alt.toolName()), b, b.resolve(exec)));
+            };
+        }
+
+        private record Win(int index, String toolName, Object result) {
+        }
+
+        private Object call(PlanExecution exec, Core.Tool tool, Map<String, Object> params) {
+            var task = Task.current();
+            if (task != null && task.abandoned()) throw new CancellationException(tool + " abandoned");
+            var breaker = retries.breaker(tool);
+            if (!breaker.allow()) throw new Retries.OpenCircuitException(tool, breaker.retryAfterMs());
+            try {
+                var r = core.executeTool(tool, params, task == null ? exec.root().id : task.scope);
+                breaker.success();
+                return r;
+            } catch (RejectedExecutionException | CancellationException e) {
+                breaker.inconclusive();
+                throw e;
+            } catch (RuntimeException e) {
+                if (Retries.retryable(e)) breaker.failure();
+                else breaker.success();
+                throw e;
+            }
+        }
+
+        private List<Object> forEach(PlanExecution exec, PlanStep step, Plans.Template body, List<?> items, String var, int parallelism) throws Exception {
+            var results = new Object[items.size()];
+            if (parallelism == 1 || items.size() == 1) {
+                for (var i = 0; i < results.length; i++) results[i] = run(exec, step, body, loopBindings(var, items.get(i), i));
+                return Arrays.asList(results);
+            }
+            var next = new AtomicInteger();
+            Callable<Void> worker = () -> {
+                for (int i; (i = next.getAndIncrement()) < results.length; ) {
+                    try {
+                        results[i] = run(exec, step, body, loopBindings(var, items.get(i), i));
+                    } catch (Exception e) {
+                        next.set(results.length);
+                        throw e;
+                    }
+                }
+                return null;
+            };
+            var helpers = new ArrayList<Task<Void>>();
+            for (var w = Math.min(parallelism, results.length) - 1; w > 0; w--) helpers.add(fork(exec, worker, null));
+            try {
+                worker.call();
+                for (var t : helpers) {
+                    t.steal();
+                    t.get();
+                }
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception x ? x : e;
+            } finally {
+                helpers.forEach(this::abandon);
+            }
+            return Arrays.asList(results);
+        }
+
+        private <T> Task<T> fork(PlanExecution exec, Callable<T> c, Queue<Future<T>> done) {
+            var root = exec.root();
+            var parent = Task.current();
+            var t = new Task<>((parent == null ? root.id : parent.scope) + "/" + forks.incrementAndGet(), parent, new AtomicBoolean(), c, done);
+            scheduler.submit(root.lane, root.priority, t);
+            return t;
+        }
+
+        private void abandon(Task<?> t) {
+            if (t.cancel(false)) core.invocations.cancel(t.scope);
+        }
+
+        private static final class Task<T> extends FutureTask<T> {
+            private static final ThreadLocal<Task<?>> running = new ThreadLocal<>();
+            final String scope;
+            private final Task<?> parent;
+            private final AtomicBoolean started;
+            private final Queue<Future<T>> done;
+
+            Task(String scope, Task<?> parent, AtomicBoolean started, Callable<T> c, Queue<Future<T>> done) {
+                super(() -> {
+                    started.set(true);
+                    return c.call();
+                });
+                this.scope = scope;
+                this.parent = parent;
+                this.started = started;
+                this.done = done;
+            }
+
+            static Task<?> current() {
+                return running.get();
+            }
+
+            boolean abandoned() {
+                return isCancelled() || parent != null && parent.abandoned();
+            }
+
+            @Override
+            public void run() {
+                var outer = running.get();
+                running.set(this);
+                try {
+                    super.run();
+                } finally {
+                    running.set(outer);
+                }
+            }
+
+            boolean steal() {
+                if (started.get() || isDone()) return false;
+                run();
+                return true;
+            }
+
+            @Override
+            protected void done() {
+                if (done != null) done.add(this);
+            }
+        }
+
+        private static Map<String, Object> loopBindings(String var, Object item, int index) {
+            var m = new HashMap<String, Object>();
+            if (item != null) m.put(var, item);
+            m.put(var + "_index", index);
+            return m;
+        }
+
+        private Object run(PlanExecution parent, PlanStep owner, Plans.Template body, Map<String, Object> bindings) throws Exception {
+            var child = new PlanExecution(parent, parent.id + "/" + owner.id, parent.planNoteId, bindings);
+            child.steps.addAll(body.instantiate());
+            Object last = null;
+            for (var s : child.steps) {
+                if (parent.root().cancelled) throw new CancellationException("Plan " + parent.root().id + " cancelled");
+                if (s.binding.tool() == null) throw new IllegalArgumentException("Unknown tool in nested step " + s.id + ": " + s.toolName);
+                s.status = Netention.PlanStepState.RUNNING;
+                s.startTime = Instant.now();
+                var span = s.span = core.traces.step(owner.span, s, s.toolName, System.nanoTime());
+                span.start();
+                try {
+                    var params = s.binding.resolve(child);
+                    s.toolParams = params;
+                    last = s.result = invoke(child, s, s.binding.tool(), s.binding, params);
+                    span.end(true);
+                } catch (Exception e) {
+                    span.end(false);
+                    s.status = Netention.PlanStepState.FAILED;
+                    throw new IllegalStateException("Nested step " + s.id + " (" + s.toolName + ") failed: " + e.getMessage(), e);
+                }
+                s.status = Netention.PlanStepState.COMPLETED;
+                s.endTime = s.lastUpdatedAt = Instant.now();
+                if (last != null) child.context.put(s.id + ".result", last);
+                owner.addLog("Nested {} ({}) completed.", s.toolName, s.id);
+            }
+            return last;
         }
 
         public void postUserInteractionResult(String callbackKey, Object result) {
@@ -564,10 +987,11 @@ public class Netention {
                 if (step != null) {
                     step.result = result;
                     step.status = (result == null || (result instanceof String s && s.isEmpty())) ? Netention.PlanStepState.FAILED : Netention.PlanStepState.COMPLETED;
-                    step.addLog("User interaction " + (step.status == Netention.PlanStepState.COMPLETED ? "completed" : "failed/empty") + ". Result: " + result);
+                    step.addLog("User interaction {}. Result: {}", step.status == Netention.PlanStepState.COMPLETED ? "completed" : "failed/empty", result);
                     if (step.id != null && result != null) exec.context.put(step.id + ".result", result);
                     step.endTime = step.lastUpdatedAt = Instant.now(); // Update timestamps
                     exec.markUpdated(); // Mark plan as updated
+                    journal.step(exec, step);
                     core.fireCoreEvent(Core.CoreEventType.PLAN_UPDATED, exec);
                     SwingUtilities.invokeLater(() -> processExecution(exec)); // Continue plan execution
                 }
@@ -575,7 +999,7 @@ public class Netention {
         }
 
         public Optional<PlanExecution> getPlanExecution(String planNoteId) {
-            return ofNullable(active.get(planNoteId));
+            return ofNullable(active.get(planNoteId)).or(() -> active.values().stream().filter(e -> e.planNoteId.equals(planNoteId)).max(Comparator.comparing(e -> e.lastPlanUpdatedAt)));
         }
 
         public Map<String, PlanExecution> getActive() {
@@ -584,65 +1008,134 @@ public class Netention {
 
         @JsonIgnoreProperties(ignoreUnknown = true)
         public static class PlanStep {
+            @JsonAlias("depends_on_step_ids")
             public final List<String> dependsOnStepIds = new ArrayList<>();
             public final List<AlternativeExecution> alternatives = new ArrayList<>();
-            public final int maxRetries = DEFAULT_MAX_RETRIES;
-            public String id = UUID.randomUUID().toString();
+            public String id;
             public String description;
+            @JsonAlias("tool_name")
             public String toolName;
+            @JsonAlias("tool_params")
             public Map<String, Object> toolParams = new HashMap<>(); // Existing: For "Parameters"
             public Netention.PlanStepState status = Netention.PlanStepState.PENDING;
             public Object result;
+            @JsonAlias("output_note_id")
             public String outputNoteId;
             public Instant startTime, endTime; // Existing: endTime for "Last Updated" of terminal steps
             public Instant lastUpdatedAt; // New: More granular "Last Updated"
-            public List<String> logs = new CopyOnWriteArrayList<>(); // New: For "Logs/Messages"
+            public StepLog logs = new StepLog();
             public int retryCount = 0;
+            public int maxRetries = Retries.DEFAULT.maxRetries();
+            public Retries.Policy retry;
+            public Hedge hedge;
+            public Instant retryAt;
             public int currentAlternativeIndex = -1;
+            @JsonIgnore
+            public transient Plans.Binding binding;
+            @JsonIgnore
+            public transient Traces.Span span;
 
-            // New: Helper method to add logs and update timestamp
-            public void addLog(String message) {
-                if (this.logs == null) { // Defensive initialization
-                    this.logs = new CopyOnWriteArrayList<>();
-                }
-                // Simple log format, could be enhanced
-                this.logs.add("[" + Instant.now().toString().substring(11, 23) + "] " + message);
-                this.lastUpdatedAt = Instant.now();
+            public PlanStep() {
+                this(UUID.randomUUID().toString());
+            }
+
+            public PlanStep(String id) {
+                this.id = id;
+            }
+
+            public void addLog(String template, Object... args) {
+                if (logs == null) logs = new StepLog();
+                var now = System.currentTimeMillis();
+                logs.add(id, now, template, args);
+                lastUpdatedAt = Instant.ofEpochMilli(now);
             }
         }
 
         public static class PlanExecution {
+            public final String id;
             public final String planNoteId;
+            public final PlanExecution parent;
             public final List<PlanStep> steps = new CopyOnWriteArrayList<>();
             public final Map<String, Object> context = new ConcurrentHashMap<>();
             public final Map<String, PlanStep> waitingCallbacks = new ConcurrentHashMap<>();
             public Netention.PlanState currentStatus = Netention.PlanState.PENDING; // Existing: Overall plan status
             public Instant lastPlanUpdatedAt = Instant.now(); // New: Timestamp for plan's last update
             public String errorMessage = null; // New: For overall plan error message
+            public volatile boolean cancelled;
+            public Scheduler.Lane lane = Scheduler.Lane.INTERACTIVE;
+            public int priority;
+            @JsonIgnore
+            public transient Traces.Span span;
 
             public PlanExecution(String planNoteId) {
-                this.planNoteId = planNoteId;
+                this(null, planNoteId, planNoteId, Map.of());
             }
 
             public PlanExecution(String planNoteId, Map<String, Object> initialContext) {
+                this(null, planNoteId, planNoteId, initialContext);
+            }
+
+            public PlanExecution(PlanExecution parent, String id, String planNoteId, Map<String, Object> initialContext) {
+                this.id = id;
                 this.planNoteId = planNoteId;
+                this.parent = parent;
                 this.context.putAll(initialContext);
                 this.lastPlanUpdatedAt = Instant.now(); // Initialize on creation
             }
 
+            public boolean isInstance() {
+                return !id.equals(planNoteId);
+            }
+
+            public PlanExecution root() {
+                return parent == null ? this : parent.root();
+            }
+
+            public void prioritize(Note plan) {
+                lane = Scheduler.Lane.of(plan);
+                priority = plan.getPriority();
+            }
+
             // New: Helper method to mark the plan as updated
             public void markUpdated() {
                 this.lastPlanUpdatedAt = Instant.now();
             }
 
             public Optional<PlanStep> getStepById(String id) {
-                return steps.stream().filter(s -> s.id.equals(id)).findFirst();
+                for (var s : steps) if (s.id.equals(id)) return Optional.of(s);
+                return parent != null ? parent.getStepById(id) : Optional.empty();
+            }
+
+            public Object lookup(String key) {
+                var v = context.get(key);
+                return v != null || parent == null ? v : parent.lookup(key);
+            }
+        }
+
+        public enum Overflow {DROP_NEWEST, DROP_OLDEST}
+
+        private record Trigger(String handlerId, String eventId, String id, Map<String, Object> context, long queuedAt) {
+        }
+
+        private static class Admission {
+            final Deque<Trigger> backlog = new ArrayDeque<>();
+            int maxConcurrency = DEFAULT_MAX_CONCURRENCY, backlogCapacity = DEFAULT_BACKLOG_CAPACITY, running;
+            long dropped, admitted;
+            Overflow overflow = Overflow.DROP_OLDEST;
+
+            void configure(Map<String, Object> handler) {
+                maxConcurrency = handler.get("maxConcurrency") instanceof Number n ? Math.max(1, n.intValue()) : DEFAULT_MAX_CONCURRENCY;
+                backlogCapacity = handler.get("backlogCapacity") instanceof Number n ? Math.max(0, n.intValue()) : DEFAULT_BACKLOG_CAPACITY;
+                overflow = handler.get("overflowPolicy") instanceof String p ? Stream.of(Overflow.values()).filter(o -> o.name().equalsIgnoreCase(p)).findFirst().orElse(Overflow.DROP_OLDEST) : Overflow.DROP_OLDEST;
             }
         }
 
-        public record AlternativeExecution(String toolName, Map<String, Object> toolParams, double confidenceScore,
+        public record AlternativeExecution(@JsonAlias("tool_name") String toolName, @JsonAlias("tool_params") Map<String, Object> toolParams, @JsonAlias("confidence_score") double confidenceScore,
                                            String rationale) {
         }
+
+        public record Hedge(long delayMs, double minConfidence) {
+        }
     }
 
     public static class Core {
@@ -652,17 +1145,22 @@ public class Netention {
         public final Nostr net;
         public final LM lm;
         public final Planner planner;
+        public final Queries queries;
+        public final Plans plans;
+        public final Archiver archiver;
+        public final Timers timers;
+        public final Invocations invocations;
+        public final Memos memos;
+        public final Traces traces = new Traces();
         public final Map<Tool, BiFunction<Core, Map<String, Object>, Object>> tools = new ConcurrentHashMap<>();
         public final ObjectMapper json = createObjectMapper();
-        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-            var t = new Thread(r, "NetentionCoreScheduler");
-            t.setDaemon(true);
-            return t;
-        });
         private final List<Consumer<CoreEvent>> coreEventListeners = new CopyOnWriteArrayList<>();
 
         public Core() {
-            var dDir = Paths.get(System.getProperty("user.home"), ".netention", "data");
+            this(Paths.get(System.getProperty("user.home"), ".netention", "data"), LM::new);
+        }
+
+        public Core(Path dDir, Function<Config, LM> lm) {
             try {
                 Files.createDirectories(dDir);
             } catch (IOException e) {
@@ -670,13 +1168,21 @@ public class Netention {
                 throw new RuntimeException("Init failed: data dir error.", e);
             }
 
+            if (Boolean.getBoolean("netention.traces")) traces.exportJsonLines(dDir.resolve("traces.jsonl"), 16L << 20);
+            StepLog.spillTo(dDir.resolve("step-logs.log"), 8L << 20);
             this.notes = new Notes(dDir);
             this.cfg = new Config(notes, this);
-            this.planner = new Planner(this);
+            this.plans = new Plans();
+            this.invocations = new Invocations(this);
+            this.memos = new Memos(this);
+            this.planner = new Planner(this, dDir.resolve("plans"));
+            this.queries = new Queries(this);
             Tools.registerAllTools(tools);
+            Tools.declareMemoizable(memos);
             bootstrapSystemNotes();
 
-            Stream.of("nostr", "ui", "llm").forEach(typeKey -> {
+            var defaults = new Notes.Batch();
+            Config.TYPES.forEach(typeKey -> {
                 var noteId = Config.CONFIG_NOTE_PREFIX + typeKey;
                 if (notes.get(noteId).isEmpty()) {
                     logger.info("Config note {} not found after bootstrap. Creating with defaults.", noteId);
@@ -684,21 +1190,32 @@ public class Netention {
                         case "nostr" -> cfg.net;
                         case "ui" -> cfg.ui;
                         case "llm" -> cfg.lm;
+                        case "retention" -> cfg.retention;
                         default -> null;
                     };
-                    cfg.saveConfigObjectToNote(configInstance, typeKey);
+                    defaults.save(cfg.configNote(configInstance, typeKey));
                 }
             });
+            if (!defaults.isEmpty()) notes.commit(defaults);
 
             fireCoreEvent(CoreEventType.SYSTEM_EVENT_REQUESTED, Map.of(ToolParam.EVENT_TYPE.getKey(), SystemEventType.LOAD_ALL_CONFIGS_REQUESTED.name(), ToolParam.PAYLOAD.getKey(), Collections.emptyMap(), ContentKey.STATUS.getKey(), PlanState.PENDING.name()));
-            this.lm = new LM(cfg);
+            this.lm = lm.apply(cfg);
+            this.lm.cache(new Completions(cfg.lm, dDir.resolve("lm-cache.jsonl")));
             this.net = new Nostr(cfg, this, this::handleRawNostrEvent);
-            scheduler.schedule(() -> fireCoreEvent(CoreEventType.SYSTEM_EVENT_REQUESTED, Map.of(ToolParam.EVENT_TYPE.getKey(), SystemEventType.EVALUATE_PERSISTENT_QUERIES.name(), ToolParam.PAYLOAD.getKey(), Collections.emptyMap(), ContentKey.STATUS.getKey(), PlanState.PENDING.name())), 30, TimeUnit.SECONDS);
+            this.archiver = new Archiver(this);
+            this.timers = new Timers(this, dDir.resolve("timers.jsonl"), planner.workers);
+            timers.start();
+            timers.schedule(Duration.ofSeconds(5), planner::resume);
+            planner.watchdog.start();
+            timers.schedule(Duration.ofSeconds(30), () -> fireCoreEvent(CoreEventType.SYSTEM_EVENT_REQUESTED, Map.of(ToolParam.EVENT_TYPE.getKey(), SystemEventType.EVALUATE_PERSISTENT_QUERIES.name(), ToolParam.PAYLOAD.getKey(), Collections.emptyMap(), ContentKey.STATUS.getKey(), PlanState.PENDING.name())));
 
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 logger.info("Netention stop...");
-                scheduler.shutdownNow();
+                timers.stop();
+                archiver.stop();
                 if (net.isEnabled()) net.setEnabled(false);
+                notes.checkpoint();
+                notes.embeddings.close();
                 logger.info("Netention shutdown complete.");
             }));
             logger.info("NetentionCore initialized.");
@@ -733,6 +1250,7 @@ public class Netention {
         }
 
         public void fireCoreEvent(CoreEventType type, Object data) {
+            if (type == CoreEventType.CONFIG_CHANGED && memos != null) memos.configChanged();
             var event = new CoreEvent(type, data);
             if (type == CoreEventType.SYSTEM_EVENT_REQUESTED && data instanceof Map<?, ?> eventDetailsMap) {
                 var details = (Map<String, Object>) eventDetailsMap;
@@ -753,19 +1271,58 @@ public class Netention {
         public Note saveNote(Note note) {
             if (note == null) return null;
             var savedNote = notes.save(note);
+            afterSave(savedNote);
+            return savedNote;
+        }
+
+        public Optional<Note> saveNoteIfVersion(Note note, int expectedVersion) {
+            var saved = notes.saveIfVersion(note, expectedVersion);
+            saved.ifPresent(this::afterSave);
+            return saved;
+        }
+
+        public Optional<Note> updateNote(String noteId, UnaryOperator<Note> fn) {
+            var saved = notes.update(noteId, fn);
+            saved.ifPresent(this::afterSave);
+            return saved;
+        }
+
+        public Notes.Changes commit(Notes.Batch batch) {
+            var changes = notes.commit(batch);
+            changes.saved().forEach(queries::accept);
+            changes.deleted().forEach(queries::remove);
+            changes.deleted().forEach(plans::evict);
+            fireCoreEvent(CoreEventType.NOTES_CHANGED, changes);
+            changes.saved().forEach(this::checkForSystemTriggers);
+            return changes;
+        }
+
+        private void afterSave(Note savedNote) {
             fireCoreEvent(savedNote.version == 1 ? CoreEventType.NOTE_ADDED : CoreEventType.NOTE_UPDATED, savedNote);
+            queries.accept(savedNote);
             checkForSystemTriggers(savedNote);
-            return savedNote;
         }
 
         public boolean deleteNote(String noteId) {
             if (notes.delete(noteId)) {
                 fireCoreEvent(Core.CoreEventType.NOTE_DELETED, noteId);
+                queries.remove(noteId);
+                plans.evict(noteId);
                 return true;
             }
             return false;
         }
 
+        public Notes.Archived archiveNotes(Collection<String> ids, Predicate<Note> eligible) {
+            var archived = notes.archive(ids, eligible);
+            archived.ids().forEach(id -> {
+                fireCoreEvent(Core.CoreEventType.NOTE_DELETED, id);
+                queries.remove(id);
+                plans.evict(id);
+            });
+            return archived;
+        }
+
         private void handleRawNostrEvent(Nostr.NostrEvent event) {
             logger.debug("Queueing Nostr event as System Event Note: kind={}, id={}", event.kind, event.id);
             try {
@@ -794,14 +1351,7 @@ public class Netention {
 
                 if (eventTypeMatches && statusMatches) {
                     logger.info("System trigger matched for handler {} by event note {}", handlerNote.id, triggeredNote.id);
-                    var existingExecution = planner.getPlanExecution(handlerNote.id).orElse(null);
-                    if (existingExecution != null && PlanState.RUNNING.equals(existingExecution.currentStatus)) {
-                        logger.warn("Handler plan {} is already running. Skipping new trigger by {}.", handlerNote.id, triggeredNote.id);
-                        continue;
-                    }
-                    Map<String, Object> planContext = new HashMap<>();
-                    planContext.put("trigger", Map.of("sourceEventNoteId", triggeredNote.id, "eventContent", new HashMap<>(triggeredNote.content)));
-                    planner.execute(handlerNote, planContext);
+                    planner.trigger(handlerNote, triggeredNote);
                 }
             }
         }
@@ -822,7 +1372,7 @@ public class Netention {
 
             PlanDefBuilder.create("system_listener_reject_friend_request_handler").title("System Listener: Reject Friend Request").tags(SystemTag.SYSTEM_PROCESS_HANDLER.value, SystemTag.SYSTEM_NOTE.value).trigger(SystemEventType.REJECT_FRIEND_REQUEST, PlanState.PENDING).step("s0_get_payload", Tool.GET_NOTE_PROPERTY, Map.of(ToolParam.NOTE_ID, "$trigger.sourceEventNoteId", ToolParam.PROPERTY_PATH, "content.payload")).step("s1_remove_actionable_item", Tool.FIRE_CORE_EVENT, Map.of(ToolParam.EVENT_TYPE, CoreEventType.ACTIONABLE_ITEM_REMOVED.name(), ToolParam.EVENT_DATA, "$s0_get_payload.result.actionableItemId"), "s0_get_payload").step("s2_mark_processed", Tool.MODIFY_NOTE_CONTENT, Map.of(ToolParam.NOTE_ID, "$trigger.sourceEventNoteId", ToolParam.CONTENT_UPDATE, Map.of(ContentKey.STATUS.getKey(), "PROCESSED")), "s1_remove_actionable_item").bootstrap(this);
 
-            for (var type : new String[]{"nostr", "ui", "llm"}) {
+            for (var type : Config.TYPES) {
                 PlanDefBuilder.create("system_listener_save_" + type + "_config_handler").title("System Listener: Save " + type.toUpperCase() + " Config").tags(SystemTag.SYSTEM_PROCESS_HANDLER.value, SystemTag.SYSTEM_NOTE.value)
                     .trigger(SystemEventType.valueOf("SAVE_" + type.toUpperCase() + "_CONFIG_REQUESTED"), PlanState.PENDING)
                     .step("s1_get_state", Tool.GET_CONFIG_STATE, Map.of(ToolParam.CONFIG_TYPE, type)).step("s2_save_to_note", Tool.MODIFY_NOTE_CONTENT, Map.of(ToolParam.NOTE_ID, Config.CONFIG_NOTE_PREFIX + type, ToolParam.CONTENT_UPDATE, "$s1_get_state.result"), "s1_get_state").step("s3_mark_processed", Tool.MODIFY_NOTE_CONTENT, Map.of(ToolParam.NOTE_ID, "$trigger.sourceEventNoteId", ToolParam.CONTENT_UPDATE, Map.of(ContentKey.STATUS.getKey(), "PROCESSED")), "s2_save_to_note").bootstrap(this);
@@ -830,7 +1380,7 @@ public class Netention {
 
             var loadAllConfigsBuilder = PlanDefBuilder.create("system_listener_load_all_configs_handler").title("System Listener: Load All Configurations").tags(SystemTag.SYSTEM_PROCESS_HANDLER.value, SystemTag.SYSTEM_NOTE.value).trigger(SystemEventType.LOAD_ALL_CONFIGS_REQUESTED, PlanState.PENDING);
             List<String> lastApplyStepIds = new ArrayList<>();
-            for (var type : List.of("nostr", "ui", "llm")) {
+            for (var type : Config.TYPES) {
                 var getId = "s_load_" + type + "_get_content";
                 var applyId = "s_load_" + type + "_apply";
                 loadAllConfigsBuilder.step(getId, Tool.GET_NOTE_PROPERTY, Map.of(ToolParam.NOTE_ID, Config.CONFIG_NOTE_PREFIX + type, ToolParam.PROPERTY_PATH, NoteProperty.CONTENT.getKey(), ToolParam.FAIL_IF_NOT_FOUND, false));
@@ -840,39 +1390,92 @@ public class Netention {
             loadAllConfigsBuilder.step("s_load_mark_processed", Tool.MODIFY_NOTE_CONTENT, Map.of(ToolParam.NOTE_ID, "$trigger.sourceEventNoteId", ToolParam.CONTENT_UPDATE, Map.of(ContentKey.STATUS.getKey(), "PROCESSED")), lastApplyStepIds.toArray(String[]::new)).bootstrap(this);
 
 
-            PlanDefBuilder.create("system_listener_persistent_query_handler").title("System Listener: Persistent Query Handler").tags(SystemTag.SYSTEM_PROCESS_HANDLER.value, SystemTag.SYSTEM_NOTE.value).trigger(SystemEventType.EVALUATE_PERSISTENT_QUERIES, PlanState.PENDING).step("s1_log_start", Tool.LOG_MESSAGE, Map.of(ToolParam.MESSAGE, "Evaluating persistent queries...")).step("s2_find_queries", Tool.FIND_NOTES_BY_TAG, Map.of(ToolParam.TAG, SystemTag.PERSISTENT_QUERY.value)).step("s3_foreach_query", Tool.FOR_EACH, Map.of(ToolParam.LIST, "$s2_find_queries.result", ToolParam.LOOP_VAR, "queryNote", ToolParam.LOOP_STEPS, List.of(Map.of(PlanStepKey.ID.getKey(), "s3_1_get_content", PlanStepKey.TOOL_NAME.getKey(), Tool.GET_NOTE_PROPERTY.name(), PlanStepKey.TOOL_PARAMS.getKey(), Map.of(ToolParam.NOTE_ID.getKey(), "$queryNote.id", ToolParam.PROPERTY_PATH.getKey(), NoteProperty.CONTENT.getKey())), Map.of(PlanStepKey.ID.getKey(), "s3_2_exec_query", PlanStepKey.TOOL_NAME.getKey(), Tool.EXECUTE_SEMANTIC_QUERY.name(), PlanStepKey.TOOL_PARAMS.getKey(), "$s3_1_get_content.result"), Map.of(PlanStepKey.ID.getKey(), "s3_3_update_note", PlanStepKey.TOOL_NAME.getKey(), Tool.MODIFY_NOTE_CONTENT.name(), PlanStepKey.TOOL_PARAMS.getKey(), Map.of(ToolParam.NOTE_ID.getKey(), "$queryNote.id", ToolParam.CONTENT_UPDATE.getKey(), Map.of(ContentKey.RESULTS.getKey(), "$s3_2_exec_query.result", ContentKey.LAST_RUN.getKey(), "NOW"))))), "s2_find_queries").step("s4_reschedule", Tool.SCHEDULE_SYSTEM_EVENT, Map.of(ToolParam.EVENT_TYPE, SystemEventType.EVALUATE_PERSISTENT_QUERIES.name(), ToolParam.DELAY_SECONDS, 3600L), "s3_foreach_query").step("s5_mark_processed", Tool.MODIFY_NOTE_CONTENT, Map.of(ToolParam.NOTE_ID, "$trigger.sourceEventNoteId", ToolParam.CONTENT_UPDATE, Map.of(ContentKey.STATUS.getKey(), "PROCESSED")), "s4_reschedule").bootstrap(this);
+            PlanDefBuilder.create("system_listener_persistent_query_handler").title("System Listener: Persistent Query Handler").tags(SystemTag.SYSTEM_PROCESS_HANDLER.value, SystemTag.SYSTEM_NOTE.value).trigger(SystemEventType.EVALUATE_PERSISTENT_QUERIES, PlanState.PENDING).step("s1_log_start", Tool.LOG_MESSAGE, Map.of(ToolParam.MESSAGE, "Compiling persistent queries...")).step("s2_compile_queries", Tool.EVALUATE_PERSISTENT_QUERIES, Map.of(), "s1_log_start").step("s3_mark_processed", Tool.MODIFY_NOTE_CONTENT, Map.of(ToolParam.NOTE_ID, "$trigger.sourceEventNoteId", ToolParam.CONTENT_UPDATE, Map.of(ContentKey.STATUS.getKey(), "PROCESSED")), "s2_compile_queries").bootstrap(this);
 
             PlanDefBuilder.create("system_listener_stalled_plan_handler").title("System Listener: Stalled Plan Handler").tags(SystemTag.SYSTEM_PROCESS_HANDLER.value, SystemTag.SYSTEM_NOTE.value).trigger(SystemEventType.STALLED_PLAN_DETECTED, PlanState.PENDING).step("s1_get_plan_id", Tool.GET_NOTE_PROPERTY, Map.of(ToolParam.NOTE_ID, "$trigger.sourceEventNoteId", ToolParam.PROPERTY_PATH, "content.payload.planNoteId")).step("s2_log_stalled", Tool.LOG_MESSAGE, Map.of(ToolParam.MESSAGE, "Stalled plan detected: $s1_get_plan_id.result. Consider user notification or automated actions."), "s1_get_plan_id").step("s4_mark_processed", Tool.MODIFY_NOTE_CONTENT, Map.of(ToolParam.NOTE_ID, "$trigger.sourceEventNoteId", ToolParam.CONTENT_UPDATE, Map.of(ContentKey.STATUS.getKey(), "PROCESSED")), "s2_log_stalled").bootstrap(this);
         }
 
         public Object executeTool(Tool tool, Map<String, Object> params) {
+            return executeTool(tool, params, null);
+        }
+
+        public Object executeTool(Tool tool, Map<String, Object> params, String scope) {
             if (tool == null || !tools.containsKey(tool)) throw new IllegalArgumentException("Tool not found: " + tool);
-            logger.info("Executing tool: {} with params: {}", tool.name(), params);
+            logger.atDebug().setMessage("Executing tool: {} with params: {}").addArgument(tool).addArgument(() -> Tools.abbreviate(params)).log();
+            var t0 = System.nanoTime();
             try {
-                return tools.get(tool).apply(this, params);
+                var r = memos.get(tool, params, () -> invocations.call(tool, scope, () -> tools.get(tool).apply(this, params)));
+                traces.tool(tool, t0, true);
+                return r;
             } catch (Exception e) {
+                traces.tool(tool, t0, false);
                 logger.error("Error executing tool {}: {}", tool.name(), e.getMessage(), e);
                 throw e;
             }
         }
 
         public List<Note> findRelatedNotes(Note sourceNote, int maxResults, double minSimilarity) {
-            if (sourceNote == null || sourceNote.getEmbeddingV1() == null || !lm.isReady())
+            var e = sourceNote == null ? null : notes.embedding(sourceNote);
+            if (e == null || !lm.isReady())
                 return Collections.emptyList();
-            var sourceEmbedding = sourceNote.getEmbeddingV1();
-            return notes.getAllNotes().stream().filter(n -> !n.id.equals(sourceNote.id) && n.getEmbeddingV1() != null && n.getEmbeddingV1().length == sourceEmbedding.length && !n.tags.contains(SystemTag.CONFIG.value)).map(candidateNote -> new AbstractMap.SimpleEntry<>(candidateNote, LM.cosineSimilarity(sourceEmbedding, candidateNote.getEmbeddingV1()))).filter(entry -> entry.getValue() > minSimilarity).sorted(Map.Entry.<Note, Double>comparingByValue().reversed()).limit(maxResults).map(Map.Entry::getKey).collect(Collectors.toList());
+            var best = new HashMap<String, Float>();
+            Stream.concat(Stream.of(e), notes.chunks(sourceNote).stream().map(Chunker.Chunk::embedding).filter(Objects::nonNull))
+                    .forEach(q -> notes.embeddings.search(q, maxResults, Math.nextUp((float) minSimilarity), id -> !id.equals(sourceNote.id) && notes.get(id).filter(n -> !n.tags.contains(SystemTag.CONFIG.value)).isPresent())
+                            .forEach(h -> best.merge(h.id(), h.score(), Math::max)));
+            return best.entrySet().stream().sorted(Map.Entry.<String, Float>comparingByValue().reversed()).limit(maxResults)
+                    .flatMap(en -> notes.get(en.getKey()).stream()).collect(Collectors.toList());
+        }
+
+        public Optional<Note> embed(Note n) {
+            var text = n.getContentForEmbedding();
+            var hash = Chunker.hash(text);
+            var known = new HashMap<String, float[]>();
+            notes.chunks(n).stream().filter(c -> c.embedding() != null).forEach(c -> known.put(c.hash(), c.embedding()));
+            var parts = Chunker.split(text, cfg.lm.chunkTokens, cfg.lm.chunkOverlapTokens);
+            var computed = embed(text, parts, known);
+            if (computed != null && computed.stream().mapToInt(c -> c.embedding().length).distinct().count() > 1)
+                computed = embed(text, parts, Map.of());
+            if (computed == null) return Optional.empty();
+            var chunks = computed;
+            UnaryOperator<Note> apply = cur -> {
+                if (!hash.equals(Chunker.hash(cur.getContentForEmbedding()))) return null;
+                if (chunks.size() == 1) {
+                    cur.embeddingV1 = chunks.getFirst().embedding();
+                    cur.chunks = null;
+                } else {
+                    var mean = new float[chunks.getFirst().embedding().length];
+                    for (var c : chunks) for (var i = 0; i < mean.length; i++) mean[i] += c.embedding()[i];
+                    cur.embeddingV1 = Vectors.normalized(mean);
+                    cur.chunks = new ArrayList<>(chunks);
+                }
+                return cur;
+            };
+            var saved = notes.get(n.id).isPresent() ? updateNote(n.id, apply) : Optional.ofNullable(apply.apply(n)).map(this::saveNote);
+            if (saved.isEmpty()) logger.info("Note {} changed while embedding; the vectors were discarded.", n.id);
+            else logger.info("Embedded note {} in {} chunk(s), {} unchanged.", n.id, chunks.size(), parts.stream().filter(c -> known.containsKey(c.hash())).count());
+            return saved;
+        }
+
+        private List<Chunker.Chunk> embed(String text, List<Chunker.Chunk> parts, Map<String, float[]> known) {
+            var chunks = new ArrayList<Chunker.Chunk>(parts.size());
+            for (var c : parts) {
+                var v = known.get(c.hash());
+                if (v == null && (v = lm.generateEmbedding(text.substring(c.start(), c.end())).orElse(null)) == null) return null;
+                chunks.add(c.withEmbedding(v));
+            }
+            return chunks;
         }
 
         public enum CoreEventType {
-            NOTE_ADDED, NOTE_UPDATED, NOTE_DELETED, PLAN_UPDATED, USER_INTERACTION_REQUESTED, DISTRIBUTED_LM_RESULT, CONFIG_CHANGED, STATUS_MESSAGE, CHAT_MESSAGE_ADDED, ACTIONABLE_ITEM_ADDED, ACTIONABLE_ITEM_REMOVED, SYSTEM_EVENT_REQUESTED
+            NOTE_ADDED, NOTE_UPDATED, NOTE_DELETED, NOTES_CHANGED, PLAN_UPDATED, USER_INTERACTION_REQUESTED, DISTRIBUTED_LM_RESULT, CONFIG_CHANGED, STATUS_MESSAGE, CHAT_MESSAGE_ADDED, ACTIONABLE_ITEM_ADDED, ACTIONABLE_ITEM_REMOVED, SYSTEM_EVENT_REQUESTED
         }
 
         public enum SystemEventType {
-            NOSTR_KIND0_RECEIVED, NOSTR_KIND1_RECEIVED, NOSTR_KIND4_RECEIVED, NOSTR_KIND_UNKNOWN_RECEIVED, SAVE_NOSTR_CONFIG_REQUESTED, SAVE_UI_CONFIG_REQUESTED, SAVE_LLM_CONFIG_REQUESTED, LOAD_ALL_CONFIGS_REQUESTED, EVALUATE_PERSISTENT_QUERIES, STALLED_PLAN_DETECTED, UNKNOWN_EVENT_TYPE, FRIEND_REQUEST_RECEIVED, ACCEPT_FRIEND_REQUEST, REJECT_FRIEND_REQUEST
+            NOSTR_KIND0_RECEIVED, NOSTR_KIND1_RECEIVED, NOSTR_KIND4_RECEIVED, NOSTR_KIND_UNKNOWN_RECEIVED, SAVE_NOSTR_CONFIG_REQUESTED, SAVE_UI_CONFIG_REQUESTED, SAVE_LLM_CONFIG_REQUESTED, SAVE_RETENTION_CONFIG_REQUESTED, LOAD_ALL_CONFIGS_REQUESTED, EVALUATE_PERSISTENT_QUERIES, STALLED_PLAN_DETECTED, UNKNOWN_EVENT_TYPE, FRIEND_REQUEST_RECEIVED, ACCEPT_FRIEND_REQUEST, REJECT_FRIEND_REQUEST
         }
 
         public enum Tool {
-            LOG_MESSAGE, USER_INTERACTION, GET_NOTE_PROPERTY, PARSE_JSON, CREATE_NOTE, MODIFY_NOTE_CONTENT, DELETE_NOTE, ADD_CONTACT, IF_ELSE, DECRYPT_NOSTR_DM, UPDATE_CHAT_NOTE, FIRE_CORE_EVENT, SUGGEST_PLAN_STEPS, SCHEDULE_SYSTEM_EVENT, FIND_NOTES_BY_TAG, FOR_EACH, EXECUTE_SEMANTIC_QUERY, CREATE_LINKS, GET_PLAN_GRAPH_CONTEXT, GET_SYSTEM_HEALTH_METRICS, IDENTIFY_STALLED_PLANS, GET_CONFIG_STATE, APPLY_CONFIG_STATE, GET_SELF_NOSTR_INFO, ACCEPT_FRIEND_REQUEST, REJECT_FRIEND_REQUEST, SEND_FRIEND_REQUEST, DECOMPOSE_GOAL, PLAN, GET_PLAN_DEPENDENCIES, ASSERT_KIF, QUERY, RETRACT, API, ECHO, FILE_OPERATIONS, GENERATE_TASK_LOGIC, INSPECT, EVAL_EXPR, GENERATE, REFLECT, REASON, DEFINE_CONCEPT, EXEC, GRAPH_SEARCH, CODE_WRITING, CODE_EXECUTION, FIND_ASSERTIONS, IDENTIFY_CONCEPTS, SUMMARIZE, ENHANCE, SEND_DM, CREATE_OR_UPDATE_CONTACT_NOTE, REMOVE_CONTACT;
+            LOG_MESSAGE, USER_INTERACTION, GET_NOTE_PROPERTY, PARSE_JSON, CREATE_NOTE, MODIFY_NOTE_CONTENT, DELETE_NOTE, ADD_CONTACT, IF_ELSE, DECRYPT_NOSTR_DM, UPDATE_CHAT_NOTE, FIRE_CORE_EVENT, SUGGEST_PLAN_STEPS, SCHEDULE_SYSTEM_EVENT, CANCEL_SCHEDULED_EVENT, CANCEL_PLAN, FIND_NOTES_BY_TAG, FOR_EACH, EXECUTE_SEMANTIC_QUERY, EVALUATE_PERSISTENT_QUERIES, CREATE_LINKS, GET_PLAN_GRAPH_CONTEXT, GET_SYSTEM_HEALTH_METRICS, IDENTIFY_STALLED_PLANS, GET_CONFIG_STATE, APPLY_CONFIG_STATE, GET_SELF_NOSTR_INFO, ACCEPT_FRIEND_REQUEST, REJECT_FRIEND_REQUEST, SEND_FRIEND_REQUEST, DECOMPOSE_GOAL, GET_PLAN_DEPENDENCIES, ECHO, INSPECT, GENERATE, GRAPH_SEARCH, SUMMARIZE, SEND_DM, CREATE_OR_UPDATE_CONTACT_NOTE, REMOVE_CONTACT;
 
             public static Tool fromString(String text) {
                 return Stream.of(values()).filter(t -> t.name().equalsIgnoreCase(text)).findFirst().orElseThrow(() -> new IllegalArgumentException("No enum constant Core.Tool." + text));
@@ -954,12 +1557,23 @@ public class Netention {
 
     public static class Notes {
         private static final Logger logger = LoggerFactory.getLogger(Notes.class);
+        private static final int MAX_UPDATE_ATTEMPTS = 16;
+        private static final int CHECKPOINT_BATCHES = 32;
         private final Path dir;
         private final ObjectMapper json = Core.createObjectMapper();
+        private final ObjectWriter compact = json.writer().without(SerializationFeature.INDENT_OUTPUT);
         private final Map<String, Note> cache = new ConcurrentHashMap<>();
+        private final ReentrantLock[] stripes = IntStream.range(0, 64).mapToObj(i -> new ReentrantLock()).toArray(ReentrantLock[]::new);
+        private final AtomicLong generation = new AtomicLong();
+        private final Set<String> pendingEvents = ConcurrentHashMap.newKeySet();
+        private final Map<String, Set<String>> tagged = new ConcurrentHashMap<>();
+        private final Map<Path, Collection<String>> unsettled = new ConcurrentHashMap<>();
+        private final Set<String> unforced = ConcurrentHashMap.newKeySet();
+        public final Embeddings embeddings;
 
         public Notes(Path dir) {
             this.dir = dir;
+            this.embeddings = new Embeddings(dir.resolve("embeddings"));
             load();
         }
 
@@ -970,6 +1584,7 @@ public class Netention {
             }
             try (var ps = Files.walk(dir)) {
                 ps.filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".json")).forEach(this::loadFromFile);
+                replayJournals();
                 logger.info("Loaded {} notes.", cache.size());
             } catch (IOException e) {
                 logger.error("Error walking data dir {}: {}", dir, e.getMessage(), e);
@@ -981,28 +1596,238 @@ public class Netention {
                 var n = json.readValue(fp.toFile(), Note.class);
                 n.content.computeIfAbsent(ContentKey.CONTENT_TYPE.getKey(), k -> ContentType.TEXT_PLAIN.getValue());
                 cache.put(n.id, n);
+                track(n);
             } catch (IOException e) {
                 logger.error("Failed to load note from {}: {}", fp, e.getMessage(), e);
             }
         }
 
+        private int stripe(String id) {
+            return Math.floorMod(id.hashCode(), stripes.length);
+        }
+
+        private <T> T locked(String id, Supplier<T> s) {
+            var lock = stripes[stripe(id)];
+            lock.lock();
+            try {
+                return s.get();
+            } finally {
+                lock.unlock();
+            }
+        }
+
         public Note save(Note n, boolean internalOperation) {
+            return locked(n.id, () -> install(prepare(n)));
+        }
+
+        public Optional<Note> saveIfVersion(Note n, int expectedVersion) {
+            return locked(n.id, () -> {
+                var current = cache.get(n.id);
+                return (current == null ? expectedVersion <= 0 : current.version == expectedVersion) ? Optional.of(install(prepare(n))) : Optional.empty();
+            });
+        }
+
+        public Optional<Note> update(String id, UnaryOperator<Note> fn) {
+            for (var attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+                var current = cache.get(id);
+                if (current == null) return Optional.empty();
+                var next = fn.apply(copy(current));
+                if (next == null) return Optional.empty();
+                var saved = saveIfVersion(next, current.version);
+                if (saved.isPresent()) return saved;
+                Thread.onSpinWait();
+            }
+            throw new ConcurrentModificationException("Note " + id + " update conflicted " + MAX_UPDATE_ATTEMPTS + " times.");
+        }
+
+        public Changes commit(Batch batch) {
+            var locks = batch.ops.stream().mapToInt(op -> stripe(op.id())).distinct().sorted().mapToObj(i -> stripes[i]).toList();
+            locks.forEach(ReentrantLock::lock);
+            try {
+                Map<String, Note> staged = new LinkedHashMap<>();
+                Set<String> deleted = new LinkedHashSet<>();
+                for (var op : batch.ops) {
+                    var current = deleted.contains(op.id()) ? null : staged.containsKey(op.id()) ? staged.get(op.id()) : cache.get(op.id());
+                    if (op.expectedVersion() > 0 && current == null)
+                        throw new ConcurrentModificationException("Note " + op.id() + " no longer exists, expected version " + op.expectedVersion() + ".");
+                    if (op.expectedVersion() >= 0 && current != null && current.version != op.expectedVersion())
+                        throw new ConcurrentModificationException("Note " + op.id() + " is at version " + current.version + ", expected " + op.expectedVersion() + ".");
+                    if (op.delete()) {
+                        staged.remove(op.id());
+                        if (cache.containsKey(op.id())) deleted.add(op.id());
+                        continue;
+                    }
+                    var next = op.fn() == null ? op.note() : current == null ? null : op.fn().apply(copy(current));
+                    if (next == null) continue;
+                    deleted.remove(op.id());
+                    staged.put(op.id(), next);
+                }
+                staged.values().forEach(this::prepare);
+                var journal = journal(staged.values(), deleted);
+                var added = new ArrayList<Note>();
+                var updated = new ArrayList<Note>();
+                var written = true;
+                for (var n : staged.values()) {
+                    (cache.containsKey(n.id) ? updated : added).add(n);
+                    put(n);
+                    written &= write(n);
+                }
+                var removed = deleted.stream().filter(this::remove).toList();
+                if (journal != null) pend(journal, staged.keySet(), written);
+                return new Changes(added, updated, removed);
+            } catch (IOException e) {
+                throw new IllegalStateException("Batch commit failed: " + e.getMessage(), e);
+            } finally {
+                locks.forEach(ReentrantLock::unlock);
+                if (unsettled.size() >= CHECKPOINT_BATCHES) checkpoint();
+            }
+        }
+
+        private Path journal(Collection<Note> saves, Collection<String> deletes) throws IOException {
+            if (saves.isEmpty() && deletes.isEmpty()) return null;
+            var f = dir.resolve("tx").resolve(UUID.randomUUID() + ".tx");
+            Files.createDirectories(f.getParent());
+            try (var ch = FileChannel.open(f, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ch.write(ByteBuffer.wrap(compact.writeValueAsBytes(new Journal(Instant.now(), List.copyOf(saves), List.copyOf(deletes)))));
+                ch.force(true);
+            }
+            force(f.getParent());
+            return f;
+        }
+
+        private void replayJournals() throws IOException {
+            var txDir = dir.resolve("tx");
+            if (!Files.isDirectory(txDir)) return;
+            Map<Path, Journal> journals = new LinkedHashMap<>();
+            try (var ps = Files.list(txDir)) {
+                for (var f : ps.filter(p -> p.toString().endsWith(".tx")).toList()) {
+                    try {
+                        journals.put(f, json.readValue(f.toFile(), Journal.class));
+                    } catch (IOException e) {
+                        logger.error("Discarding unreadable batch journal {}: {}", f, e.getMessage());
+                        Files.deleteIfExists(f);
+                    }
+                }
+            }
+            journals.entrySet().stream().sorted(Comparator.comparing(e -> Objects.requireNonNullElse(e.getValue().at(), Instant.EPOCH))).forEach(e -> {
+                var j = e.getValue();
+                var written = true;
+                for (var n : j.saves()) {
+                    if (!newer(n.id, j.at())) {
+                        put(n);
+                        written &= write(n);
+                    }
+                }
+                j.deletes().stream().filter(id -> !newer(id, j.at())).forEach(this::remove);
+                logger.info("Replayed batch journal {} ({} saves, {} deletes).", e.getKey().getFileName(), j.saves().size(), j.deletes().size());
+                pend(e.getKey(), j.saves().stream().map(n -> n.id).toList(), written);
+            });
+            checkpoint();
+        }
+
+        private boolean newer(String id, Instant at) {
+            var current = cache.get(id);
+            return at != null && current != null && current.updatedAt != null && current.updatedAt.isAfter(at);
+        }
+
+        private void pend(Path journal, Collection<String> saved, boolean written) {
+            if (written) unsettled.put(journal, List.copyOf(saved));
+            else logger.warn("Keeping batch journal {} until its notes are written.", journal.getFileName());
+        }
+
+        public synchronized void checkpoint() {
+            var journals = List.copyOf(unsettled.keySet());
+            if (journals.isEmpty()) return;
+            var durable = journals.stream().flatMap(j -> unsettled.get(j).stream()).distinct()
+                    .map(this::file).filter(Files::exists).allMatch(this::force);
+            if (!durable || !force(dir)) {
+                logger.warn("Keeping {} batch journals until their notes are durable.", journals.size());
+                return;
+            }
+            for (var j : journals) {
+                try {
+                    Files.deleteIfExists(j);
+                    unsettled.remove(j);
+                } catch (IOException e) {
+                    logger.error("Failed to drop batch journal {}: {}", j, e.getMessage());
+                }
+            }
+        }
+
+        private boolean force(Path p) {
+            var directory = Files.isDirectory(p);
+            try (var ch = FileChannel.open(p, directory ? StandardOpenOption.READ : StandardOpenOption.WRITE)) {
+                ch.force(true);
+                return true;
+            } catch (IOException e) {
+                if (directory) return true;
+                logger.error("Failed to force {}: {}", p, e.getMessage());
+                return false;
+            }
+        }
+
+        private Path file(String id) {
+            return dir.resolve(id + ".json");
+        }
+
+        public Note copy(Note n) {
+            try {
+                return json.readValue(compact.writeValueAsBytes(n), Note.class);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to copy note " + n.id, e);
+            }
+        }
+
+        private Note prepare(Note n) {
             n.updatedAt = Instant.now();
-            var isNew = !cache.containsKey(n.id) || cache.get(n.id).version == 0;
-            if (isNew) {
+            var current = cache.get(n.id);
+            if (current == null || current.version == 0) {
                 n.createdAt = Objects.requireNonNullElse(n.createdAt, Instant.now());
                 n.version = 1;
             } else {
-                n.version = cache.get(n.id).version + 1;
+                n.version = current.version + 1;
             }
             n.content.computeIfAbsent(ContentKey.CONTENT_TYPE.getKey(), k -> ContentType.TEXT_PLAIN.getValue());
+            return n;
+        }
+
+        private Note install(Note n) {
+            put(n);
+            write(n);
+            return n;
+        }
+
+        private void put(Note n) {
             cache.put(n.id, n);
+            track(n);
+            generation.incrementAndGet();
+        }
+
+        private boolean write(Note n) {
+            if (unforced.remove(n.id)) embeddings.force();
             try {
-                json.writeValue(dir.resolve(n.id + ".json").toFile(), n);
+                json.writeValue(file(n.id).toFile(), n);
+                return true;
             } catch (IOException e) {
                 logger.error("Failed to save note {}: {}", n.id, e.getMessage(), e);
+                return false;
+            }
+        }
+
+        private boolean remove(String id) {
+            if (cache.remove(id) == null) return false;
+            pendingEvents.remove(id);
+            unforced.remove(id);
+            tagged.values().forEach(t -> t.remove(id));
+            embeddings.removeNote(id);
+            generation.incrementAndGet();
+            try {
+                Files.deleteIfExists(dir.resolve(id + ".json"));
+                return true;
+            } catch (IOException e) {
+                logger.error("Failed to delete note file for {}: {}", id, e.getMessage(), e);
+                return false;
             }
-            return n;
         }
 
         public Note save(Note n) {
@@ -1013,6 +1838,101 @@ public class Netention {
             return ofNullable(cache.get(id));
         }
 
+        public long generation() {
+            return generation.get();
+        }
+
+        public int pendingEventCount() {
+            return pendingEvents.size();
+        }
+
+        private void track(Note n) {
+            index(n);
+            if (n.tags.contains(SystemTag.SYSTEM_EVENT.value) && PlanState.PENDING.name().equals(n.content.get(ContentKey.STATUS.getKey()))) pendingEvents.add(n.id);
+            else pendingEvents.remove(n.id);
+            tagged.forEach((tag, ids) -> {
+                if (n.tags.contains(tag)) ids.add(n.id);
+                else ids.remove(n.id);
+            });
+        }
+
+        public List<Note> tagged(String tag) {
+            return tagged.computeIfAbsent(tag, t -> {
+                Set<String> ids = ConcurrentHashMap.newKeySet();
+                Arrays.stream(stripes).forEach(ReentrantLock::lock);
+                try {
+                    cache.values().stream().filter(n -> n.tags.contains(t)).forEach(n -> ids.add(n.id));
+                } finally {
+                    Arrays.stream(stripes).forEach(ReentrantLock::unlock);
+                }
+                return ids;
+            }).stream().map(cache::get).filter(Objects::nonNull).collect(Collectors.toList());
+        }
+
+        private void index(Note n) {
+            var moved = n.embeddingV1 != null;
+            n.embeddingV1 = index(n.id, n.embeddingV1);
+            moved &= n.embeddingV1 == null;
+            var cs = n.chunks == null ? List.<Chunker.Chunk>of() : n.chunks;
+            for (var i = 0; i < cs.size(); i++) {
+                var c = cs.get(i);
+                var e = index(Embeddings.chunkId(n.id, i), c.embedding());
+                if (e != c.embedding()) {
+                    cs.set(i, c.withEmbedding(e));
+                    moved = true;
+                }
+            }
+            embeddings.retainChunks(n.id, cs.size());
+            if (moved) unforced.add(n.id);
+        }
+
+        private float[] index(String id, float[] e) {
+            if (e == null) {
+                if (!embeddings.quantized()) embeddings.remove(id);
+                return null;
+            }
+            embeddings.put(id, e);
+            return embeddings.quantized() && embeddings.contains(id) ? null : e;
+        }
+
+        public float[] embedding(Note n) {
+            return n.embeddingV1 != null ? n.embeddingV1 : embeddings.vector(n.id);
+        }
+
+        public List<Chunker.Chunk> chunks(Note n) {
+            if (n.chunks == null) return List.of();
+            var l = new ArrayList<Chunker.Chunk>(n.chunks.size());
+            for (var i = 0; i < n.chunks.size(); i++) {
+                var c = n.chunks.get(i);
+                l.add(c.embedding() != null ? c : c.withEmbedding(embeddings.vector(Embeddings.chunkId(n.id, i))));
+            }
+            return l;
+        }
+
+        private void restore(Note n) {
+            n.embeddingV1 = embedding(n);
+            if (n.chunks != null) n.chunks = chunks(n);
+        }
+
+        public void embeddingStorage(Embeddings.Mode mode, int rerankFactor) {
+            embeddings.rerankFactor(rerankFactor);
+            if (mode == embeddings.mode()) return;
+            Arrays.stream(stripes).forEach(ReentrantLock::lock);
+            try {
+                var embedded = cache.values().stream().filter(n -> n.embeddingV1 != null || n.chunks != null || embeddings.contains(n.id)).toList();
+                embedded.forEach(this::restore);
+                if (mode == Embeddings.Mode.FLOAT) embedded.forEach(this::write);
+                embeddings.mode(mode);
+                embedded.forEach(this::index);
+                embeddings.force();
+                unforced.clear();
+                if (embeddings.quantized()) embedded.forEach(this::write);
+                logger.info("Embedding storage is now {} ({} vectors).", embeddings.mode(), embeddings.size());
+            } finally {
+                Arrays.stream(stripes).forEach(ReentrantLock::unlock);
+            }
+        }
+
         public List<Note> getAllNotes() {
             return new ArrayList<>(cache.values());
         }
@@ -1021,29 +1941,124 @@ public class Netention {
             return cache.values().stream().filter(f).collect(Collectors.toList());
         }
 
-        public boolean delete(String id) {
-            if (!cache.containsKey(id)) {
-                logger.warn("Attempted delete non-existent note {}", id);
+        public Archived archive(Collection<String> ids, Predicate<Note> eligible) {
+            var batch = ids.stream().map(cache::get).filter(n -> n != null && eligible.test(n)).map(this::copy).toList();
+            if (batch.isEmpty()) return new Archived(List.of(), 0);
+            batch.forEach(this::restore);
+            if (!archiveRecords(batch)) return new Archived(List.of(), 0);
+            var locks = batch.stream().mapToInt(n -> stripe(n.id)).distinct().sorted().mapToObj(i -> stripes[i]).toList();
+            locks.forEach(ReentrantLock::lock);
+            try {
+                var reclaimed = 0L;
+                var archived = new ArrayList<String>(batch.size());
+                for (var n : batch) {
+                    var current = cache.get(n.id);
+                    if (current == null || current.version != n.version || !eligible.test(current)) continue;
+                    var size = size(n.id);
+                    if (remove(n.id)) {
+                        archived.add(n.id);
+                        reclaimed += size;
+                    }
+                }
+                return new Archived(archived, reclaimed);
+            } finally {
+                locks.forEach(ReentrantLock::unlock);
+            }
+        }
+
+        public boolean archiveRecords(Collection<?> records) {
+            var segment = dir.resolve("archive").resolve("segment-" + LocalDate.now(ZoneOffset.UTC) + ".jsonl.gz");
+            try {
+                Files.createDirectories(segment.getParent());
+                var created = Files.notExists(segment);
+                try (var ch = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                     var out = new GZIPOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)))) {
+                    for (var r : records) {
+                        out.write(compact.writeValueAsBytes(r));
+                        out.write('\n');
+                    }
+                    out.finish();
+                    out.flush();
+                    ch.force(true);
+                }
+                return !created || force(segment.getParent());
+            } catch (IOException e) {
+                logger.error("Failed to write archive segment {}: {}", segment, e.getMessage(), e);
                 return false;
             }
-            cache.remove(id);
+        }
+
+        public long size(String id) {
             try {
-                Files.deleteIfExists(dir.resolve(id + ".json"));
-                logger.info("🗑️ Deleted note {}", id);
-                return true;
+                var f = file(id);
+                return Files.exists(f) ? Files.size(f) : 0;
             } catch (IOException e) {
-                logger.error("Failed to delete note file for {}: {}", id, e.getMessage(), e);
+                return 0;
+            }
+        }
+
+        public boolean delete(String id) {
+            if (!cache.containsKey(id)) {
+                logger.warn("Attempted delete non-existent note {}", id);
                 return false;
             }
+            var deleted = locked(id, () -> remove(id));
+            if (deleted) logger.info("🗑️ Deleted note {}", id);
+            return deleted;
+        }
+
+        public static class Batch {
+            private final List<Op> ops = new ArrayList<>();
+
+            public Batch save(Note n) {
+                ops.add(new Op(n.id, n, -1, null, false));
+                return this;
+            }
+
+            public Batch saveIfVersion(Note n, int expectedVersion) {
+                ops.add(new Op(n.id, n, expectedVersion, null, false));
+                return this;
+            }
+
+            public Batch update(String id, UnaryOperator<Note> fn) {
+                ops.add(new Op(id, null, -1, fn, false));
+                return this;
+            }
+
+            public Batch delete(String id) {
+                ops.add(new Op(id, null, -1, null, true));
+                return this;
+            }
+
+            public boolean isEmpty() {
+                return ops.isEmpty();
+            }
+
+            private record Op(String id, Note note, int expectedVersion, UnaryOperator<Note> fn, boolean delete) {
+            }
+        }
+
+        public record Changes(List<Note> added, List<Note> updated, List<String> deleted) {
+            public Stream<Note> saved() {
+                return Stream.concat(added.stream(), updated.stream());
+            }
+        }
+
+        public record Archived(List<String> ids, long bytes) {
+        }
+
+        private record Journal(Instant at, List<Note> saves, List<String> deletes) {
         }
     }
 
     public static class Config {
         public static final String CONFIG_NOTE_PREFIX = "netention_config_";
+        public static final List<String> TYPES = List.of("nostr", "ui", "llm", "retention");
         private static final Logger logger = LoggerFactory.getLogger(Config.class);
         public final NostrSettings net = new NostrSettings();
         public final UISettings ui = new UISettings();
         public final LMSettings lm = new LMSettings();
+        public final RetentionSettings retention = new RetentionSettings();
         private final Notes notes;
         private final Core coreRef;
 
@@ -1054,6 +2069,11 @@ public class Netention {
         }
 
         public void saveConfigObjectToNote(Object configInstance, String typeKey) {
+            notes.save(configNote(configInstance, typeKey), true);
+            logger.info("Directly saved {} config to note {} (e.g. initial bootstrap)", typeKey, CONFIG_NOTE_PREFIX + typeKey);
+        }
+
+        public Note configNote(Object configInstance, String typeKey) {
             var noteId = CONFIG_NOTE_PREFIX + typeKey;
             var cfgNote = notes.get(noteId).orElse(new Note());
             cfgNote.id = noteId;
@@ -1063,8 +2083,7 @@ public class Netention {
             cfgNote.content.clear();
             cfgNote.content.putAll(coreRef.json.convertValue(configInstance, new TypeReference<Map<String, Object>>() {
             }));
-            notes.save(cfgNote, true);
-            logger.info("Directly saved {} config to note {} (e.g. initial bootstrap)", typeKey, noteId);
+            return cfgNote;
         }
 
         public void saveAllConfigs() {
@@ -1072,7 +2091,7 @@ public class Netention {
                 logger.error("Core reference not available in Config.");
                 return;
             }
-            Stream.of(Core.SystemEventType.SAVE_NOSTR_CONFIG_REQUESTED, Core.SystemEventType.SAVE_UI_CONFIG_REQUESTED, Core.SystemEventType.SAVE_LLM_CONFIG_REQUESTED).forEach(eventType -> coreRef.fireCoreEvent(Core.CoreEventType.SYSTEM_EVENT_REQUESTED, Map.of(ToolParam.EVENT_TYPE.getKey(), eventType.name())));
+            TYPES.forEach(type -> coreRef.fireCoreEvent(Core.CoreEventType.SYSTEM_EVENT_REQUESTED, Map.of(ToolParam.EVENT_TYPE.getKey(), "SAVE_" + type.toUpperCase() + "_CONFIG_REQUESTED")));
             logger.info("Fired events to save all configurations via plans.");
         }
 
@@ -1098,8 +2117,10 @@ public class Netention {
                 profileNote.content.putIfAbsent(ContentKey.PROFILE_PICTURE_URL.getKey(), "");
                 notes.save(profileNote);
 
-                if (coreRef != null)
+                if (coreRef != null) {
+                    coreRef.memos.configChanged();
                     coreRef.fireCoreEvent(Core.CoreEventType.SYSTEM_EVENT_REQUESTED, Map.of(ToolParam.EVENT_TYPE.getKey(), Core.SystemEventType.SAVE_NOSTR_CONFIG_REQUESTED.name()));
+                }
                 else saveConfigObjectToNote(net, "nostr");
                 return "nsec: " + net.privateKeyBech32 + "\nnpub: " + net.publicKeyBech32;
             } catch (Exception e) {
@@ -1131,6 +2152,39 @@ public class Netention {
             public String ollamaChatModelName = "llama3";
             @Field(label = "Embedding Model", group = "Ollama")
             public String ollamaEmbeddingModelName = "nomic-embed-text";
+            @Field(label = "Embedding Storage", tooltip = "INT8 and BINARY keep compact codes in memory and re-rank from a mapped full-precision file.", type = FieldType.COMBO_BOX, choices = {"FLOAT", "INT8", "BINARY"}, group = "Embeddings")
+            public String embeddingStorage = "FLOAT";
+            @Field(label = "Re-rank Factor", tooltip = "Candidates re-scored exactly per result in INT8 and BINARY storage; BINARY needs about 16 for full recall.", group = "Embeddings")
+            public int rerankFactor = 4;
+            @Field(label = "Chunk Size (tokens)", tooltip = "Longer notes are embedded in overlapping chunks of about this many tokens.", group = "Embeddings")
+            public int chunkTokens = 512;
+            @Field(label = "Chunk Overlap (tokens)", group = "Embeddings")
+            public int chunkOverlapTokens = 64;
+            @Field(label = "Cache Responses", tooltip = "Re-use summaries, answers and goal decompositions of unchanged text.", type = FieldType.CHECK_BOX, group = "Response Cache")
+            public boolean cacheEnabled = true;
+            @Field(label = "Max Entries", group = "Response Cache")
+            public int cacheMaxEntries = 2000;
+            @Field(label = "Max Size (MB)", group = "Response Cache")
+            public int cacheMaxMegabytes = 16;
+            @Field(label = "TTL (hours)", tooltip = "0 keeps responses until evicted.", group = "Response Cache")
+            public long cacheTtlHours = 168;
+        }
+
+        public static class RetentionSettings {
+            @Field(label = "Enable Retention", tooltip = "Archive expired feed, system event and chat data to cold segments.", type = FieldType.CHECK_BOX, group = "Retention")
+            public volatile boolean enabled = true;
+            @Field(label = "Sweep Interval (s)", group = "Retention")
+            public volatile long sweepIntervalSeconds = 300;
+            @Field(label = "Sweep Batch Size", group = "Retention")
+            public volatile int sweepBatchSize = 200;
+            public volatile List<RetentionPolicy> policies = List.of(
+                    new RetentionPolicy(SystemTag.SYSTEM_EVENT.value, "PROCESSED", 86400, 5000, 0),
+                    new RetentionPolicy(SystemTag.SYSTEM_EVENT.value, Planner.DROPPED, 86400, 5000, 0),
+                    new RetentionPolicy(SystemTag.NOSTR_FEED.value, null, 7 * 86400, 10000, 0),
+                    new RetentionPolicy(SystemTag.CHAT.value, null, 0, 0, 1000));
+        }
+
+        public record RetentionPolicy(String tag, String status, long ttlSeconds, int maxCount, int maxMessages) {
         }
     }
 
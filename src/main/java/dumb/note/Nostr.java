@@ -180,7 +180,7 @@ public class Nostr {
     }
 
     @SuppressWarnings("unchecked")
-    private NostrEvent mapToNostrEvent(Map<String, Object> m) {
+    static NostrEvent mapToNostrEvent(Map<String, Object> m) {
         var e = new NostrEvent();
         e.id = (String) m.get("id");
         e.pubkey = (String) m.get("pubkey");
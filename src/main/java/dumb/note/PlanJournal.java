@@ -0,0 +1,184 @@
+package dumb.note;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static dumb.note.Netention.*;
+import static dumb.note.Netention.Planner.PlanExecution;
+import static dumb.note.Netention.Planner.PlanStep;
+
+public class PlanJournal {
+    private static final Logger logger = LoggerFactory.getLogger(PlanJournal.class);
+    private static final int COMPACT_AFTER = 200;
+    private static final String SUFFIX = ".jsonl";
+    private final Path dir;
+    private final ObjectMapper json = Core.createObjectMapper();
+    private final ObjectWriter line = json.writer().without(SerializationFeature.INDENT_OUTPUT);
+    private final Map<String, Integer> appended = new ConcurrentHashMap<>();
+
+    public PlanJournal(Path dir) {
+        this.dir = dir;
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            logger.error("Failed to create plan journal dir {}: {}", dir, e.getMessage());
+        }
+    }
+
+    public synchronized void start(PlanExecution exec) {
+        var f = file(exec.id);
+        var tmp = f.resolveSibling(f.getFileName() + ".tmp");
+        try {
+            write(tmp, encode(new Entry(Entry.SNAPSHOT, exec.id, exec.planNoteId, context(exec), List.copyOf(exec.steps), null)), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            appended.put(exec.id, 0);
+        } catch (IOException e) {
+            logger.error("Failed to write plan journal snapshot for {}: {}", exec.id, e.getMessage());
+        }
+    }
+
+    public synchronized void step(PlanExecution exec, PlanStep step) {
+        if (appended.merge(exec.id, 1, Integer::sum) > COMPACT_AFTER) {
+            start(exec);
+            return;
+        }
+        try {
+            write(file(exec.id), encode(new Entry(Entry.STEP, exec.id, exec.planNoteId, null, null, step)), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.error("Failed to journal step {} of plan {}: {}", step.id, exec.id, e.getMessage());
+        }
+    }
+
+    public synchronized void end(String executionId) {
+        appended.remove(executionId);
+        try {
+            Files.deleteIfExists(file(executionId));
+        } catch (IOException e) {
+            logger.warn("Failed to delete plan journal for {}: {}", executionId, e.getMessage());
+        }
+    }
+
+    public synchronized List<PlanExecution> recover() {
+        List<PlanExecution> l = new ArrayList<>();
+        try (var files = Files.list(dir)) {
+            for (var f : files.filter(p -> p.toString().endsWith(SUFFIX)).toList()) {
+                var exec = replay(f);
+                if (exec != null) l.add(exec);
+                else Files.deleteIfExists(f);
+            }
+        } catch (IOException e) {
+            logger.error("Failed to list plan journals in {}: {}", dir, e.getMessage());
+        }
+        return l;
+    }
+
+    private PlanExecution replay(Path f) {
+        PlanExecution exec = null;
+        try (var lines = Files.lines(f)) {
+            for (var it = lines.iterator(); it.hasNext(); ) {
+                Entry e;
+                try {
+                    e = json.readValue(it.next(), Entry.class);
+                } catch (IOException x) {
+                    logger.warn("Truncated plan journal {}; ignoring the remainder.", f.getFileName());
+                    break;
+                }
+                if (Entry.SNAPSHOT.equals(e.type())) {
+                    exec = new PlanExecution(null, e.id(), e.planNoteId(), e.context() != null ? e.context() : Map.of());
+                    exec.steps.addAll(e.steps());
+                } else if (exec != null && e.step() != null) {
+                    var steps = exec.steps;
+                    for (var i = 0; i < steps.size(); i++)
+                        if (steps.get(i).id.equals(e.step().id)) steps.set(i, e.step());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to replay plan journal {}: {}", f, e.getMessage());
+            return null;
+        }
+        if (exec == null) return null;
+        for (var s : exec.steps) {
+            if (PlanStepState.COMPLETED.equals(s.status)) {
+                if (s.result != null) exec.context.put(s.id + ".result", s.result);
+            } else if (PlanStepState.RUNNING.equals(s.status) || PlanStepState.WAITING_FOR_USER.equals(s.status)) {
+                s.status = PlanStepState.PENDING;
+                s.addLog("Reset to PENDING after restart.");
+            }
+        }
+        exec.currentStatus = PlanState.RUNNING;
+        appended.put(exec.id, COMPACT_AFTER);
+        return exec;
+    }
+
+    private static void write(Path f, byte[] bytes, OpenOption... options) throws IOException {
+        try (var ch = FileChannel.open(f, options)) {
+            var b = ByteBuffer.wrap(bytes);
+            while (b.hasRemaining()) ch.write(b);
+            ch.force(false);
+        }
+    }
+
+    private static Map<String, Object> context(PlanExecution exec) {
+        var m = new HashMap<String, Object>();
+        exec.context.forEach((k, v) -> {
+            if (!k.endsWith(".result")) m.put(k, v);
+        });
+        return m;
+    }
+
+    private byte[] encode(Entry e) throws IOException {
+        try {
+            return (line.writeValueAsString(e) + '\n').getBytes(StandardCharsets.UTF_8);
+        } catch (IOException x) {
+            logger.warn("Plan journal entry for {} not serializable ({}); storing results as text.", e.id(), x.getMessage());
+            var steps = e.steps() == null ? null : e.steps().stream().map(PlanJournal::textResult).toList();
+            return (line.writeValueAsString(new Entry(e.type(), e.id(), e.planNoteId(), e.context(), steps, e.step() == null ? null : textResult(e.step()))) + '\n').getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static PlanStep textResult(PlanStep s) {
+        var c = new PlanStep(s.id);
+        c.description = s.description;
+        c.toolName = s.toolName;
+        c.toolParams = s.toolParams;
+        c.dependsOnStepIds.addAll(s.dependsOnStepIds);
+        c.alternatives.addAll(s.alternatives);
+        c.status = s.status;
+        c.result = s.result == null ? null : String.valueOf(s.result);
+        c.outputNoteId = s.outputNoteId;
+        c.startTime = s.startTime;
+        c.endTime = s.endTime;
+        c.lastUpdatedAt = s.lastUpdatedAt;
+        c.logs = s.logs;
+        c.retryCount = s.retryCount;
+        c.maxRetries = s.maxRetries;
+        c.retry = s.retry;
+        c.retryAt = s.retryAt;
+        c.hedge = s.hedge;
+        c.currentAlternativeIndex = s.currentAlternativeIndex;
+        return c;
+    }
+
+    private Path file(String executionId) {
+        return dir.resolve(executionId.replaceAll("[^A-Za-z0-9._-]", "_") + SUFFIX);
+    }
+
+    private record Entry(String type, String id, String planNoteId, Map<String, Object> context, List<PlanStep> steps, PlanStep step) {
+        static final String SNAPSHOT = "snapshot", STEP = "step";
+    }
+}
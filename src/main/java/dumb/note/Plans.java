@@ -0,0 +1,244 @@
+package dumb.note;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static dumb.note.Netention.*;
+import static dumb.note.Netention.Planner.*;
+
+public class Plans {
+    private static final Logger logger = LoggerFactory.getLogger(Plans.class);
+    private static final ObjectMapper json = Core.createObjectMapper();
+    private static final Set<String> STEP_LISTS = Set.of(ToolParam.TRUE_STEPS.getKey(), ToolParam.FALSE_STEPS.getKey(), ToolParam.LOOP_STEPS.getKey());
+    private static final Map<String, NoteProperty> NOTE_FIELDS = noteFields();
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+
+    public Template template(Note goal) {
+        if (!(goal.content.get(ContentKey.PLAN_STEPS.getKey()) instanceof List<?> raw)) return null;
+        var t = templates.get(goal.id);
+        if (t != null && t.source == raw) return t;
+        t = compile(raw);
+        templates.put(goal.id, t);
+        logger.debug("Compiled plan template for {} ({} steps).", goal.id, t.steps.size());
+        return t;
+    }
+
+    private static Map<String, NoteProperty> noteFields() {
+        var m = new HashMap<String, NoteProperty>();
+        for (var p : NoteProperty.values()) {
+            m.put(p.getKey(), p);
+            var words = p.getKey().split("_");
+            var camel = new StringBuilder(words[0]);
+            for (var i = 1; i < words.length; i++) camel.append(Character.toUpperCase(words[i].charAt(0))).append(words[i].substring(1));
+            m.put(camel.toString(), p);
+        }
+        m.put("meta", NoteProperty.METADATA);
+        return Map.copyOf(m);
+    }
+
+    public void evict(String noteId) {
+        templates.remove(noteId);
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    static Template compile(List<?> raw) {
+        var steps = new ArrayList<StepTemplate>(raw.size());
+        var generatedIds = false;
+        for (var i = 0; i < raw.size(); i++) {
+            if (!(raw.get(i) instanceof Map<?, ?> m)) continue;
+            var step = json.convertValue(m, PlanStep.class);
+            if (step.id == null || step.id.isEmpty() || step.id.matches("step\\d+_id_placeholder")) {
+                step.id = "step_" + i + "_" + UUID.randomUUID().toString().substring(0, 4);
+                generatedIds = true;
+            }
+            var params = step.toolParams == null ? Map.<String, Object>of() : Collections.unmodifiableMap(new HashMap<>(step.toolParams));
+            steps.add(new StepTemplate(step.id, step.description, step.toolName, params, List.copyOf(step.dependsOnStepIds), List.copyOf(step.alternatives), step.outputNoteId, step.retry, step.hedge, Binding.of(step.toolName, params)));
+        }
+        return new Template(raw, List.copyOf(steps), generatedIds);
+    }
+
+    public record Template(Object source, List<StepTemplate> steps, boolean generatedIds) {
+        public List<PlanStep> instantiate() {
+            var l = new ArrayList<PlanStep>(steps.size());
+            for (var s : steps) l.add(s.instantiate());
+            return l;
+        }
+    }
+
+    public record StepTemplate(String id, String description, String toolName, Map<String, Object> toolParams,
+                               List<String> dependsOnStepIds, List<AlternativeExecution> alternatives,
+                               String outputNoteId, Retries.Policy retry, Hedge hedge, Binding binding) {
+        PlanStep instantiate() {
+            var s = new PlanStep(id);
+            s.description = description;
+            s.toolName = toolName;
+            s.toolParams = toolParams;
+            s.dependsOnStepIds.addAll(dependsOnStepIds);
+            s.alternatives.addAll(alternatives);
+            s.outputNoteId = outputNoteId;
+            s.retry = retry;
+            s.hedge = hedge;
+            s.binding = binding;
+            return s;
+        }
+    }
+
+    public record Binding(Core.Tool tool, String[] keys, Object[] values) {
+        public static Binding of(String toolName, Map<String, Object> params) {
+            var tool = toolName == null ? null : Stream.of(Core.Tool.values()).filter(t -> t.name().equalsIgnoreCase(toolName)).findFirst().orElse(null);
+            var schema = tool == null ? null : Tools.schema(tool);
+            if (schema != null) for (var k : params.keySet())
+                if (!schema.contains(k)) logger.warn("Plan step parameter '{}' is not read by {} (expects {}).", k, tool, schema);
+            var keys = new String[params.size()];
+            var values = new Object[params.size()];
+            var i = 0;
+            for (var e : params.entrySet()) {
+                keys[i] = e.getKey();
+                values[i++] = compile(e.getKey(), e.getValue());
+            }
+            return new Binding(tool, keys, values);
+        }
+
+        private static Object compile(String key, Object v) {
+            return switch (v) {
+                case String s when ToolParam.CONDITION.getKey().equals(key) -> {
+                    try {
+                        yield Expr.compile(s);
+                    } catch (IllegalArgumentException e) {
+                        logger.warn("Invalid plan condition: {}", e.getMessage());
+                        yield new Invalid(e.getMessage());
+                    }
+                }
+                case String s when s.indexOf('$') < 0 -> s;
+                case String s -> s.startsWith("$") && s.chars().skip(1).allMatch(c -> Expr.isRefChar((char) c)) ? Ref.parse(s) : Expr.interpolate(s);
+                case List<?> l when STEP_LISTS.contains(key) -> {
+                    var body = Plans.compile(l);
+                    if (body.steps.stream().noneMatch(x -> x.binding.tool() == Core.Tool.USER_INTERACTION)) yield body;
+                    logger.warn("Plan step list '{}' contains USER_INTERACTION, which nested steps cannot wait for.", key);
+                    yield new Invalid("USER_INTERACTION is not supported in nested steps (" + key + ").");
+                }
+                case Map<?, ?> m -> {
+                    var fields = new LinkedHashMap<String, Object>();
+                    var dynamic = false;
+                    for (var e : m.entrySet()) {
+                        var c = compile(String.valueOf(e.getKey()), e.getValue());
+                        dynamic |= c != e.getValue();
+                        fields.put(String.valueOf(e.getKey()), c);
+                    }
+                    yield dynamic ? new Fields(fields) : m;
+                }
+                case List<?> l -> {
+                    var items = new ArrayList<>(l.size());
+                    var dynamic = false;
+                    for (var x : l) {
+                        var c = compile(key, x);
+                        dynamic |= c != x;
+                        items.add(c);
+                    }
+                    yield dynamic ? new Items(items) : l;
+                }
+                case null, default -> v;
+            };
+        }
+
+        private static Object value(Object v, PlanExecution exec) {
+            return switch (v) {
+                case Ref r -> r.resolve(exec);
+                case Expr x -> x.eval(exec);
+                case Template t -> t.source;
+                case Invalid x -> throw new IllegalArgumentException(x.error);
+                case Fields f -> {
+                    var m = new LinkedHashMap<String, Object>(f.fields.size() * 2);
+                    f.fields.forEach((k, x) -> m.put(k, value(x, exec)));
+                    yield m;
+                }
+                case Items i -> {
+                    var l = new ArrayList<>(i.items.size());
+                    for (var x : i.items) l.add(value(x, exec));
+                    yield l;
+                }
+                case null, default -> v;
+            };
+        }
+
+        public Template body(String key) {
+            for (var i = 0; i < keys.length; i++)
+                if (keys[i].equals(key)) return values[i] instanceof Template t && !t.steps.isEmpty() ? t : null;
+            return null;
+        }
+
+        private record Fields(Map<String, Object> fields) {
+        }
+
+        private record Items(List<Object> items) {
+        }
+
+        private record Invalid(String error) {
+        }
+
+        public Map<String, Object> resolve(PlanExecution exec) {
+            var m = new HashMap<String, Object>(keys.length * 2);
+            for (var i = 0; i < keys.length; i++)
+                m.put(keys[i], value(values[i], exec));
+            return m;
+        }
+    }
+
+    public record Ref(String source, String key, String head, String[] path) {
+        public static Ref parse(String s) {
+            var key = s.substring(1);
+            var parts = key.split("\\.");
+            return new Ref(s, key, parts[0], Arrays.copyOfRange(parts, 1, parts.length));
+        }
+
+        public Object resolve(PlanExecution exec) {
+            var v = value(exec);
+            return v != null ? v : source;
+        }
+
+        public Object value(PlanExecution exec) {
+            Object v;
+            if ("trigger".equals(head)) v = walk(exec.lookup(head), null);
+            else {
+                var step = exec.getStepById(head).orElse(null);
+                if (step != null) v = walk(step, step);
+                else if ((v = exec.lookup(key)) == null && path.length > 0) v = walk(exec.lookup(head), null);
+            }
+            if (v instanceof JsonNode jn && jn.isValueNode()) {
+                if (jn.isNull()) return null;
+                if (jn.isTextual()) return jn.asText();
+                if (jn.isNumber()) return jn.numberValue();
+                if (jn.isBoolean()) return jn.asBoolean();
+                return jn.toString();
+            }
+            return v;
+        }
+
+        private Object walk(Object c, PlanStep owner) {
+            for (var i = 0; i < path.length && c != null; i++) {
+                var part = path[i];
+                var first = i == 0;
+                c = switch (c) {
+                    case PlanStep ps when first && ps == owner && "result".equals(part) -> ps.result;
+                    case Map<?, ?> map -> map.get(part);
+                    case JsonNode jn -> jn.get(part);
+                    case Note n -> {
+                        var p = NOTE_FIELDS.get(part);
+                        yield p != null ? Core.getNoteSpecificProperty(n, p.name()) : n.content.get(part);
+                    }
+                    default -> null;
+                };
+            }
+            return c;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package dumb.note;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static dumb.note.Netention.*;
+
+public class Queries {
+    private static final Logger logger = LoggerFactory.getLogger(Queries.class);
+    private static final Set<String> EXCLUDED_TAGS = Set.of(SystemTag.PERSISTENT_QUERY.value, SystemTag.CONFIG.value, SystemTag.SYSTEM_EVENT.value);
+    private final Core core;
+    private final Map<String, Query> queries = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final ExecutorService exec = Executors.newSingleThreadExecutor(r -> {
+        var t = new Thread(r, "NetentionQueries");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public Queries(Core core) {
+        this.core = core;
+        core.addCoreEventListener(e -> {
+            if (e.type() == Core.CoreEventType.CONFIG_CHANGED && !pending.isEmpty()) retry();
+        });
+    }
+
+    public void accept(Note n) {
+        exec.execute(() -> {
+            if (n.tags.contains(SystemTag.PERSISTENT_QUERY.value)) compile(n, false);
+            else if (queries.remove(n.id) == null && !pending.remove(n.id)) evaluate(n);
+        });
+    }
+
+    public void remove(String noteId) {
+        exec.execute(() -> {
+            pending.remove(noteId);
+            if (queries.remove(noteId) != null) return;
+            queries.values().stream().filter(q -> q.top.remove(noteId) != null).toList().forEach(this::refill);
+        });
+    }
+
+    public int refresh() {
+        var qs = core.notes.getAll(n -> n.tags.contains(SystemTag.PERSISTENT_QUERY.value));
+        exec.execute(() -> {
+            var ids = qs.stream().map(n -> n.id).collect(Collectors.toSet());
+            queries.keySet().retainAll(ids);
+            pending.retainAll(ids);
+            qs.forEach(n -> compile(n, true));
+        });
+        return qs.size();
+    }
+
+    private void retry() {
+        exec.execute(() -> {
+            if (core.lm == null || !core.lm.isReady()) return;
+            List.copyOf(pending).forEach(id -> core.notes.get(id).ifPresentOrElse(n -> compile(n, true), () -> pending.remove(id)));
+        });
+    }
+
+    public int size() {
+        return queries.size();
+    }
+
+    private void compile(Note n, boolean force) {
+        var c = n.content;
+        var text = c.get(ToolParam.QUERY_TEXT.getKey()) instanceof String s ? s : "";
+        if (text.isBlank()) {
+            pending.remove(n.id);
+            queries.remove(n.id);
+            return;
+        }
+        var tags = c.get(ToolParam.TAGS.getKey()) instanceof List<?> l ? l.stream().map(String::valueOf).toList() : List.<String>of();
+        var min = c.get(ToolParam.MIN_SIMILARITY.getKey()) instanceof Number x ? x.doubleValue() : 0.7;
+        var max = c.get(ToolParam.MAX_RESULTS.getKey()) instanceof Number x ? x.intValue() : 5;
+        var signature = text + '|' + tags + '|' + min + '|' + max;
+        var existing = queries.get(n.id);
+        if (!force && existing != null && existing.signature.equals(signature)) return;
+        if (core.lm == null || !core.lm.isReady()) {
+            if (pending.add(n.id)) logger.warn("LLM not ready; persistent query {} deferred until it is.", n.id);
+            return;
+        }
+        core.lm.generateEmbedding(text).ifPresentOrElse(e -> {
+            pending.remove(n.id);
+            var q = new Query(n.id, signature, e, tags, min, max);
+            queries.put(n.id, q);
+            refill(q);
+            logger.info("Compiled persistent query {} ({} results).", n.id, q.top.size());
+        }, () -> pending.add(n.id));
+    }
+
+    private void evaluate(Note n) {
+        var e = core.notes.embedding(n);
+        for (var q : List.copyOf(queries.values())) {
+            var c = q.offer(n, e);
+            if (c == Change.DEMOTED) refill(q);
+            else if (c == Change.CHANGED) publish(q);
+        }
+    }
+
+    private void refill(Query q) {
+        q.top.clear();
+        core.notes.getAllNotes().forEach(o -> q.offer(o, core.notes.embedding(o)));
+        publish(q);
+    }
+
+    private void publish(Query q) {
+        var results = q.results(core.notes);
+        var now = Instant.now().toString();
+        core.updateNote(q.id, n -> {
+            n.content.put(ContentKey.RESULTS.getKey(), results);
+            n.content.put(ContentKey.LAST_RUN.getKey(), now);
+            return n;
+        });
+    }
+
+    private enum Change {NONE, CHANGED, DEMOTED}
+
+    private record Query(String id, String signature, float[] embedding, List<String> tags, double minSimilarity,
+                         int maxResults, Map<String, Double> top) {
+        Query(String id, String signature, float[] embedding, List<String> tags, double minSimilarity, int maxResults) {
+            this(id, signature, embedding, tags, minSimilarity, maxResults, new HashMap<>());
+        }
+
+        Change offer(Note n, float[] e) {
+            var full = top.size() >= maxResults;
+            var eligible = e != null && e.length == embedding.length && n.tags.containsAll(tags) && n.tags.stream().noneMatch(EXCLUDED_TAGS::contains);
+            var score = eligible ? LM.cosineSimilarity(embedding, e) : Double.NaN;
+            if (!eligible || score < minSimilarity) {
+                var old = top.remove(n.id);
+                return old == null ? Change.NONE : full ? Change.DEMOTED : Change.CHANGED;
+            }
+            var old = top.put(n.id, score);
+            if (top.size() > maxResults)
+                top.remove(Collections.min(top.entrySet(), Map.Entry.comparingByValue()).getKey());
+            if (full && old != null && score < old) return Change.DEMOTED;
+            return (top.containsKey(n.id) ? !Double.valueOf(score).equals(old) : old != null) ? Change.CHANGED : Change.NONE;
+        }
+
+        List<Map<String, Object>> results(Notes notes) {
+            return top.entrySet().stream().sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                    .map(en -> Map.<String, Object>of(NoteProperty.ID.getKey(), en.getKey(), NoteProperty.TITLE.getKey(), notes.get(en.getKey()).map(Note::getTitle).orElse(""), "score", en.getValue()))
+                    .collect(Collectors.toList());
+        }
+    }
+}
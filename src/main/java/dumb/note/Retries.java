@@ -0,0 +1,143 @@
+package dumb.note;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+import static dumb.note.Netention.*;
+
+public class Retries {
+    public static final Policy DEFAULT = new Policy(2, 500, 30_000, 0.5);
+    private static final int BREAKER_THRESHOLD = 5;
+    private static final long BREAKER_OPEN_MS = 30_000;
+    private final Map<Core.Tool, Policy> policies = new EnumMap<>(Core.Tool.class);
+    private final Map<Core.Tool, Breaker> breakers = new ConcurrentHashMap<>();
+
+    public Retries() {
+        var lm = new Policy(3, 2_000, 60_000, 0.5);
+        var net = new Policy(4, 1_000, 60_000, 0.5);
+        for (var t : new Core.Tool[]{Core.Tool.SUGGEST_PLAN_STEPS, Core.Tool.DECOMPOSE_GOAL, Core.Tool.SUMMARIZE, Core.Tool.GENERATE, Core.Tool.EXECUTE_SEMANTIC_QUERY}) policies.put(t, lm);
+        for (var t : new Core.Tool[]{Core.Tool.SEND_DM, Core.Tool.SEND_FRIEND_REQUEST, Core.Tool.ACCEPT_FRIEND_REQUEST}) policies.put(t, net);
+    }
+
+    public Policy policy(Planner.PlanStep step, Core.Tool tool) {
+        if (step.retry != null) return step.retry;
+        synchronized (policies) {
+            return tool == null ? DEFAULT : policies.getOrDefault(tool, DEFAULT);
+        }
+    }
+
+    public void configure(Core.Tool tool, Policy p) {
+        synchronized (policies) {
+            policies.put(tool, p);
+        }
+    }
+
+    public Breaker breaker(Core.Tool tool) {
+        return breakers.computeIfAbsent(tool, t -> new Breaker(BREAKER_THRESHOLD, BREAKER_OPEN_MS));
+    }
+
+    public static boolean retryable(Throwable e) {
+        for (var c = e; c != null; c = c.getCause() == c ? null : c.getCause()) {
+            if (c instanceof CancellationException) return false;
+            if (c instanceof Invocations.DeadlineExceededException d) return d.abandoned;
+            if (c instanceof IOException || c instanceof TimeoutException || c instanceof RejectedExecutionException || c instanceof OpenCircuitException)
+                return true;
+            if (c instanceof IllegalArgumentException || c instanceof UnsupportedOperationException || c instanceof ClassCastException || c instanceof NullPointerException)
+                return false;
+        }
+        return true;
+    }
+
+    public Map<String, Object> metrics() {
+        var m = new HashMap<String, Object>();
+        breakers.forEach((t, b) -> m.put(t.name(), b.metrics()));
+        return m;
+    }
+
+    public record Policy(int maxRetries, long baseDelayMs, long maxDelayMs, double jitter) {
+        public long delay(int attempt) {
+            var d = Math.min(maxDelayMs, baseDelayMs << Math.min(30, Math.max(0, attempt - 1)));
+            return Math.round(d * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+        }
+    }
+
+    public static class OpenCircuitException extends RuntimeException {
+        public OpenCircuitException(Core.Tool tool, long retryAfterMs) {
+            super("Circuit open for " + tool + "; retry in " + retryAfterMs + "ms");
+        }
+    }
+
+    public static final class Breaker {
+        public enum State {CLOSED, OPEN, HALF_OPEN}
+
+        private final int threshold;
+        private final long openMs;
+        private State state = State.CLOSED;
+        private int failures;
+        private long openedAt, trips, rejected;
+        private boolean probing;
+
+        Breaker(int threshold, long openMs) {
+            this.threshold = threshold;
+            this.openMs = openMs;
+        }
+
+        public synchronized boolean allow() {
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedAt < openMs) {
+                    rejected++;
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probing = false;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probing) {
+                    rejected++;
+                    return false;
+                }
+                probing = true;
+            }
+            return true;
+        }
+
+        public synchronized void success() {
+            state = State.CLOSED;
+            failures = 0;
+            probing = false;
+        }
+
+        public synchronized void failure() {
+            probing = false;
+            if (state == State.HALF_OPEN || ++failures >= threshold) {
+                if (state != State.OPEN) trips++;
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+                failures = 0;
+            }
+        }
+
+        public synchronized void inconclusive() {
+            probing = false;
+        }
+
+        public synchronized long retryAfterMs() {
+            return state == State.OPEN ? Math.max(0, openedAt + openMs - System.currentTimeMillis()) : 0;
+        }
+
+        public synchronized State state() {
+            return state;
+        }
+
+        synchronized Map<String, Object> metrics() {
+            return Map.of("state", state.name(), "consecutiveFailures", failures, "trips", trips, "rejected", rejected);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package dumb.note;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static dumb.note.Netention.*;
+
+public class Scheduler {
+    public static final int DEFAULT_SLOTS = Integer.getInteger("netention.planner.slots", 16);
+    static final long AGING_MS = 1000;
+    private final Executor workers;
+    private final int slots;
+    private final int[] reserved = new int[Lane.values().length], running = new int[reserved.length];
+    private final long[] dispatched = new long[reserved.length], maxWaitMs = new long[reserved.length];
+    private final double[] finish = new double[reserved.length];
+    @SuppressWarnings("unchecked")
+    private final PriorityQueue<Task>[] queues = new PriorityQueue[reserved.length];
+    private double virtual;
+    private long seq;
+
+    public enum Lane {
+        INTERACTIVE(8, 2), MESSAGE(4, 1), CONFIG(2, 1), BULK(1, 0);
+        public final int weight, reserved;
+
+        Lane(int weight, int reserved) {
+            this.weight = weight;
+            this.reserved = reserved;
+        }
+
+        public static Lane of(Note plan) {
+            if (plan.content.get("priorityClass") instanceof String s)
+                return Stream.of(values()).filter(l -> l.name().equalsIgnoreCase(s)).findFirst().orElse(INTERACTIVE);
+            if (!(plan.content.get("triggerEventType") instanceof String type)) return INTERACTIVE;
+            return switch (type) {
+                case "NOSTR_KIND4_RECEIVED", "FRIEND_REQUEST_RECEIVED", "ACCEPT_FRIEND_REQUEST", "REJECT_FRIEND_REQUEST" -> MESSAGE;
+                case "SAVE_NOSTR_CONFIG_REQUESTED", "SAVE_UI_CONFIG_REQUESTED", "SAVE_LLM_CONFIG_REQUESTED", "SAVE_RETENTION_CONFIG_REQUESTED", "LOAD_ALL_CONFIGS_REQUESTED" -> CONFIG;
+                default -> BULK;
+            };
+        }
+    }
+
+    public Scheduler(Executor workers, int slots) {
+        this.workers = workers;
+        this.slots = Math.max(1, slots);
+        var total = Stream.of(Lane.values()).mapToInt(l -> l.reserved).sum();
+        for (var l : Lane.values()) {
+            reserved[l.ordinal()] = this.slots > total ? l.reserved : 0;
+            queues[l.ordinal()] = new PriorityQueue<>(Comparator.comparingInt(Task::priority).reversed().thenComparingLong(Task::seq));
+        }
+    }
+
+    public void submit(Lane lane, int priority, Runnable r) {
+        synchronized (this) {
+            var q = queues[lane.ordinal()];
+            if (q.isEmpty()) finish[lane.ordinal()] = Math.max(finish[lane.ordinal()], virtual);
+            q.add(new Task(lane, priority, seq++, System.nanoTime(), r));
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        List<Task> ready = new ArrayList<>();
+        synchronized (this) {
+            for (Task t; (t = next()) != null; ) ready.add(t);
+        }
+        for (var t : ready)
+            workers.execute(() -> {
+                try {
+                    t.body.run();
+                } finally {
+                    synchronized (this) {
+                        running[t.lane.ordinal()]--;
+                    }
+                    dispatch();
+                }
+            });
+    }
+
+    private Task next() {
+        var busy = Arrays.stream(running).sum();
+        if (busy >= slots) return null;
+        var now = System.nanoTime();
+        var best = -1;
+        var bestScore = Double.MAX_VALUE;
+        for (var i = 0; i < queues.length; i++) {
+            var head = queues[i].peek();
+            if (head == null || !admissible(i, busy)) continue;
+            var score = finish[i] + 1.0 / Lane.values()[i].weight - (double) TimeUnit.NANOSECONDS.toMillis(now - head.enqueuedAt) / AGING_MS;
+            if (score < bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        if (best < 0) return null;
+        var t = queues[best].poll();
+        finish[best] += 1.0 / Lane.values()[best].weight;
+        virtual = finish[best];
+        running[best]++;
+        dispatched[best]++;
+        maxWaitMs[best] = Math.max(maxWaitMs[best], TimeUnit.NANOSECONDS.toMillis(now - t.enqueuedAt));
+        return t;
+    }
+
+    private boolean admissible(int lane, int busy) {
+        if (running[lane] < reserved[lane]) return true;
+        var held = 0;
+        for (var i = 0; i < reserved.length; i++) if (i != lane) held += Math.max(0, reserved[i] - running[i]);
+        return slots - busy > held;
+    }
+
+    public synchronized Map<String, Object> metrics() {
+        var m = new LinkedHashMap<String, Object>();
+        m.put("slots", slots);
+        for (var l : Lane.values()) {
+            var i = l.ordinal();
+            m.put(l.name(), Map.of("weight", l.weight, "reserved", reserved[i], "running", running[i], "queued", queues[i].size(), "dispatched", dispatched[i], "maxWaitMs", maxWaitMs[i]));
+        }
+        return m;
+    }
+
+    private record Task(Lane lane, int priority, long seq, long enqueuedAt, Runnable body) {
+    }
+}
@@ -0,0 +1,102 @@
+package dumb.note;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class Spool<T> {
+    private static final Logger logger = LoggerFactory.getLogger(Spool.class);
+    public final Path file;
+    private final long maxBytes;
+    private final Encoder<T> encoder;
+    private final BlockingQueue<T> queue = new ArrayBlockingQueue<>(4096);
+    private final LongAdder written = new LongAdder(), dropped = new LongAdder();
+
+    public Spool(Path file, long maxBytes, String threadName, Encoder<T> encoder) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.encoder = encoder;
+        var t = new Thread(this::drain, threadName);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void offer(T record) {
+        if (!queue.offer(record)) dropped.increment();
+    }
+
+    public Map<String, Object> metrics() {
+        return Map.of("file", file.toString(), "written", written.sum(), "dropped", dropped.sum());
+    }
+
+    private void drain() {
+        OutputStream out = null;
+        var size = 0L;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                var r = queue.poll(1, TimeUnit.SECONDS);
+                try {
+                    if (r == null) {
+                        if (out != null) out.flush();
+                        continue;
+                    }
+                    if (out == null || size >= maxBytes) {
+                        if (out != null) {
+                            out = close(out);
+                            Files.move(file, file.resolveSibling(file.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        Files.createDirectories(file.toAbsolutePath().getParent());
+                        out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16);
+                        size = Files.size(file);
+                    }
+                    byte[] line;
+                    try {
+                        line = encoder.encode(r);
+                    } catch (IOException | RuntimeException e) {
+                        logger.warn("Skipping unencodable record for {}: {}", file.getFileName(), e.getMessage());
+                        dropped.increment();
+                        continue;
+                    }
+                    out.write(line);
+                    out.write('\n');
+                    size += line.length + 1;
+                    written.increment();
+                } catch (IOException e) {
+                    logger.error("Spool to {} failed, reopening: {}", file, e.getMessage());
+                    if (r != null) dropped.increment();
+                    out = close(out);
+                    TimeUnit.SECONDS.sleep(1);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close(out);
+        }
+    }
+
+    private static OutputStream close(OutputStream out) {
+        if (out != null) try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        return null;
+    }
+
+    @FunctionalInterface
+    public interface Encoder<T> {
+        byte[] encode(T record) throws IOException;
+    }
+}
@@ -0,0 +1,119 @@
+package dumb.note;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public final class StepLog {
+    public static final int CAPACITY = Integer.getInteger("netention.stepLog.capacity", 16);
+    private static final int MAX_ARG = 100;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneOffset.UTC);
+    private static volatile Spool<Spilled> spill;
+    private final Entry[] ring = new Entry[CAPACITY];
+    private int head, size;
+
+    public static synchronized void spillTo(Path file, long maxBytes) {
+        if (spill == null) spill = new Spool<>(file, maxBytes, "NetentionStepLogSpill", s -> (s.stepId + ' ' + s.entry.text()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Map<String, Object> metrics() {
+        var s = spill;
+        return s == null ? Map.of("capacity", CAPACITY) : Map.of("capacity", CAPACITY, "spill", s.metrics());
+    }
+
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public static StepLog of(List<String> lines) {
+        var l = new StepLog();
+        if (lines != null) for (var line : lines) l.append(null, new Entry(0, line, null));
+        return l;
+    }
+
+    public void add(String stepId, long at, String template, Object... args) {
+        append(stepId, new Entry(at, template, snapshot(args)));
+    }
+
+    private static Object[] snapshot(Object[] args) {
+        var a = args;
+        for (var i = 0; a != null && i < a.length; i++) {
+            var v = a[i];
+            if (v == null || v instanceof String || v instanceof Boolean || v instanceof Integer || v instanceof Long || v instanceof Double || v instanceof Enum<?> || v instanceof Instant)
+                continue;
+            if (a == args) a = args.clone();
+            a[i] = Entry.abbreviate(String.valueOf(v));
+        }
+        return a;
+    }
+
+    private void append(String stepId, Entry e) {
+        Entry evicted = null;
+        synchronized (this) {
+            var i = (head + size) % ring.length;
+            if (size == ring.length) {
+                evicted = ring[head];
+                head = (head + 1) % ring.length;
+            } else size++;
+            ring[i] = e;
+        }
+        var s = spill;
+        if (evicted != null && s != null && stepId != null) s.offer(new Spilled(stepId, evicted));
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String last() {
+        Entry e;
+        synchronized (this) {
+            if (size == 0) return null;
+            e = ring[(head + size - 1) % ring.length];
+        }
+        return e.text();
+    }
+
+    @JsonValue
+    public List<String> lines() {
+        var entries = new ArrayList<Entry>(size);
+        synchronized (this) {
+            for (var i = 0; i < size; i++) entries.add(ring[(head + i) % ring.length]);
+        }
+        var lines = new ArrayList<String>(entries.size());
+        for (var e : entries) lines.add(e.text());
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        return String.join("\n", lines());
+    }
+
+    private record Entry(long at, String template, Object[] args) {
+        String text() {
+            if (at == 0) return template;
+            var msg = args == null || args.length == 0 ? template : MessageFormatter.basicArrayFormat(template, abbreviated(args));
+            return "[" + TIME.format(Instant.ofEpochMilli(at)) + "] " + msg;
+        }
+
+        private static Object[] abbreviated(Object[] args) {
+            var a = new Object[args.length];
+            for (var i = 0; i < args.length; i++) a[i] = abbreviate(String.valueOf(args[i]));
+            return a;
+        }
+
+        static String abbreviate(String s) {
+            return s.length() > MAX_ARG ? s.substring(0, MAX_ARG) + "..." : s;
+        }
+    }
+
+    private record Spilled(String stepId, Entry entry) {
+    }
+}
@@ -0,0 +1,262 @@
+package dumb.note;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static dumb.note.Netention.*;
+
+public class Timers {
+    private static final Logger logger = LoggerFactory.getLogger(Timers.class);
+    private static final long TICK_MS = 100;
+    private static final int BITS = 6, SLOTS = 1 << BITS, MASK = SLOTS - 1, LEVELS = 4, COMPACT_AFTER = 1000;
+    private final Core core;
+    private final Executor dispatch;
+    private final Path log;
+    private final ObjectWriter line;
+    private final ObjectMapper json = Core.createObjectMapper();
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Timer>[][] wheel = new ArrayDeque[LEVELS][SLOTS];
+    private final List<Timer> overflow = new ArrayList<>(), overdue = new ArrayList<>();
+    private final Object io = new Object();
+    private final Map<String, Timer> pending = new ConcurrentHashMap<>();
+    private final AtomicLong fired = new AtomicLong(), cancelled = new AtomicLong(), caughtUp = new AtomicLong();
+    private final Thread driver;
+    private long tick;
+    private int logged;
+    private volatile boolean running = true;
+
+    public Timers(Core core, Path log, Executor dispatch) {
+        this.core = core;
+        this.log = log;
+        this.dispatch = dispatch;
+        this.line = json.writer().without(SerializationFeature.INDENT_OUTPUT);
+        for (var l : wheel) for (var i = 0; i < SLOTS; i++) l[i] = new ArrayDeque<>();
+        tick = System.currentTimeMillis() / TICK_MS;
+        load();
+        driver = new Thread(this::drive, "NetentionTimers");
+        driver.setDaemon(true);
+    }
+
+    public void start() {
+        driver.start();
+        List<Timer> due;
+        synchronized (this) {
+            due = List.copyOf(overdue);
+            overdue.clear();
+        }
+        due.forEach(this::fire);
+    }
+
+    public Handle schedule(Duration delay, Runnable task) {
+        return add(new Timer(UUID.randomUUID().toString(), System.currentTimeMillis() + delay.toMillis(), null, null, task));
+    }
+
+    public Handle scheduleEvent(String eventType, Map<String, Object> payload, Duration delay) {
+        var t = new Timer(UUID.randomUUID().toString(), System.currentTimeMillis() + delay.toMillis(), eventType, payload, null);
+        append(new Entry(Entry.ADD, t.id, t.dueAt, eventType, payload));
+        return add(t);
+    }
+
+    public boolean cancel(String id) {
+        var t = pending.remove(id);
+        if (t == null) return false;
+        t.cancelled = true;
+        cancelled.incrementAndGet();
+        if (t.durable()) append(new Entry(Entry.DONE, id, 0, null, null));
+        return true;
+    }
+
+    public Map<String, Object> metrics() {
+        return Map.of("pending", pending.size(), "fired", fired.get(), "cancelled", cancelled.get(), "caughtUp", caughtUp.get());
+    }
+
+    public void stop() {
+        running = false;
+        driver.interrupt();
+    }
+
+    private Handle add(Timer t) {
+        pending.put(t.id, t);
+        List<Timer> due = new ArrayList<>(0);
+        synchronized (this) {
+            place(t, due);
+        }
+        due.forEach(this::fire);
+        return t.handle();
+    }
+
+    private void place(Timer t, List<Timer> due) {
+        var delta = t.dueTick() - tick;
+        if (delta <= 0) {
+            due.add(t);
+            return;
+        }
+        if (delta >= 1L << (BITS * LEVELS)) {
+            overflow.add(t);
+            return;
+        }
+        var level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) level++;
+        wheel[level][(int) ((t.dueTick() >>> (BITS * level)) & MASK)].add(t);
+    }
+
+    private void drive() {
+        while (running) {
+            try {
+                Thread.sleep(TICK_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            List<Timer> due = new ArrayList<>();
+            synchronized (this) {
+                for (var now = System.currentTimeMillis() / TICK_MS; tick < now; ) advance(++tick, due);
+            }
+            due.forEach(this::fire);
+        }
+    }
+
+    private void advance(long t, List<Timer> due) {
+        for (var level = LEVELS - 1; level > 0; level--) {
+            if ((t & ((1L << (BITS * level)) - 1)) != 0) continue;
+            if (level == LEVELS - 1 && !overflow.isEmpty()) {
+                var waiting = List.copyOf(overflow);
+                overflow.clear();
+                for (var x : waiting) if (!x.cancelled) place(x, due);
+            }
+            var slot = wheel[level][(int) ((t >>> (BITS * level)) & MASK)];
+            for (Timer x; (x = slot.poll()) != null; ) if (!x.cancelled) place(x, due);
+        }
+        var slot = wheel[0][(int) (t & MASK)];
+        for (Timer x; (x = slot.poll()) != null; ) if (!x.cancelled) place(x, due);
+    }
+
+    private void fire(Timer t) {
+        if (t.cancelled || pending.remove(t.id) == null) return;
+        fired.incrementAndGet();
+        dispatch.execute(() -> {
+            try {
+                if (t.task != null) t.task.run();
+                else core.fireCoreEvent(Core.CoreEventType.SYSTEM_EVENT_REQUESTED, Map.of(ToolParam.EVENT_TYPE.getKey(), t.eventType, ToolParam.PAYLOAD.getKey(), t.payload != null ? t.payload : Map.of(), ContentKey.STATUS.getKey(), PlanState.PENDING.name()));
+            } catch (Exception e) {
+                logger.error("Timer {} failed: {}", t.id, e.getMessage(), e);
+            } finally {
+                if (t.durable()) append(new Entry(Entry.DONE, t.id, 0, null, null));
+            }
+        });
+    }
+
+    private void load() {
+        if (!Files.exists(log)) return;
+        Map<String, Entry> live = new LinkedHashMap<>();
+        try (var lines = Files.lines(log)) {
+            for (var it = lines.iterator(); it.hasNext(); ) {
+                try {
+                    var e = json.readValue(it.next(), Entry.class);
+                    if (Entry.ADD.equals(e.op())) live.put(e.id(), e);
+                    else live.remove(e.id());
+                } catch (IOException x) {
+                    logger.warn("Truncated timer log {}; ignoring the remainder.", log);
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to read timer log {}: {}", log, e.getMessage());
+            return;
+        }
+        compact(live.values());
+        var now = System.currentTimeMillis();
+        for (var e : live.values()) {
+            var t = new Timer(e.id(), e.dueAt(), e.eventType(), e.payload(), null);
+            pending.put(t.id, t);
+            if (e.dueAt() > now) {
+                add(t);
+                continue;
+            }
+            caughtUp.incrementAndGet();
+            logger.info("Timer {} ({}) was due {} while offline; firing on start.", e.id(), e.eventType(), Duration.ofMillis(now - e.dueAt()));
+            synchronized (this) {
+                overdue.add(t);
+            }
+        }
+        if (!live.isEmpty()) logger.info("Restored {} scheduled events.", live.size());
+    }
+
+    private void compact(Collection<Entry> live) {
+        synchronized (io) {
+            var tmp = log.resolveSibling(log.getFileName() + ".tmp");
+            try {
+                var sb = new StringBuilder();
+                for (var e : live) sb.append(line.writeValueAsString(e)).append('\n');
+                Files.writeString(tmp, sb);
+                Files.move(tmp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                logged = live.size();
+            } catch (IOException e) {
+                logger.error("Failed to compact timer log {}: {}", log, e.getMessage());
+            }
+        }
+    }
+
+    private void append(Entry e) {
+        synchronized (io) {
+            if (++logged > COMPACT_AFTER && Entry.DONE.equals(e.op())) {
+                compact(pending.values().stream().filter(Timer::durable).map(t -> new Entry(Entry.ADD, t.id, t.dueAt, t.eventType, t.payload)).toList());
+                return;
+            }
+            try {
+                Files.writeString(log, line.writeValueAsString(e) + '\n', StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException x) {
+                logger.error("Failed to log timer {}: {}", e.id(), x.getMessage());
+            }
+        }
+    }
+
+    public record Handle(String timerId, Instant dueAt) {
+    }
+
+    private static final class Timer {
+        final String id, eventType;
+        final long dueAt;
+        final Map<String, Object> payload;
+        final Runnable task;
+        volatile boolean cancelled;
+
+        Timer(String id, long dueAt, String eventType, Map<String, Object> payload, Runnable task) {
+            this.id = id;
+            this.dueAt = dueAt;
+            this.eventType = eventType;
+            this.payload = payload;
+            this.task = task;
+        }
+
+        long dueTick() {
+            return (dueAt + TICK_MS - 1) / TICK_MS;
+        }
+
+        boolean durable() {
+            return task == null;
+        }
+
+        Handle handle() {
+            return new Handle(id, Instant.ofEpochMilli(dueAt));
+        }
+    }
+
+    private record Entry(String op, String id, long dueAt, String eventType, Map<String, Object> payload) {
+        static final String ADD = "add", DONE = "done";
+    }
+}
@@ -5,54 +5,222 @@ import com.fasterxml.jackson.databind.JsonNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 import static java.util.Optional.ofNullable;
 
 class Tools {
     private static final Logger logger = LoggerFactory.getLogger(Tools.class);
+    private static final Map<Netention.Core.Tool, Binder<?>> schemas = new ConcurrentHashMap<>();
 
     public static void registerAllTools(Map<Netention.Core.Tool, BiFunction<Netention.Core, Map<String, Object>, Object>> tools) {
-        tools.put(Netention.Core.Tool.LOG_MESSAGE, Tools::logMessage);
-        tools.put(Netention.Core.Tool.GET_NOTE_PROPERTY, Tools::getNoteProperty);
-        tools.put(Netention.Core.Tool.PARSE_JSON, Tools::parseJson);
-        tools.put(Netention.Core.Tool.CREATE_NOTE, Tools::createNote);
-        tools.put(Netention.Core.Tool.MODIFY_NOTE_CONTENT, Tools::modifyNoteContent);
-        tools.put(Netention.Core.Tool.DELETE_NOTE, Tools::deleteNote);
-        tools.put(Netention.Core.Tool.ADD_CONTACT, Tools::addContact);
-        tools.put(Netention.Core.Tool.IF_ELSE, Tools::ifElse);
-        tools.put(Netention.Core.Tool.DECRYPT_NOSTR_DM, Tools::decryptNostrDm);
-        tools.put(Netention.Core.Tool.UPDATE_CHAT_NOTE, Tools::updateChatNote);
-        tools.put(Netention.Core.Tool.FIRE_CORE_EVENT, Tools::fireCoreEvent);
-        tools.put(Netention.Core.Tool.SUGGEST_PLAN_STEPS, Tools::suggestPlanSteps);
-        tools.put(Netention.Core.Tool.SCHEDULE_SYSTEM_EVENT, Tools::scheduleSystemEvent);
-        tools.put(Netention.Core.Tool.FIND_NOTES_BY_TAG, Tools::findNotesByTag);
-        tools.put(Netention.Core.Tool.FOR_EACH, Tools::forEach);
-        tools.put(Netention.Core.Tool.EXECUTE_SEMANTIC_QUERY, Tools::executeSemanticQuery);
-        tools.put(Netention.Core.Tool.GET_SYSTEM_HEALTH_METRICS, Tools::getSystemHealthMetrics);
-        tools.put(Netention.Core.Tool.GET_CONFIG_STATE, Tools::getConfigState);
-        tools.put(Netention.Core.Tool.APPLY_CONFIG_STATE, Tools::applyConfigState);
-        tools.put(Netention.Core.Tool.GET_SELF_NOSTR_INFO, Tools::getSelfNostrInfo);
-        tools.put(Netention.Core.Tool.ACCEPT_FRIEND_REQUEST, Tools::acceptFriendRequest);
-        tools.put(Netention.Core.Tool.REJECT_FRIEND_REQUEST, Tools::rejectFriendRequest);
-        tools.put(Netention.Core.Tool.SEND_FRIEND_REQUEST, Tools::sendFriendRequest);
-        tools.put(Netention.Core.Tool.REMOVE_CONTACT, Tools::removeContact);
-    }
-
-    private static Object logMessage(Netention.Core core, Map<String, Object> params) {
-        logger.info("TOOL_LOG: {}", params.get(Netention.ToolParam.MESSAGE.getKey()));
+        register(tools, Netention.Core.Tool.LOG_MESSAGE, LogMessage.class, Tools::logMessage);
+        register(tools, Netention.Core.Tool.ECHO, Echo.class, (core, p) -> p.message());
+        register(tools, Netention.Core.Tool.GET_NOTE_PROPERTY, GetNoteProperty.class, Tools::getNoteProperty);
+        register(tools, Netention.Core.Tool.INSPECT, Inspect.class, Tools::inspect);
+        register(tools, Netention.Core.Tool.PARSE_JSON, ParseJson.class, Tools::parseJson);
+        register(tools, Netention.Core.Tool.CREATE_NOTE, CreateNote.class, Tools::createNote);
+        register(tools, Netention.Core.Tool.MODIFY_NOTE_CONTENT, ModifyNoteContent.class, Tools::modifyNoteContent);
+        register(tools, Netention.Core.Tool.DELETE_NOTE, NoteRef.class, (core, p) -> core.deleteNote(p.noteId()));
+        register(tools, Netention.Core.Tool.CREATE_LINKS, CreateLinks.class, Tools::createLinks);
+        register(tools, Netention.Core.Tool.GRAPH_SEARCH, GraphSearch.class, Tools::graphSearch);
+        register(tools, Netention.Core.Tool.ADD_CONTACT, Contact.class, (core, p) -> upsertContactAndChatNote(core, p.nostrPubKeyHex(), p.profileData()));
+        register(tools, Netention.Core.Tool.CREATE_OR_UPDATE_CONTACT_NOTE, Contact.class, (core, p) -> upsertContactAndChatNote(core, p.nostrPubKeyHex(), p.profileData()).id);
+        register(tools, Netention.Core.Tool.REMOVE_CONTACT, Contact.class, Tools::removeContact);
+        register(tools, Netention.Core.Tool.IF_ELSE, IfElse.class, Tools::ifElse);
+        register(tools, Netention.Core.Tool.DECRYPT_NOSTR_DM, DecryptNostrDm.class, Tools::decryptNostrDm);
+        register(tools, Netention.Core.Tool.UPDATE_CHAT_NOTE, UpdateChatNote.class, Tools::updateChatNote);
+        register(tools, Netention.Core.Tool.FIRE_CORE_EVENT, FireCoreEvent.class, Tools::fireCoreEvent);
+        register(tools, Netention.Core.Tool.SUGGEST_PLAN_STEPS, Goal.class, Tools::suggestPlanSteps);
+        register(tools, Netention.Core.Tool.DECOMPOSE_GOAL, Goal.class, (core, p) -> lm(core).decomposeTask(p.goalText()).orElse(Collections.emptyList()));
+        register(tools, Netention.Core.Tool.SUMMARIZE, Summarize.class, Tools::summarize);
+        register(tools, Netention.Core.Tool.GENERATE, Generate.class, (core, p) -> (Boolean.TRUE.equals(p.cache()) ? lm(core).chat("", p.prompt(), p.prompt()) : lm(core).chat(p.prompt())).orElseThrow(() -> new RuntimeException("LLM returned no response.")));
+        register(tools, Netention.Core.Tool.SCHEDULE_SYSTEM_EVENT, ScheduleSystemEvent.class, Tools::scheduleSystemEvent);
+        register(tools, Netention.Core.Tool.CANCEL_SCHEDULED_EVENT, CancelScheduledEvent.class, (core, p) -> core.timers.cancel(p.timerId()));
+        register(tools, Netention.Core.Tool.CANCEL_PLAN, PlanRef.class, (core, p) -> core.planner.cancel(p.planNoteId()));
+        register(tools, Netention.Core.Tool.GET_PLAN_DEPENDENCIES, PlanRef.class, Tools::getPlanDependencies);
+        register(tools, Netention.Core.Tool.GET_PLAN_GRAPH_CONTEXT, NoteRef.class, Tools::getPlanGraphContext);
+        register(tools, Netention.Core.Tool.FIND_NOTES_BY_TAG, FindNotesByTag.class, (core, p) -> core.notes.getAll(n -> n.tags.contains(p.tag())));
+        register(tools, Netention.Core.Tool.FOR_EACH, ForEach.class, Tools::forEach);
+        register(tools, Netention.Core.Tool.EXECUTE_SEMANTIC_QUERY, SemanticQuery.class, Tools::executeSemanticQuery);
+        register(tools, Netention.Core.Tool.EVALUATE_PERSISTENT_QUERIES, None.class, (core, p) -> core.queries.refresh());
+        register(tools, Netention.Core.Tool.GET_SYSTEM_HEALTH_METRICS, None.class, Tools::getSystemHealthMetrics);
+        register(tools, Netention.Core.Tool.IDENTIFY_STALLED_PLANS, StalledPlans.class, Tools::identifyStalledPlans);
+        register(tools, Netention.Core.Tool.GET_CONFIG_STATE, GetConfigState.class, Tools::getConfigState);
+        register(tools, Netention.Core.Tool.APPLY_CONFIG_STATE, ApplyConfigState.class, Tools::applyConfigState);
+        register(tools, Netention.Core.Tool.GET_SELF_NOSTR_INFO, None.class, Tools::getSelfNostrInfo);
+        register(tools, Netention.Core.Tool.ACCEPT_FRIEND_REQUEST, AcceptFriendRequest.class, Tools::acceptFriendRequest);
+        register(tools, Netention.Core.Tool.REJECT_FRIEND_REQUEST, RejectFriendRequest.class, Tools::rejectFriendRequest);
+        register(tools, Netention.Core.Tool.SEND_FRIEND_REQUEST, Recipient.class, Tools::sendFriendRequest);
+        register(tools, Netention.Core.Tool.SEND_DM, SendDm.class, Tools::sendDm);
+    }
+
+    public static void declareMemoizable(Memos memos) {
+        memos.declare(Netention.Core.Tool.PARSE_JSON, Memos.Dependency.PURE);
+        memos.declare(Netention.Core.Tool.GET_NOTE_PROPERTY, Memos.Dependency.NOTE);
+        memos.declare(Netention.Core.Tool.INSPECT, Memos.Dependency.NOTE);
+        memos.declare(Netention.Core.Tool.FIND_NOTES_BY_TAG, Memos.Dependency.NOTES);
+        memos.declare(Netention.Core.Tool.GRAPH_SEARCH, Memos.Dependency.NOTES);
+        memos.declare(Netention.Core.Tool.GET_PLAN_GRAPH_CONTEXT, Memos.Dependency.NOTES);
+        memos.declare(Netention.Core.Tool.EXECUTE_SEMANTIC_QUERY, Memos.Dependency.NOTES);
+        memos.declare(Netention.Core.Tool.GET_CONFIG_STATE, Memos.Dependency.CONFIG);
+        memos.declare(Netention.Core.Tool.GET_SELF_NOSTR_INFO, Memos.Dependency.CONFIG);
+    }
+
+    private static <P extends Record> void register(Map<Netention.Core.Tool, BiFunction<Netention.Core, Map<String, Object>, Object>> tools, Netention.Core.Tool tool, Class<P> params, BiFunction<Netention.Core, P, Object> body) {
+        var binder = Binder.of(params);
+        schemas.put(tool, binder);
+        tools.put(tool, new Typed<>(binder, body));
+    }
+
+    public static List<String> schema(Netention.Core.Tool tool) {
+        var b = schemas.get(tool);
+        return b == null ? null : b.keys();
+    }
+
+    static String abbreviate(Map<String, Object> params) {
+        var sb = new StringBuilder("{");
+        params.forEach((k, v) -> {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(k).append('=');
+            var s = switch (v) {
+                case Collection<?> c -> "[" + c.size() + " items]";
+                case Map<?, ?> m -> "{" + m.size() + " entries}";
+                case null -> "null";
+                default -> String.valueOf(v);
+            };
+            sb.append(s.length() > 80 ? s.substring(0, 77) + "..." : s);
+        });
+        return sb.append('}').toString();
+    }
+
+    private record Typed<P extends Record>(Binder<P> binder, BiFunction<Netention.Core, P, Object> body) implements BiFunction<Netention.Core, Map<String, Object>, Object> {
+        @Override
+        public Object apply(Netention.Core core, Map<String, Object> params) {
+            return body.apply(core, binder.bind(params));
+        }
+    }
+
+    private static LM lm(Netention.Core core) {
+        if (!core.lm.isReady()) throw new RuntimeException("LLM service not ready.");
+        return core.lm;
+    }
+
+    record None() {
+    }
+
+    record NoteRef(@Binder.Required String noteId) {
+    }
+
+    record PlanRef(@Binder.Required String planNoteId) {
+    }
+
+    record LogMessage(Object message) {
+    }
+
+    record Echo(Object message) {
+    }
+
+    record GetNoteProperty(@Binder.Required String noteId, @Binder.Required String propertyPath, Boolean failIfNotFound, Object defaultValue) {
+    }
+
+    record Inspect(@Binder.Required String noteId) {
+    }
+
+    record ParseJson(@Binder.Required String jsonString) {
+    }
+
+    record CreateNote(String id, String title, String text, Boolean asHtml, List<String> tags, Map<String, Object> content, Map<String, Object> metadata) {
+    }
+
+    record ModifyNoteContent(@Binder.Required String noteId, @Binder.Required Map<String, Object> contentUpdate) {
+    }
+
+    record CreateLinks(@Binder.Required String sourceNoteId, @Binder.Required List<Map<String, Object>> links) {
+    }
+
+    record GraphSearch(@Binder.Required String noteId, Integer maxDepth, String relationType, Integer maxResults) {
+    }
+
+    record Contact(@Binder.Required String nostrPubKeyHex, Map<String, Object> profileData) {
+    }
+
+    record IfElse(Object condition, List<Map<String, Object>> trueSteps, List<Map<String, Object>> falseSteps) {
+    }
+
+    record DecryptNostrDm(@Binder.Required DmEvent eventPayloadMap) {
+    }
+
+    record DmEvent(String content, String pubkey, List<List<String>> tags) {
+    }
+
+    record UpdateChatNote(@Binder.Required String partnerPubKeyHex, @Binder.Required String senderPubKeyHex, @Binder.Required String messageContent, long timestampEpochSeconds) {
+    }
+
+    record FireCoreEvent(@Binder.Required Netention.Core.CoreEventType eventType, Object eventData) {
+    }
+
+    record Goal(@Binder.Required String goalText) {
+    }
+
+    record Summarize(String text, String noteId) {
+    }
+
+    record Generate(@Binder.Required String prompt, Boolean cache) {
+    }
+
+    record ScheduleSystemEvent(@Binder.Required Netention.Core.SystemEventType eventType, Long delaySeconds, Map<String, Object> payload) {
+    }
+
+    record StalledPlans(Long stallThresholdSeconds) {
+    }
+
+    record CancelScheduledEvent(@Binder.Required String timerId) {
+    }
+
+    record FindNotesByTag(@Binder.Required String tag) {
+    }
+
+    record ForEach(List<Object> list, String loopVar, List<Map<String, Object>> loopSteps, Integer maxParallelism) {
+    }
+
+    record SemanticQuery(@Binder.Required String queryText, Double minSimilarity, Integer maxResults) {
+    }
+
+    record GetConfigState(@Binder.Required String configType) {
+    }
+
+    record ApplyConfigState(@Binder.Required String configType, @Binder.Required Map<String, Object> stateMap) {
+    }
+
+    record AcceptFriendRequest(@Binder.Required String friendRequestSenderNpub, String actionableItemId) {
+    }
+
+    record RejectFriendRequest(@Binder.Required String actionableItemId) {
+    }
+
+    record Recipient(@Binder.Required String recipientNpub) {
+    }
+
+    record SendDm(@Binder.Required String recipientNpub, @Binder.Required String message) {
+    }
+
+    private static Object logMessage(Netention.Core core, LogMessage p) {
+        logger.info("TOOL_LOG: {}", p.message());
         return null;
     }
 
-    private static Object getNoteProperty(Netention.Core core, Map<String, Object> params) {
-        var noteId = (String) params.get(Netention.ToolParam.NOTE_ID.getKey());
-        var propertyPath = (String) params.get(Netention.ToolParam.PROPERTY_PATH.getKey());
-        var failIfNotFound = (Boolean) params.getOrDefault(Netention.ToolParam.FAIL_IF_NOT_FOUND.getKey(), true);
-        var defaultValue = params.get(Netention.ToolParam.DEFAULT_VALUE.getKey());
+    private static Object getNoteProperty(Netention.Core core, GetNoteProperty p) {
+        var noteId = p.noteId();
+        var propertyPath = p.propertyPath();
+        var failIfNotFound = !Boolean.FALSE.equals(p.failIfNotFound());
+        var defaultValue = p.defaultValue();
 
         return core.notes.get(noteId).map(n -> {
             try {
@@ -102,34 +270,48 @@ class Tools {
         });
     }
 
-    private static Object parseJson(Netention.Core core, Map<String, Object> params) {
-        var jsonString = (String) params.get(Netention.ToolParam.JSON_STRING.getKey());
+    private static Object inspect(Netention.Core core, Inspect p) {
+        var n = core.notes.get(p.noteId()).orElseThrow(() -> new RuntimeException("Note with ID " + p.noteId() + " not found."));
+        var m = new LinkedHashMap<String, Object>();
+        m.put(Netention.NoteProperty.ID.getKey(), n.id);
+        m.put(Netention.NoteProperty.TITLE.getKey(), n.getTitle());
+        m.put(Netention.NoteProperty.TAGS.getKey(), List.copyOf(n.tags));
+        m.put(Netention.NoteProperty.LINKS.getKey(), n.links.stream().map(l -> Map.of("targetNoteId", l.targetNoteId, "relationType", String.valueOf(l.relationType))).toList());
+        m.put("contentKeys", new TreeSet<>(n.content.keySet()));
+        m.put(Netention.NoteProperty.METADATA.getKey(), new TreeMap<>(n.meta));
+        m.put("version", n.version);
+        m.put("textLength", n.getText().length());
+        m.put("hasEmbedding", n.getEmbeddingV1() != null || core.notes.embeddings.contains(n.id));
+        m.put("embeddedChunks", n.chunks == null ? 0 : n.chunks.size());
+        m.put(Netention.NoteProperty.UPDATED_AT.getKey(), String.valueOf(n.updatedAt));
+        return m;
+    }
+
+    private static Object parseJson(Netention.Core core, ParseJson p) {
         try {
-            return core.json.readTree(jsonString);
+            return core.json.readTree(p.jsonString());
         } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
             throw new RuntimeException("Failed to parse JSON: " + e.getMessage(), e);
         }
     }
 
-    private static Object createNote(Netention.Core core, Map<String, Object> params) {
+    private static Object createNote(Netention.Core core, CreateNote p) {
         var note = new Netention.Note();
-        ofNullable((String) params.get(Netention.ToolParam.ID.getKey())).ifPresent(id -> note.id = id);
-        ofNullable((String) params.get(Netention.ToolParam.TITLE.getKey())).ifPresent(note::setTitle);
-        ofNullable((String) params.get(Netention.ToolParam.TEXT.getKey())).ifPresent(text -> {
-            if (Boolean.TRUE.equals(params.get(Netention.ToolParam.AS_HTML.getKey()))) note.setHtmlText(text);
+        ofNullable(p.id()).ifPresent(id -> note.id = id);
+        ofNullable(p.title()).ifPresent(note::setTitle);
+        ofNullable(p.text()).ifPresent(text -> {
+            if (Boolean.TRUE.equals(p.asHtml())) note.setHtmlText(text);
             else note.setText(text);
         });
-        ofNullable((List<String>) params.get(Netention.ToolParam.TAGS.getKey())).ifPresent(note.tags::addAll);
-        ofNullable((Map<String, Object>) params.get(Netention.ToolParam.CONTENT.getKey())).ifPresent(note.content::putAll);
-        ofNullable((Map<String, Object>) params.get(Netention.ToolParam.METADATA.getKey())).ifPresent(note.meta::putAll);
+        ofNullable(p.tags()).ifPresent(note.tags::addAll);
+        ofNullable(p.content()).ifPresent(note.content::putAll);
+        ofNullable(p.metadata()).ifPresent(note.meta::putAll);
         return core.saveNote(note);
     }
 
-    private static Object modifyNoteContent(Netention.Core core, Map<String, Object> params) {
-        var noteId = (String) params.get(Netention.ToolParam.NOTE_ID.getKey());
-        var contentUpdate = (Map<String, Object>) params.get(Netention.ToolParam.CONTENT_UPDATE.getKey());
-        return core.notes.get(noteId).map(n -> {
-            contentUpdate.forEach((key, v) -> {
+    private static Object modifyNoteContent(Netention.Core core, ModifyNoteContent p) {
+        return core.updateNote(p.noteId(), n -> {
+            p.contentUpdate().forEach((key, v) -> {
                 if ("metadataUpdate".equals(key) && v instanceof Map<?, ?> metaUpdates) {
                     metaUpdates.forEach((metaKey, metaValue) -> {
                         if ("NOW".equals(metaValue)) n.meta.put((String) metaKey, Instant.now().toString());
@@ -147,13 +329,53 @@ class Tools {
                     n.content.put(key, v);
                 }
             });
-            return core.saveNote(n);
-        }).orElseThrow(() -> new RuntimeException("Note " + noteId + " not found for modification."));
+            return n;
+        }).orElseThrow(() -> new RuntimeException("Note " + p.noteId() + " not found for modification."));
     }
 
-    private static Object deleteNote(Netention.Core core, Map<String, Object> params) {
-        var noteId = (String) params.get(Netention.ToolParam.NOTE_ID.getKey());
-        return core.deleteNote(noteId);
+    private static Object createLinks(Netention.Core core, CreateLinks p) {
+        var added = new int[1];
+        core.updateNote(p.sourceNoteId(), n -> {
+            for (var l : p.links()) {
+                var target = (String) l.get("targetNoteId");
+                var relation = (String) l.get("relationType");
+                if (target == null || target.isEmpty()) throw new IllegalArgumentException("Each link needs a targetNoteId.");
+                if (n.links.stream().noneMatch(x -> target.equals(x.targetNoteId) && Objects.equals(relation, x.relationType))) {
+                    n.links.add(new Netention.Link(target, relation));
+                    added[0]++;
+                }
+            }
+            return added[0] > 0 ? n : null;
+        }).orElseGet(() -> {
+            if (core.notes.get(p.sourceNoteId()).isEmpty()) throw new RuntimeException("Note " + p.sourceNoteId() + " not found for linking.");
+            return null;
+        });
+        return added[0];
+    }
+
+    private static Object graphSearch(Netention.Core core, GraphSearch p) {
+        var maxDepth = p.maxDepth() == null ? 2 : p.maxDepth();
+        var maxResults = p.maxResults() == null ? 50 : p.maxResults();
+        var seen = new HashSet<>(List.of(p.noteId()));
+        var frontier = List.of(p.noteId());
+        var found = new ArrayList<Map<String, Object>>();
+        for (var depth = 1; depth <= maxDepth && !frontier.isEmpty() && found.size() < maxResults; depth++) {
+            var next = new ArrayList<String>();
+            for (var id : frontier) {
+                var n = core.notes.get(id).orElse(null);
+                if (n == null) continue;
+                for (var l : n.links) {
+                    if (p.relationType() != null && !p.relationType().equals(l.relationType)) continue;
+                    if (found.size() >= maxResults || !seen.add(l.targetNoteId)) continue;
+                    var t = core.notes.get(l.targetNoteId).orElse(null);
+                    if (t == null) continue;
+                    found.add(Map.of(Netention.NoteProperty.ID.getKey(), t.id, Netention.NoteProperty.TITLE.getKey(), t.getTitle(), "depth", depth, "via", id, "relation", String.valueOf(l.relationType)));
+                    next.add(t.id);
+                }
+            }
+            frontier = next;
+        }
+        return found;
     }
 
     private static Netention.Note upsertContactAndChatNote(Netention.Core core, String nostrPubKeyHex, Map<String, Object> profileData) {
@@ -172,6 +394,17 @@ class Tools {
 
         var contactNoteOpt = core.notes.getAll(n -> n.tags.contains(Netention.SystemTag.CONTACT.value) && nostrPubKeyHex.equals(n.meta.get(Netention.Metadata.NOSTR_PUB_KEY_HEX.key))).stream().findFirst();
 
+        UnaryOperator<Netention.Note> touchContact = contactNote -> {
+            if (profileData != null) {
+                ofNullable((String) profileData.get("name")).ifPresent(contactNote::setTitle);
+                ofNullable((String) profileData.get("about")).ifPresent(contactNote::setText);
+                ofNullable((String) profileData.get("picture")).ifPresent(pic -> contactNote.content.put(Netention.ContentKey.PROFILE_PICTURE_URL.getKey(), pic));
+            }
+            contactNote.meta.put(Netention.Metadata.LAST_SEEN.key, Instant.now().toString());
+            return contactNote;
+        };
+
+        var batch = new Netention.Notes.Batch();
         var contactNote = contactNoteOpt.orElseGet(() -> {
             var newNote = new Netention.Note();
             newNote.tags.add(Netention.SystemTag.CONTACT.value);
@@ -182,99 +415,59 @@ class Tools {
             newNote.setText(profileData != null && profileData.containsKey("about") ? (String) profileData.get("about") : "");
             return newNote;
         });
-
-        if (profileData != null) {
-            ofNullable((String) profileData.get("name")).ifPresent(contactNote::setTitle);
-            ofNullable((String) profileData.get("about")).ifPresent(contactNote::setText);
-            ofNullable((String) profileData.get("picture")).ifPresent(pic -> contactNote.content.put(Netention.ContentKey.PROFILE_PICTURE_URL.getKey(), pic));
-        }
-        contactNote.meta.put(Netention.Metadata.LAST_SEEN.key, Instant.now().toString());
+        if (contactNoteOpt.isPresent()) batch.update(contactNote.id, touchContact);
+        else batch.save(touchContact.apply(contactNote));
 
         var chatNoteOpt = core.notes.getAll(n -> n.tags.contains(Netention.SystemTag.CHAT.value) && nostrPubKeyHex.equals(n.meta.get(Netention.Metadata.NOSTR_PUB_KEY_HEX.key))).stream().findFirst();
 
         if (chatNoteOpt.isEmpty()) {
-            var chatNote = new Netention.Note("Chat with " + contactNote.getTitle(), "");
+            var chatNote = new Netention.Note("Chat with " + touchContact.apply(core.notes.copy(contactNote)).getTitle(), "");
             chatNote.tags.add(Netention.SystemTag.CHAT.value);
             chatNote.meta.put(Netention.Metadata.NOSTR_PUB_KEY_HEX.key, nostrPubKeyHex);
             chatNote.meta.put(Netention.Metadata.NOSTR_PUB_KEY.key, finalNpub);
             chatNote.content.put(Netention.ContentKey.MESSAGES.getKey(), new ArrayList<Map<String, String>>());
-            core.saveNote(chatNote);
-            logger.info("Created new chat note for contact {}.", contactNote.getTitle());
+            batch.save(chatNote);
+            logger.info("Creating chat note for contact {}.", contactNote.getTitle());
         }
 
-        return core.saveNote(contactNote);
-    }
-
-    private static Object addContact(Netention.Core core, Map<String, Object> params) {
-        var nostrPubKeyHex = (String) params.get(Netention.ToolParam.NOSTR_PUB_KEY_HEX.getKey());
-        var profileData = (Map<String, Object>) params.get(Netention.ToolParam.PROFILE_DATA.getKey());
-        if (nostrPubKeyHex == null || nostrPubKeyHex.isEmpty()) {
-            throw new IllegalArgumentException("NOSTR_PUB_KEY_HEX is required for ADD_CONTACT.");
-        }
-        return upsertContactAndChatNote(core, nostrPubKeyHex, profileData);
+        return core.commit(batch).saved().filter(n -> n.id.equals(contactNote.id)).findFirst().orElse(contactNote);
     }
 
-    private static Object removeContact(Netention.Core core, Map<String, Object> params) {
-        var nostrPubKeyHex = (String) params.get(Netention.ToolParam.NOSTR_PUB_KEY_HEX.getKey());
-        if (nostrPubKeyHex == null || nostrPubKeyHex.isEmpty()) {
-            throw new IllegalArgumentException("NOSTR_PUB_KEY_HEX is required for REMOVE_CONTACT.");
-        }
-
-        boolean removedContact = false;
-        boolean removedChat = false;
-
-        // Find and delete contact note
-        Optional<Netention.Note> contactNoteOpt = core.notes.getAll(n ->
-                n.tags.contains(Netention.SystemTag.CONTACT.value) &&
-                        nostrPubKeyHex.equals(n.meta.get(Netention.Metadata.NOSTR_PUB_KEY_HEX.key))
-        ).stream().findFirst();
-
-        if (contactNoteOpt.isPresent()) {
-            core.deleteNote(contactNoteOpt.get().id);
-            removedContact = true;
-            logger.info("Removed contact note for hex: {}", nostrPubKeyHex.substring(0, 8));
-        } else {
-            logger.warn("No contact note found for hex: {}", nostrPubKeyHex.substring(0, 8));
+    private static Object removeContact(Netention.Core core, Contact p) {
+        var nostrPubKeyHex = p.nostrPubKeyHex();
+        var notes = core.notes.getAll(n ->
+                (n.tags.contains(Netention.SystemTag.CONTACT.value) || n.tags.contains(Netention.SystemTag.CHAT.value)) &&
+                        nostrPubKeyHex.equals(n.meta.get(Netention.Metadata.NOSTR_PUB_KEY_HEX.key)));
+        if (notes.isEmpty()) {
+            logger.warn("No contact or chat note found for hex: {}", nostrPubKeyHex.substring(0, Math.min(8, nostrPubKeyHex.length())));
+            return false;
         }
 
-        // Find and delete chat note
-        Optional<Netention.Note> chatNoteOpt = core.notes.getAll(n ->
-                n.tags.contains(Netention.SystemTag.CHAT.value) &&
-                        nostrPubKeyHex.equals(n.meta.get(Netention.Metadata.NOSTR_PUB_KEY_HEX.key))
-        ).stream().findFirst();
-
-        if (chatNoteOpt.isPresent()) {
-            core.deleteNote(chatNoteOpt.get().id);
-            removedChat = true;
-            logger.info("Removed chat note for hex: {}", nostrPubKeyHex.substring(0, 8));
-        } else {
-            logger.warn("No chat note found for hex: {}", nostrPubKeyHex.substring(0, 8));
-        }
-
-        return removedContact || removedChat;
+        var batch = new Netention.Notes.Batch();
+        notes.forEach(n -> batch.delete(n.id));
+        var deleted = core.commit(batch).deleted();
+        logger.info("Removed {} contact/chat notes for hex: {}", deleted.size(), nostrPubKeyHex.substring(0, Math.min(8, nostrPubKeyHex.length())));
+        return !deleted.isEmpty();
     }
 
-    private static Object ifElse(Netention.Core core, Map<String, Object> params) {
-        var condition = (Boolean) params.get(Netention.ToolParam.CONDITION.getKey());
-        var trueSteps = (List<Map<String, Object>>) params.get(Netention.ToolParam.TRUE_STEPS.getKey());
-        var falseSteps = (List<Map<String, Object>>) params.get(Netention.ToolParam.FALSE_STEPS.getKey());
-
-        List<Map<String, Object>> stepsToExecute = condition ? trueSteps : falseSteps;
+    private static Object ifElse(Netention.Core core, IfElse p) {
+        var condition = Expr.truthy(p.condition());
+        var stepsToExecute = condition ? p.trueSteps() : p.falseSteps();
         if (stepsToExecute != null && !stepsToExecute.isEmpty()) {
-            logger.warn("IF_ELSE tool does not directly execute nested steps. Steps: {}", stepsToExecute);
+            logger.warn("IF_ELSE invoked outside a plan; branch steps run only as nested plan executions. Skipped {} steps.", stepsToExecute.size());
         }
         return condition;
     }
 
-    private static Object decryptNostrDm(Netention.Core core, Map<String, Object> params) {
-        var eventPayload = (Map<String, Object>) params.get(Netention.ToolParam.EVENT_PAYLOAD_MAP.getKey());
-        var content = (String) eventPayload.get("content");
-        var pubkey = (String) eventPayload.get("pubkey");
-        var tags = (List<List<String>>) eventPayload.get("tags");
+    private static Object decryptNostrDm(Netention.Core core, DecryptNostrDm p) {
+        var event = p.eventPayloadMap();
+        var content = event.content();
+        var pubkey = event.pubkey();
+        if (content == null || pubkey == null) throw new IllegalArgumentException("DM event missing content or pubkey.");
 
         String recipientPubKeyHex = null;
-        for (var tag : tags) {
-            if ("p".equals(tag.get(0)) && tag.size() > 1) {
+        for (var tag : Objects.requireNonNullElse(event.tags(), List.<List<String>>of())) {
+            if (tag.size() > 1 && "p".equals(tag.get(0))) {
                 recipientPubKeyHex = tag.get(1);
                 break;
             }
@@ -320,11 +513,10 @@ class Tools {
         }
     }
 
-    private static Object updateChatNote(Netention.Core core, Map<String, Object> params) {
-        var partnerPubKeyHex = (String) params.get(Netention.ToolParam.PARTNER_PUB_KEY_HEX.getKey());
-        var senderPubKeyHex = (String) params.get(Netention.ToolParam.SENDER_PUB_KEY_HEX.getKey());
-        var messageContent = (String) params.get(Netention.ToolParam.MESSAGE_CONTENT.getKey());
-        var timestampEpochSeconds = (Long) params.get(Netention.ToolParam.TIMESTAMP_EPOCH_SECONDS.getKey());
+    private static Object updateChatNote(Netention.Core core, UpdateChatNote p) {
+        var partnerPubKeyHex = p.partnerPubKeyHex();
+        var senderPubKeyHex = p.senderPubKeyHex();
+        var messageContent = p.messageContent();
 
         var selfNpubHex = core.net.getPublicKeyXOnlyHex();
         if (selfNpubHex == null || selfNpubHex.isEmpty()) {
@@ -332,9 +524,7 @@ class Tools {
             return null;
         }
 
-        var chatNoteOpt = core.notes.getAll(n -> n.tags.contains(Netention.SystemTag.CHAT.value) && partnerPubKeyHex.equals(n.meta.get(Netention.Metadata.NOSTR_PUB_KEY_HEX.key))).stream().findFirst();
-
-        var chatNote = chatNoteOpt.orElseGet(() -> {
+        var chatNoteId = core.notes.getAll(n -> n.tags.contains(Netention.SystemTag.CHAT.value) && partnerPubKeyHex.equals(n.meta.get(Netention.Metadata.NOSTR_PUB_KEY_HEX.key))).stream().findFirst().orElseGet(() -> {
             var newChatNote = new Netention.Note();
             newChatNote.tags.add(Netention.SystemTag.CHAT.value);
             newChatNote.meta.put(Netention.Metadata.NOSTR_PUB_KEY_HEX.key, partnerPubKeyHex);
@@ -346,48 +536,38 @@ class Tools {
             }
             core.notes.getAll(n -> n.tags.contains(Netention.SystemTag.CONTACT.value) && partnerPubKeyHex.equals(n.meta.get(Netention.Metadata.NOSTR_PUB_KEY_HEX.key))).stream().findFirst().ifPresentOrElse(contact -> newChatNote.setTitle("Chat with " + contact.getTitle()), () -> newChatNote.setTitle("Chat with " + partnerPubKeyHex.substring(0, 12) + "..."));
             newChatNote.content.put(Netention.ContentKey.MESSAGES.getKey(), new ArrayList<Map<String, String>>());
-            return newChatNote;
-        });
-
-        var messages = (List<Map<String, String>>) chatNote.content.getOrDefault(Netention.ContentKey.MESSAGES.getKey(), new ArrayList<Map<String, String>>());
-
-        final String finalSenderPubKeyHex = senderPubKeyHex;
-        final Instant messageTimestamp = Instant.ofEpochSecond(timestampEpochSeconds);
-        boolean isDuplicate = messages.stream().anyMatch(msg -> finalSenderPubKeyHex.equals(msg.get("sender")) && messageContent.equals(msg.get("text")) && messageTimestamp.equals(Instant.parse(msg.get("timestamp"))));
-
-        if (!isDuplicate) {
-            var messageEntry = new HashMap<String, String>();
-            messageEntry.put("sender", senderPubKeyHex);
-            messageEntry.put("text", messageContent);
-            messageEntry.put("timestamp", Instant.ofEpochSecond(timestampEpochSeconds).toString());
-            messages.add(messageEntry);
+            return core.saveNote(newChatNote);
+        }).id;
+
+        final Instant messageTimestamp = Instant.ofEpochSecond(p.timestampEpochSeconds());
+        var added = core.updateNote(chatNoteId, chatNote -> {
+            var messages = (List<Map<String, String>>) chatNote.content.getOrDefault(Netention.ContentKey.MESSAGES.getKey(), new ArrayList<Map<String, String>>());
+            if (messages.stream().anyMatch(msg -> senderPubKeyHex.equals(msg.get("sender")) && messageContent.equals(msg.get("text")) && messageTimestamp.equals(Instant.parse(msg.get("timestamp")))))
+                return null;
+            messages.add(Map.of("sender", senderPubKeyHex, "text", messageContent, "timestamp", messageTimestamp.toString()));
             chatNote.content.put(Netention.ContentKey.MESSAGES.getKey(), messages);
+            if (!senderPubKeyHex.equals(selfNpubHex))
+                chatNote.meta.merge(Netention.Metadata.UNREAD_MESSAGES_COUNT.key, 1, (a, b) -> ((Number) a).intValue() + 1);
+            return chatNote;
+        }).isPresent();
 
-            if (!senderPubKeyHex.equals(selfNpubHex)) {
-                int unreadCount = (Integer) chatNote.meta.getOrDefault(Netention.Metadata.UNREAD_MESSAGES_COUNT.key, 0);
-                chatNote.meta.put(Netention.Metadata.UNREAD_MESSAGES_COUNT.key, unreadCount + 1);
-            }
-
-            core.saveNote(chatNote);
-            core.fireCoreEvent(Netention.Core.CoreEventType.CHAT_MESSAGE_ADDED, Map.of("chatNoteId", chatNote.id, "sender", senderPubKeyHex, "message", messageContent));
+        if (added) {
+            core.fireCoreEvent(Netention.Core.CoreEventType.CHAT_MESSAGE_ADDED, Map.of("chatNoteId", chatNoteId, "sender", senderPubKeyHex, "message", messageContent));
             logger.info("Added message to chat with {}: {}", partnerPubKeyHex.substring(0, 8), messageContent.substring(0, Math.min(messageContent.length(), 50)));
         } else {
             logger.debug("Skipping duplicate message for chat with {}: {}", partnerPubKeyHex.substring(0, 8), messageContent.substring(0, Math.min(messageContent.length(), 50)));
         }
-        return chatNote.id;
+        return chatNoteId;
     }
 
-    private static Object fireCoreEvent(Netention.Core core, Map<String, Object> params) {
-        var eventType = Netention.Core.CoreEventType.valueOf((String) params.get(Netention.ToolParam.EVENT_TYPE.getKey()));
-        var eventData = params.get(Netention.ToolParam.EVENT_DATA.getKey());
-        core.fireCoreEvent(eventType, eventData);
+    private static Object fireCoreEvent(Netention.Core core, FireCoreEvent p) {
+        core.fireCoreEvent(p.eventType(), p.eventData());
         return null;
     }
 
-    private static Object suggestPlanSteps(Netention.Core core, Map<String, Object> params) {
-        var goalText = (String) params.get(Netention.ToolParam.GOAL_TEXT.getKey());
+    private static Object suggestPlanSteps(Netention.Core core, Goal p) {
         if (core.lm.isReady()) {
-            return core.lm.decomposeTask(goalText).orElse(Collections.emptyList()).stream().map(stepDesc -> {
+            return core.lm.decomposeTask(p.goalText()).orElse(Collections.emptyList()).stream().map(stepDesc -> {
                 var step = new Netention.Planner.PlanStep();
                 step.description = stepDesc;
                 step.toolName = Netention.Core.Tool.LOG_MESSAGE.name();
@@ -398,56 +578,105 @@ class Tools {
         return Collections.emptyList();
     }
 
-    private static Object scheduleSystemEvent(Netention.Core core, Map<String, Object> params) {
-        var eventType = Netention.Core.SystemEventType.valueOf((String) params.get(Netention.ToolParam.EVENT_TYPE.getKey()));
-        var delaySeconds = ((Number) params.getOrDefault(Netention.ToolParam.DELAY_SECONDS.getKey(), 0L)).longValue();
-        var payload = (Map<String, Object>) params.getOrDefault(Netention.ToolParam.PAYLOAD.getKey(), Collections.emptyMap());
+    private static Object summarize(Netention.Core core, Summarize p) {
+        var text = p.text() != null ? p.text() : p.noteId() == null ? null : core.notes.get(p.noteId()).map(Netention.Note::getText).orElseThrow(() -> new RuntimeException("Note with ID " + p.noteId() + " not found."));
+        if (text == null) throw new IllegalArgumentException("TEXT or NOTE_ID is required for SUMMARIZE.");
+        return lm(core).summarize(text).orElseThrow(() -> new RuntimeException("LLM returned no summary."));
+    }
 
-        core.scheduler.schedule(() -> core.fireCoreEvent(Netention.Core.CoreEventType.SYSTEM_EVENT_REQUESTED, Map.of(Netention.ToolParam.EVENT_TYPE.getKey(), eventType.name(), Netention.ToolParam.PAYLOAD.getKey(), payload, Netention.ContentKey.STATUS.getKey(), Netention.PlanState.PENDING.name())), delaySeconds, TimeUnit.SECONDS);
-        return null;
+    private static Object scheduleSystemEvent(Netention.Core core, ScheduleSystemEvent p) {
+        var delaySeconds = p.delaySeconds() == null ? 0L : p.delaySeconds();
+        var payload = p.payload() == null ? Map.<String, Object>of() : p.payload();
+        var handle = core.timers.scheduleEvent(p.eventType().name(), payload, Duration.ofSeconds(delaySeconds));
+        return Map.of(Netention.ToolParam.TIMER_ID.getKey(), handle.timerId(), "dueAt", handle.dueAt().toString());
     }
 
-    private static Object findNotesByTag(Netention.Core core, Map<String, Object> params) {
-        var tag = (String) params.get(Netention.ToolParam.TAG.getKey());
-        return core.notes.getAll(n -> n.tags.contains(tag));
+    private static Object getPlanDependencies(Netention.Core core, PlanRef p) {
+        var deps = new LinkedHashMap<String, List<String>>();
+        var exec = core.planner.getActive().get(p.planNoteId());
+        if (exec != null) {
+            exec.steps.forEach(s -> deps.put(s.id, List.copyOf(s.dependsOnStepIds)));
+            return deps;
+        }
+        var note = core.notes.get(p.planNoteId()).orElseThrow(() -> new RuntimeException("Plan note " + p.planNoteId() + " not found."));
+        var t = core.plans.template(note);
+        if (t != null) t.steps().forEach(s -> deps.put(s.id(), s.dependsOnStepIds()));
+        return deps;
     }
 
-    private static Object forEach(Netention.Core core, Map<String, Object> params) {
-        var list = (List<Object>) params.get(Netention.ToolParam.LIST.getKey());
-        var loopVarName = (String) params.get(Netention.ToolParam.LOOP_VAR.getKey());
-        var loopSteps = (List<Map<String, Object>>) params.get(Netention.ToolParam.LOOP_STEPS.getKey());
+    private static Object getPlanGraphContext(Netention.Core core, NoteRef p) {
+        var noteId = p.noteId();
+        var n = core.notes.get(noteId).orElseThrow(() -> new RuntimeException("Note with ID " + noteId + " not found."));
+        var root = new HashMap<String, Object>(graphNode(n, null));
+        root.put("children", n.links.stream().filter(l -> planRelation(l.relationType)).flatMap(l -> core.notes.get(l.targetNoteId).map(c -> graphNode(c, l.relationType)).stream()).toList());
+        root.put("parents", core.notes.getAll(o -> o.links.stream().anyMatch(l -> noteId.equals(l.targetNoteId) && planRelation(l.relationType))).stream()
+                .map(o -> graphNode(o, o.links.stream().filter(l -> noteId.equals(l.targetNoteId) && planRelation(l.relationType)).findFirst().map(l -> l.relationType).orElse("unknown"))).toList());
+        return root;
+    }
 
-        if (list == null || loopSteps == null || loopSteps.isEmpty()) {
+    private static boolean planRelation(String r) {
+        return "plan_subgoal_of".equals(r) || "plan_depends_on".equals(r);
+    }
+
+    private static Map<String, Object> graphNode(Netention.Note n, String relation) {
+        var m = new HashMap<String, Object>();
+        m.put(Netention.NoteProperty.ID.getKey(), n.id);
+        m.put(Netention.NoteProperty.TITLE.getKey(), n.getTitle());
+        m.put(Netention.ContentKey.STATUS.getKey(), n.meta.get(Netention.Metadata.PLAN_STATUS.key));
+        if (relation != null) m.put("relation", relation);
+        return m;
+    }
+
+    private static Object forEach(Netention.Core core, ForEach p) {
+        if (p.list() == null || p.loopSteps() == null || p.loopSteps().isEmpty()) {
             logger.warn("FOR_EACH called with null list or empty loop steps.");
             return null;
         }
 
-        logger.info("FOR_EACH: Iterating {} items with loop variable '{}'. Steps: {}", list.size(), loopVarName, loopSteps.size());
+        logger.warn("FOR_EACH invoked outside a plan; loop steps run only as nested plan executions. Skipped {} items with loop variable '{}'.", p.list().size(), p.loopVar());
         return null;
     }
 
-    private static Object executeSemanticQuery(Netention.Core core, Map<String, Object> params) {
-        var queryText = (String) params.get(Netention.ToolParam.QUERY_TEXT.getKey());
-        var minSimilarity = ((Number) params.getOrDefault(Netention.ToolParam.MIN_SIMILARITY.getKey(), 0.7)).doubleValue();
-        var maxResults = ((Number) params.getOrDefault(Netention.ToolParam.MAX_RESULTS.getKey(), 5)).intValue();
+    private static Object executeSemanticQuery(Netention.Core core, SemanticQuery p) {
+        var minSimilarity = p.minSimilarity() == null ? 0.7 : p.minSimilarity();
+        var maxResults = p.maxResults() == null ? 5 : p.maxResults();
 
         if (!core.lm.isReady()) {
             throw new RuntimeException("LLM service not ready for semantic query.");
         }
 
-        return core.lm.generateEmbedding(queryText).map(queryEmb -> core.notes.getAllNotes().stream().filter(n -> n.getEmbeddingV1() != null && n.getEmbeddingV1().length == queryEmb.length).map(n -> new AbstractMap.SimpleEntry<>(n, LM.cosineSimilarity(queryEmb, n.getEmbeddingV1()))).filter(entry -> entry.getValue() >= minSimilarity).sorted(Map.Entry.<Netention.Note, Double>comparingByValue().reversed()).limit(maxResults).map(Map.Entry::getKey).collect(Collectors.toList())).orElse(Collections.emptyList());
+        return core.lm.generateEmbedding(p.queryText()).map(queryEmb -> core.notes.embeddings.search(queryEmb, maxResults, (float) minSimilarity, id -> true).stream().flatMap(h -> core.notes.get(h.id()).stream()).collect(Collectors.toList())).orElse(Collections.emptyList());
     }
 
-    private static Object getSystemHealthMetrics(Netention.Core core, Map<String, Object> params) {
-        long pendingSystemEvents = core.notes.getAll(n -> n.tags.contains(Netention.SystemTag.SYSTEM_EVENT.value) && Netention.PlanState.PENDING.name().equals(n.content.get(Netention.ContentKey.STATUS.getKey()))).size();
-        long activePlans = core.planner.getActive().size();
-        long failedPlanStepsInActivePlans = core.planner.getActive().values().stream().flatMap(exec -> exec.steps.stream()).filter(step -> Netention.PlanStepState.FAILED.equals(step.status)).count();
+    private static Object identifyStalledPlans(Netention.Core core, StalledPlans p) {
+        var stalled = core.planner.watchdog.stalled(Duration.ofSeconds(p.stallThresholdSeconds() != null ? Math.max(0, p.stallThresholdSeconds()) : 3600));
+        return Map.of("identifiedStalledPlanNoteIds", stalled.stream().map(d -> d.get("planNoteId")).distinct().toList(), "stalledPlans", stalled);
+    }
 
-        return Map.of("pendingSystemEvents", pendingSystemEvents, "activePlans", activePlans, "failedPlanStepsInActivePlans", failedPlanStepsInActivePlans);
+    private static Object getSystemHealthMetrics(Netention.Core core, None p) {
+        var active = core.planner.getActive();
+        var m = new LinkedHashMap<String, Object>();
+        m.put("pendingSystemEvents", (long) core.notes.pendingEventCount());
+        m.put("activePlans", (long) active.size());
+        m.put("failedPlanStepsInActivePlans", active.values().stream().flatMap(exec -> exec.steps.stream()).filter(step -> Netention.PlanStepState.FAILED.equals(step.status)).count());
+        m.put("handlers", core.planner.handlerMetrics());
+        m.put("lanes", core.planner.scheduler.metrics());
+        m.put("watchdog", core.planner.watchdog.metrics());
+        m.put("timers", core.timers.metrics());
+        m.put("retention", core.archiver.metrics());
+        m.put("breakers", core.planner.retries.metrics());
+        m.put("hedgeWins", core.planner.hedgeMetrics());
+        m.put("tools", core.invocations.metrics());
+        m.put("memo", core.memos.metrics());
+        m.put("embeddings", core.notes.embeddings.metrics());
+        if (core.lm.cache() != null) m.put("lmCache", core.lm.cache().metrics());
+        m.put("latency", core.traces.metrics());
+        m.put("stepLogs", StepLog.metrics());
+        return m;
     }
 
-    private static Object getConfigState(Netention.Core core, Map<String, Object> params) {
-        var configType = (String) params.get(Netention.ToolParam.CONFIG_TYPE.getKey());
+    private static Object getConfigState(Netention.Core core, GetConfigState p) {
+        var configType = p.configType();
         return switch (configType) {
             case "nostr" -> core.json.convertValue(core.cfg.net, new TypeReference<Map<String, Object>>() {
             });
@@ -455,13 +684,15 @@ class Tools {
             });
             case "llm" -> core.json.convertValue(core.cfg.lm, new TypeReference<Map<String, Object>>() {
             });
+            case "retention" -> core.json.convertValue(core.cfg.retention, new TypeReference<Map<String, Object>>() {
+            });
             default -> throw new IllegalArgumentException("Unknown config type: " + configType);
         };
     }
 
-    private static Object applyConfigState(Netention.Core core, Map<String, Object> params) {
-        var configType = (String) params.get(Netention.ToolParam.CONFIG_TYPE.getKey());
-        var stateMap = (Map<String, Object>) params.get(Netention.ToolParam.STATE_MAP.getKey());
+    private static Object applyConfigState(Netention.Core core, ApplyConfigState p) {
+        var configType = p.configType();
+        var stateMap = p.stateMap();
         try {
             switch (configType) {
                 case "nostr" -> {
@@ -484,9 +715,26 @@ class Tools {
                     core.cfg.lm.ollamaBaseUrl = newConfig.ollamaBaseUrl;
                     core.cfg.lm.ollamaChatModelName = newConfig.ollamaChatModelName;
                     core.cfg.lm.ollamaEmbeddingModelName = newConfig.ollamaEmbeddingModelName;
+                    core.cfg.lm.embeddingStorage = newConfig.embeddingStorage;
+                    core.cfg.lm.rerankFactor = newConfig.rerankFactor;
+                    core.cfg.lm.chunkTokens = newConfig.chunkTokens;
+                    core.cfg.lm.chunkOverlapTokens = newConfig.chunkOverlapTokens;
+                    core.cfg.lm.cacheEnabled = newConfig.cacheEnabled;
+                    core.cfg.lm.cacheMaxEntries = newConfig.cacheMaxEntries;
+                    core.cfg.lm.cacheMaxMegabytes = newConfig.cacheMaxMegabytes;
+                    core.cfg.lm.cacheTtlHours = newConfig.cacheTtlHours;
+                    core.notes.embeddingStorage(Embeddings.Mode.of(newConfig.embeddingStorage), newConfig.rerankFactor);
                     core.lm.init();
                     core.fireCoreEvent(Netention.Core.CoreEventType.CONFIG_CHANGED, "llm_status_changed");
                 }
+                case "retention" -> {
+                    var newConfig = core.json.convertValue(stateMap, Netention.Config.RetentionSettings.class);
+                    core.cfg.retention.enabled = newConfig.enabled;
+                    core.cfg.retention.sweepIntervalSeconds = newConfig.sweepIntervalSeconds;
+                    core.cfg.retention.sweepBatchSize = newConfig.sweepBatchSize;
+                    core.cfg.retention.policies = List.copyOf(newConfig.policies);
+                    core.fireCoreEvent(Netention.Core.CoreEventType.CONFIG_CHANGED, "retention_updated");
+                }
                 default -> throw new IllegalArgumentException("Unknown config type: " + configType);
             }
             logger.info("Applied {} config state.", configType);
@@ -497,17 +745,13 @@ class Tools {
         }
     }
 
-    private static Object getSelfNostrInfo(Netention.Core core, Map<String, Object> params) {
+    private static Object getSelfNostrInfo(Netention.Core core, None p) {
         return Map.of("pubKeyHex", core.net.getPublicKeyXOnlyHex(), "pubKeyNpub", core.net.getPublicKeyBech32(), "myProfileNoteId", core.cfg.net.myProfileNoteId);
     }
 
-    private static Object acceptFriendRequest(Netention.Core core, Map<String, Object> params) {
-        var senderNpub = (String) params.get(Netention.ToolParam.FRIEND_REQUEST_SENDER_NPUB.getKey());
-        var actionableItemId = (String) params.get(Netention.ToolParam.ACTIONABLE_ITEM_ID.getKey());
-
-        if (senderNpub == null || senderNpub.isEmpty()) {
-            throw new IllegalArgumentException("FRIEND_REQUEST_SENDER_NPUB is required for ACCEPT_FRIEND_REQUEST.");
-        }
+    private static Object acceptFriendRequest(Netention.Core core, AcceptFriendRequest p) {
+        var senderNpub = p.friendRequestSenderNpub();
+        var actionableItemId = p.actionableItemId();
 
         try {
             var senderPubKeyHex = Crypto.bytesToHex(Crypto.Bech32.nip19Decode(senderNpub));
@@ -524,12 +768,8 @@ class Tools {
         }
     }
 
-    private static Object rejectFriendRequest(Netention.Core core, Map<String, Object> params) {
-        var actionableItemId = (String) params.get(Netention.ToolParam.ACTIONABLE_ITEM_ID.getKey());
-
-        if (actionableItemId == null || actionableItemId.isEmpty()) {
-            throw new IllegalArgumentException("ACTIONABLE_ITEM_ID is required for REJECT_FRIEND_REQUEST.");
-        }
+    private static Object rejectFriendRequest(Netention.Core core, RejectFriendRequest p) {
+        var actionableItemId = p.actionableItemId();
 
         core.fireCoreEvent(Netention.Core.CoreEventType.ACTIONABLE_ITEM_REMOVED, actionableItemId);
 
@@ -537,11 +777,8 @@ class Tools {
         return true;
     }
 
-    private static Object sendFriendRequest(Netention.Core core, Map<String, Object> params) {
-        var recipientNpub = (String) params.get(Netention.ToolParam.RECIPIENT_NPUB.getKey());
-        if (recipientNpub == null || recipientNpub.isEmpty()) {
-            throw new IllegalArgumentException("RECIPIENT_NPUB is required for SEND_FRIEND_REQUEST.");
-        }
+    private static Object sendFriendRequest(Netention.Core core, Recipient p) {
+        var recipientNpub = p.recipientNpub();
         try {
             core.net.sendFriendRequest(recipientNpub);
             logger.info("Sent friend request to {}", recipientNpub);
@@ -554,6 +791,11 @@ class Tools {
             throw new RuntimeException("Failed to send friend request: " + e.getMessage(), e);
         }
     }
+
+    private static Object sendDm(Netention.Core core, SendDm p) {
+        core.net.sendDirectMessage(p.recipientNpub(), p.message());
+        return true;
+    }
 }
 //public class Tools {
 //    public static void registerAllTools(Map<Netention.Core.Tool, BiFunction<Netention.Core, Map<String, Object>, Object>> toolMap) {
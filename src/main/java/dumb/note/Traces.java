@@ -0,0 +1,258 @@
+package dumb.note;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jdk.jfr.*;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static dumb.note.Netention.*;
+
+public class Traces {
+    private static final int MAX_KEYS = 256;
+    private static final String GOAL = "goal", OTHER = "other";
+    private final Map<Core.Tool, Stats> tools = new ConcurrentHashMap<>();
+    private final Map<String, Stats> steps = new ConcurrentHashMap<>();
+    private final Map<String, Stats> handlers = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private static final ObjectWriter jsonWriter = new ObjectMapper().writer();
+    private volatile Spool<Map<String, Object>> jsonLines;
+
+    public enum Kind {PLAN, STEP}
+
+    public synchronized void exportJsonLines(Path file, long maxBytes) {
+        if (jsonLines == null) jsonLines = new Spool<>(file, maxBytes, "NetentionTraceExport", jsonWriter::writeValueAsBytes);
+    }
+
+    public Span plan(Planner.PlanExecution exec, long queuedAt) {
+        var s = new Span(this, Kind.PLAN, exec.isInstance() ? exec.planNoteId : GOAL, exec.id, Long.toHexString(ids.incrementAndGet()), null, queuedAt);
+        s.start();
+        return s;
+    }
+
+    public Span step(Span parent, Planner.PlanStep step, String toolName, long queuedAt) {
+        return new Span(this, Kind.STEP, toolName, step.id, parent != null ? parent.traceId : Long.toHexString(ids.incrementAndGet()), parent, queuedAt);
+    }
+
+    public void tool(Core.Tool tool, long startedAt, boolean ok) {
+        var s = tools.computeIfAbsent(tool, t -> new Stats());
+        s.run.record(micros(System.nanoTime() - startedAt));
+        if (!ok) s.errors.increment();
+    }
+
+    public void toolWait(Core.Tool tool, long nanos) {
+        tools.computeIfAbsent(tool, t -> new Stats()).wait.record(micros(nanos));
+    }
+
+    public Map<String, Object> metrics() {
+        var m = new LinkedHashMap<String, Object>();
+        m.put("tools", snapshot(tools));
+        m.put("steps", snapshot(steps));
+        m.put("handlers", snapshot(handlers));
+        var j = jsonLines;
+        if (j != null) m.put("export", j.metrics());
+        return m;
+    }
+
+    private static <K> Map<String, Object> snapshot(Map<K, Stats> stats) {
+        var m = new TreeMap<String, Object>();
+        stats.forEach((k, s) -> m.put(k.toString(), s.snapshot()));
+        return m;
+    }
+
+    private void finished(Span s, long waitNanos, long runNanos, boolean ok) {
+        var stats = switch (s.kind) {
+            case PLAN -> stats(handlers, s.name);
+            case STEP -> stats(steps, s.name);
+        };
+        stats.wait.record(micros(waitNanos));
+        stats.run.record(micros(runNanos));
+        if (!ok) stats.errors.increment();
+        var j = jsonLines;
+        if (j != null) j.offer(json(s, waitNanos, runNanos, ok));
+    }
+
+    private static Stats stats(Map<String, Stats> m, String key) {
+        var s = m.get(key);
+        if (s != null) return s;
+        return m.computeIfAbsent(m.size() < MAX_KEYS ? key : OTHER, k -> new Stats());
+    }
+
+    private static Map<String, Object> json(Span s, long waitNanos, long runNanos, boolean ok) {
+        var m = new LinkedHashMap<String, Object>();
+        m.put("ts", s.wallStart.toString());
+        m.put("kind", s.kind.name());
+        m.put("name", s.name);
+        m.put("subject", s.subject);
+        m.put("trace", s.traceId);
+        m.put("span", s.id);
+        if (s.parentId != null) m.put("parent", s.parentId);
+        m.put("waitUs", waitNanos / 1_000);
+        m.put("runUs", runNanos / 1_000);
+        m.put("ok", ok);
+        return m;
+    }
+
+    private static long micros(long nanos) {
+        return Math.max(0, nanos / 1_000);
+    }
+
+    public static final class Span {
+        private final Traces traces;
+        public final Kind kind;
+        public final String name, subject, traceId, id, parentId;
+        public final Instant wallStart = Instant.now();
+        private final long queuedAt;
+        private volatile long startedAt;
+        private volatile SpanEvent jfr;
+        private volatile boolean ended;
+
+        private Span(Traces traces, Kind kind, String name, String subject, String traceId, Span parent, long queuedAt) {
+            this.traces = traces;
+            this.kind = kind;
+            this.name = name;
+            this.subject = subject;
+            this.traceId = traceId;
+            this.id = Long.toHexString(traces.ids.incrementAndGet());
+            this.parentId = parent == null ? null : parent.id;
+            this.queuedAt = queuedAt;
+            this.startedAt = queuedAt;
+        }
+
+        public void start() {
+            startedAt = System.nanoTime();
+            var e = new SpanEvent();
+            if (e.isEnabled()) {
+                e.begin();
+                jfr = e;
+            }
+        }
+
+        public void end(boolean ok) {
+            if (ended) return;
+            ended = true;
+            var now = System.nanoTime();
+            var wait = startedAt - queuedAt;
+            var e = jfr;
+            if (e != null) {
+                e.end();
+                e.kind = kind.name();
+                e.name = name;
+                e.subject = subject;
+                e.traceId = traceId;
+                e.spanId = id;
+                e.parentId = parentId;
+                e.queueWait = wait;
+                e.ok = ok;
+                e.commit();
+            }
+            traces.finished(this, wait, now - startedAt, ok);
+        }
+    }
+
+    @Name("dumb.note.Span")
+    @Label("Netention Span")
+    @Category("Netention")
+    @Description("A plan execution or step attempt; the event duration is its run time.")
+    static class SpanEvent extends Event {
+        @Label("Kind")
+        String kind;
+        @Label("Name")
+        String name;
+        @Label("Subject")
+        String subject;
+        @Label("Trace Id")
+        String traceId;
+        @Label("Span Id")
+        String spanId;
+        @Label("Parent Span Id")
+        String parentId;
+        @Label("Queue Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWait;
+        @Label("Succeeded")
+        boolean ok;
+    }
+
+    private static final class Stats {
+        final Histogram wait = new Histogram(), run = new Histogram();
+        final LongAdder errors = new LongAdder();
+
+        Map<String, Object> snapshot() {
+            var m = new LinkedHashMap<String, Object>();
+            m.put("count", run.count());
+            m.put("errors", errors.sum());
+            m.put("wait", wait.snapshot());
+            m.put("run", run.snapshot());
+            return m;
+        }
+    }
+
+    public static final class Histogram {
+        private static final int SUB_BITS = 4, SUB = 1 << SUB_BITS, MAX_EXP = 36;
+        private static final int BUCKETS = (MAX_EXP - SUB_BITS + 2) * SUB;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder(), sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        public void record(long v) {
+            counts.incrementAndGet(index(v));
+            total.increment();
+            sum.add(v);
+            max.accumulate(v);
+        }
+
+        static int index(long v) {
+            if (v < SUB) return (int) Math.max(0, v);
+            var exp = 63 - Long.numberOfLeadingZeros(v);
+            if (exp > MAX_EXP) return BUCKETS - 1;
+            var shift = exp - SUB_BITS;
+            return (shift + 1) * SUB + (int) ((v >>> shift) & (SUB - 1));
+        }
+
+        static long upper(int i) {
+            if (i < SUB) return i;
+            var shift = i / SUB - 1;
+            return ((long) (SUB + i % SUB + 1) << shift) - 1;
+        }
+
+        public long count() {
+            return total.sum();
+        }
+
+        public long percentile(double q) {
+            var n = 0L;
+            var c = new long[BUCKETS];
+            for (var i = 0; i < BUCKETS; i++) n += c[i] = counts.get(i);
+            if (n == 0) return 0;
+            var target = Math.max(1, (long) Math.ceil(q * n));
+            var seen = 0L;
+            for (var i = 0; i < BUCKETS; i++)
+                if ((seen += c[i]) >= target) return Math.min(upper(i), max.get());
+            return max.get();
+        }
+
+        public Map<String, Object> snapshot() {
+            var n = count();
+            var m = new LinkedHashMap<String, Object>();
+            m.put("count", n);
+            m.put("meanMs", n == 0 ? 0.0 : ms(sum.sum() / n));
+            m.put("p50Ms", ms(percentile(0.5)));
+            m.put("p90Ms", ms(percentile(0.9)));
+            m.put("p99Ms", ms(percentile(0.99)));
+            m.put("maxMs", ms(max.get()));
+            return m;
+        }
+
+        private static double ms(long micros) {
+            return Math.round(micros / 10.0) / 100.0;
+        }
+    }
+}
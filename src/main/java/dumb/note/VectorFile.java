@@ -0,0 +1,146 @@
+package dumb.note;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class VectorFile implements AutoCloseable {
+    private static final int MAGIC = 0x4E564543, HEADER = 16, ID_BYTES = 128;
+    private final Path path;
+    private final int dims, row;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int count, capacity;
+    private boolean closed;
+    private volatile boolean dirty;
+
+    private VectorFile(Path path, int dims) throws IOException {
+        this.path = path;
+        this.dims = dims;
+        this.row = ID_BYTES + 4 + 4 * dims;
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        this.channel = channel();
+    }
+
+    static VectorFile open(Path path, int dims, Embeddings.Mode mode) throws IOException {
+        var f = new VectorFile(path, dims);
+        if (f.channel().size() >= HEADER) {
+            f.remap(Math.max(16, (int) ((f.channel().size() - HEADER) / f.row)));
+            if (f.map.getInt(0) != MAGIC || f.map.getInt(4) != dims) {
+                f.close();
+                throw new IOException("Not a " + dims + "-dimension vector file: " + path);
+            }
+            f.count = f.map.getInt(12);
+        } else {
+            f.remap(16);
+            f.map.putInt(0, MAGIC).putInt(4, dims).putInt(12, 0);
+        }
+        f.map.putInt(8, mode.ordinal());
+        f.dirty = true;
+        return f;
+    }
+
+    static Embeddings.Mode mode(Path path) throws IOException {
+        try (var ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            var h = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            ch.read(h, 0);
+            return h.getInt(0) == MAGIC ? Embeddings.Mode.values()[h.getInt(8)] : null;
+        }
+    }
+
+    static boolean fits(String id) {
+        return id.getBytes(StandardCharsets.UTF_8).length <= ID_BYTES - 2;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long bytes() {
+        return HEADER + (long) capacity * row;
+    }
+
+    String id(int r) {
+        var at = HEADER + r * row;
+        var b = new byte[map.getShort(at)];
+        map.get(at + 2, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    float norm(int r) {
+        return map.getFloat(HEADER + r * row + ID_BYTES);
+    }
+
+    void read(int r, float[] dst) {
+        map.slice(HEADER + r * row + ID_BYTES + 4, 4 * dims).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(0, dst);
+    }
+
+    void write(int r, String id, float norm, float[] unit) throws IOException {
+        if (r == capacity) remap(capacity + (capacity >> 1));
+        var at = HEADER + r * row;
+        var b = id.getBytes(StandardCharsets.UTF_8);
+        map.putShort(at, (short) b.length).put(at + 2, b).putFloat(at + ID_BYTES, norm);
+        map.slice(at + ID_BYTES + 4, 4 * dims).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().put(0, unit);
+        if (r == count) map.putInt(12, ++count);
+        dirty = true;
+    }
+
+    void removeByMovingLast(int r) {
+        var last = count - 1;
+        if (r != last) map.put(HEADER + r * row, map, HEADER + last * row, row);
+        map.putInt(12, count = last);
+        dirty = true;
+    }
+
+    void clear() {
+        map.putInt(12, count = 0);
+        dirty = true;
+    }
+
+    void force() {
+        if (!dirty) return;
+        dirty = false;
+        map.force();
+    }
+
+    private void remap(int rows) throws IOException {
+        var size = HEADER + (long) rows * row;
+        if (size > Integer.MAX_VALUE) throw new IOException("Vector file " + path + " would exceed 2 GB.");
+        var interrupted = Thread.interrupted();
+        try {
+            var ch = channel();
+            if (ch.size() < size) ch.write(ByteBuffer.wrap(new byte[1]), size - 1);
+            map = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        capacity = rows;
+    }
+
+    private FileChannel channel() throws IOException {
+        if (closed) throw new IOException("Vector file " + path + " is closed.");
+        if (channel == null || !channel.isOpen())
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return channel;
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (map != null) force();
+        channel.close();
+    }
+}
@@ -0,0 +1,143 @@
+package dumb.note;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.IntPredicate;
+
+public final class Vectors {
+    private static final Logger logger = LoggerFactory.getLogger(Vectors.class);
+    static final Kernel KERNEL = kernel();
+
+    private Vectors() {
+    }
+
+    interface Kernel {
+        float dot(float[] a, float[] b, int off, int n);
+
+        double cosine(float[] a, float[] b);
+
+        int dot(byte[] a, byte[] b, int off, int n);
+    }
+
+    private static Kernel kernel() {
+        if (Boolean.parseBoolean(System.getProperty("netention.simd", "true")) && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                var k = (Kernel) Class.forName("dumb.note.SimdKernel").getDeclaredConstructor().newInstance();
+                logger.info("Vector similarity kernel: {}.", k);
+                return k;
+            } catch (ClassNotFoundException e) {
+                logger.info("Built without the simd profile; using the scalar similarity kernel.");
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                logger.warn("Vector API unavailable ({}); using the scalar similarity kernel.", e.toString());
+            }
+        }
+        return new Scalar();
+    }
+
+    public static boolean simd() {
+        return !(KERNEL instanceof Scalar);
+    }
+
+    public static double cosine(float[] a, float[] b) {
+        if (a == null || b == null || a.length == 0 || a.length != b.length) return 0.0;
+        return KERNEL.cosine(a, b);
+    }
+
+    public static float dot(float[] a, float[] b) {
+        return KERNEL.dot(a, b, 0, a.length);
+    }
+
+    public static float[] normalized(float[] v) {
+        var n = (float) Math.sqrt(KERNEL.dot(v, v, 0, v.length));
+        var u = new float[v.length];
+        if (n > 0) for (var i = 0; i < v.length; i++) u[i] = v[i] / n;
+        return u;
+    }
+
+    public static void scores(float[] query, float[] matrix, int rows, float[] out) {
+        var d = query.length;
+        for (int r = 0, off = 0; r < rows; r++, off += d) out[r] = KERNEL.dot(query, matrix, off, d);
+    }
+
+    public static int[] topK(float[] scores, int n, int k, float min, IntPredicate accept) {
+        k = Math.min(k, n);
+        if (k <= 0) return new int[0];
+        var heap = new int[k];
+        var size = 0;
+        for (var i = 0; i < n; i++) {
+            var s = scores[i];
+            if (s < min || s != s || (size == k && s <= scores[heap[0]]) || !accept.test(i)) continue;
+            if (size < k) {
+                heap[size] = i;
+                up(heap, size++, scores);
+            } else {
+                heap[0] = i;
+                down(heap, size, scores);
+            }
+        }
+        var out = new int[size];
+        for (var j = size - 1; j >= 0; j--) {
+            out[j] = heap[0];
+            heap[0] = heap[j];
+            down(heap, j, scores);
+        }
+        return out;
+    }
+
+    private static void up(int[] h, int i, float[] s) {
+        var x = h[i];
+        for (int p; i > 0 && s[h[p = (i - 1) >>> 1]] > s[x]; i = p) h[i] = h[p];
+        h[i] = x;
+    }
+
+    private static void down(int[] h, int size, float[] s) {
+        var i = 0;
+        var x = h[0];
+        for (int c; (c = 2 * i + 1) < size; i = c) {
+            if (c + 1 < size && s[h[c + 1]] < s[h[c]]) c++;
+            if (s[x] <= s[h[c]]) break;
+            h[i] = h[c];
+        }
+        h[i] = x;
+    }
+
+    static final class Scalar implements Kernel {
+        @Override
+        public float dot(float[] a, float[] b, int off, int n) {
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            var i = 0;
+            for (; i + 3 < n; i += 4) {
+                s0 += a[i] * b[off + i];
+                s1 += a[i + 1] * b[off + i + 1];
+                s2 += a[i + 2] * b[off + i + 2];
+                s3 += a[i + 3] * b[off + i + 3];
+            }
+            for (; i < n; i++) s0 += a[i] * b[off + i];
+            return s0 + s1 + s2 + s3;
+        }
+
+        @Override
+        public double cosine(float[] a, float[] b) {
+            double dot = 0, na = 0, nb = 0;
+            for (var i = 0; i < a.length; i++) {
+                dot += a[i] * b[i];
+                na += a[i] * a[i];
+                nb += b[i] * b[i];
+            }
+            return na == 0 || nb == 0 ? 0.0 : dot / Math.sqrt(na * nb);
+        }
+
+        @Override
+        public int dot(byte[] a, byte[] b, int off, int n) {
+            var s = 0;
+            for (var i = 0; i < n; i++) s += a[i] * b[off + i];
+            return s;
+        }
+
+        @Override
+        public String toString() {
+            return "scalar";
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package dumb.note;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import static dumb.note.Netention.*;
+
+public class Watchdog {
+    private static final Logger logger = LoggerFactory.getLogger(Watchdog.class);
+    private static final int MAX_REPORTED_STEPS = 10;
+    private final Core core;
+    private final Planner planner;
+    private final Duration threshold = Duration.ofSeconds(Math.max(1, Long.getLong("netention.stallThresholdSeconds", 900)));
+    private final Action action = Stream.of(Action.values()).filter(a -> a.name().equalsIgnoreCase(System.getProperty("netention.stalledPlanAction", ""))).findFirst().orElse(Action.NONE);
+    private final TreeSet<Entry> due = new TreeSet<>(Comparator.comparingLong(Entry::dueMs).thenComparing(Entry::id));
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final LongAdder checks = new LongAdder(), detected = new LongAdder(), cancelled = new LongAdder(), evicted = new LongAdder();
+    private Timers.Handle armed;
+
+    public enum Action {NONE, CANCEL, EVICT}
+
+    public Watchdog(Core core, Planner planner) {
+        this.core = core;
+        this.planner = planner;
+    }
+
+    public synchronized void track(Planner.PlanExecution exec) {
+        var e = entries.get(exec.id);
+        if (e != null && e.exec == exec) return;
+        if (e != null) due.remove(e);
+        file(new Entry(exec.lastPlanUpdatedAt.toEpochMilli() + threshold.toMillis(), exec.id, exec, null));
+    }
+
+    public synchronized void untrack(Planner.PlanExecution exec) {
+        var e = entries.get(exec.id);
+        if (e != null && e.exec == exec) {
+            entries.remove(exec.id);
+            due.remove(e);
+        }
+    }
+
+    public void start() {
+        long next;
+        synchronized (this) {
+            next = due.isEmpty() ? System.currentTimeMillis() + threshold.toMillis() : due.first().dueMs;
+        }
+        var prev = armed;
+        if (prev != null) core.timers.cancel(prev.timerId());
+        armed = core.timers.schedule(Duration.ofMillis(Math.max(1000, next - System.currentTimeMillis())), this::check);
+    }
+
+    public int check() {
+        checks.increment();
+        var now = System.currentTimeMillis();
+        var stalled = new ArrayList<Entry>();
+        synchronized (this) {
+            for (Entry e; !due.isEmpty() && (e = due.first()).dueMs <= now; ) {
+                due.pollFirst();
+                entries.remove(e.id);
+                if (!planner.isActive(e.exec)) continue;
+                var updated = progress(e.exec, now);
+                if (updated + threshold.toMillis() > now) file(new Entry(updated + threshold.toMillis(), e.id, e.exec, e.reported));
+                else {
+                    if (!Long.valueOf(updated).equals(e.reported)) stalled.add(e);
+                    file(new Entry(now + threshold.toMillis(), e.id, e.exec, updated));
+                }
+            }
+        }
+        stalled.forEach(e -> report(e.exec, now));
+        start();
+        return stalled.size();
+    }
+
+    private static long progress(Planner.PlanExecution exec, long now) {
+        var t = exec.lastPlanUpdatedAt.toEpochMilli();
+        for (var s : exec.steps)
+            if (PlanStepState.PENDING_RETRY.equals(s.status) && s.retryAt != null && s.retryAt.toEpochMilli() > now) t = Math.max(t, s.retryAt.toEpochMilli());
+        return t;
+    }
+
+    private void report(Planner.PlanExecution exec, long now) {
+        detected.increment();
+        var d = diagnose(exec, now);
+        d.put("action", action.name());
+        logger.warn("Plan {} stalled for {}s ({}); action {}.", exec.id, d.get("ageSeconds"), exec.currentStatus, action);
+        core.fireCoreEvent(Core.CoreEventType.SYSTEM_EVENT_REQUESTED, Map.of(ToolParam.EVENT_TYPE.getKey(), Core.SystemEventType.STALLED_PLAN_DETECTED.name(), ToolParam.PAYLOAD.getKey(), d, ContentKey.STATUS.getKey(), PlanState.PENDING.name()));
+        switch (action) {
+            case CANCEL -> {
+                if (planner.cancel(exec.id)) cancelled.increment();
+            }
+            case EVICT -> {
+                if (planner.evict(exec.id)) evicted.increment();
+            }
+            case NONE -> {
+            }
+        }
+    }
+
+    public List<Map<String, Object>> stalled(Duration threshold) {
+        var now = System.currentTimeMillis();
+        List<Planner.PlanExecution> execs;
+        synchronized (this) {
+            execs = entries.values().stream().map(Entry::exec).toList();
+        }
+        return execs.stream().filter(planner::isActive).filter(e -> progress(e, now) + threshold.toMillis() <= now).map(e -> diagnose(e, now)).toList();
+    }
+
+    public static Map<String, Object> diagnose(Planner.PlanExecution exec, long now) {
+        var d = new LinkedHashMap<String, Object>();
+        d.put("planNoteId", exec.planNoteId);
+        d.put("executionId", exec.id);
+        d.put("status", exec.currentStatus.name());
+        d.put("lane", exec.lane.name());
+        d.put("ageSeconds", (now - exec.lastPlanUpdatedAt.toEpochMilli()) / 1000);
+        var blocked = new ArrayList<Map<String, Object>>();
+        for (var s : exec.steps) {
+            if (PlanStepState.COMPLETED.equals(s.status) || PlanStepState.FAILED.equals(s.status)) continue;
+            if (blocked.size() == MAX_REPORTED_STEPS) break;
+            var b = new LinkedHashMap<String, Object>();
+            b.put("id", s.id);
+            b.put("toolName", s.toolName);
+            b.put("status", s.status.name());
+            if (s.startTime != null && PlanStepState.RUNNING.equals(s.status)) b.put("runningSeconds", Duration.between(s.startTime, Instant.ofEpochMilli(now)).toSeconds());
+            var waiting = new LinkedHashMap<String, String>();
+            for (var dep : s.dependsOnStepIds) {
+                var st = exec.getStepById(dep).map(x -> x.status.name()).orElse("MISSING");
+                if (!PlanStepState.COMPLETED.name().equals(st)) waiting.put(dep, st);
+            }
+            if (!waiting.isEmpty()) b.put("waitingOn", waiting);
+            var last = s.logs == null ? null : s.logs.last();
+            if (last != null) b.put("lastLog", last);
+            blocked.add(b);
+        }
+        d.put("blockedSteps", blocked);
+        return d;
+    }
+
+    public synchronized Map<String, Object> metrics() {
+        var m = new LinkedHashMap<String, Object>();
+        m.put("thresholdSeconds", threshold.toSeconds());
+        m.put("action", action.name());
+        m.put("tracked", entries.size());
+        m.put("nextCheck", armed == null ? null : armed.dueAt().toString());
+        m.put("checks", checks.sum());
+        m.put("detected", detected.sum());
+        m.put("cancelled", cancelled.sum());
+        m.put("evicted", evicted.sum());
+        return m;
+    }
+
+    private void file(Entry e) {
+        entries.put(e.id, e);
+        due.add(e);
+    }
+
+    private record Entry(long dueMs, String id, Planner.PlanExecution exec, Long reported) {
+    }
+}
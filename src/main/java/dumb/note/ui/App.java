@@ -276,6 +276,13 @@ public class App extends UI.BaseAppFrame {
             navPanel.refreshNotes();
             JOptionPane.showMessageDialog(this, "Synchronization requested.", "🔄 Sync All", JOptionPane.INFORMATION_MESSAGE);
         }));
+        actionRegistry.register(UI.ActionID.SHOW_LATENCY, new UI.AppAction("Latency", e -> {
+            var d = new JDialog(this, "⏱️ Latency", false);
+            d.setContentPane(new UI.LatencyPanel(core));
+            d.pack();
+            d.setLocationRelativeTo(this);
+            d.setVisible(true);
+        }));
         actionRegistry.register(UI.ActionID.ABOUT, new UI.AppAction("About Netention", e -> JOptionPane.showMessageDialog(this, "Netention ✨ (MDI App)\nVersion: (dev)\nYour awesome note-taking and Nostr app!", "ℹ️ About Netention", JOptionPane.INFORMATION_MESSAGE)));
 
         actionRegistry.register(UI.ActionID.CASCADE_WINDOWS, new UI.AppAction("Cascade", e -> cascadeFrames()).setEnabledCalculator(() -> desktopPane.getAllFrames().length > 0));
@@ -301,6 +308,22 @@ public class App extends UI.BaseAppFrame {
         return Collections.emptyList();
     }
 
+    private void noteUpdated(Netention.Note n) {
+        ofNullable(openFramesByNoteId.get(n.id)).ifPresent(frame -> frame.handleExternalUpdate(n));
+        if (inspectorPanel.contextNote != null && n.id.equals(inspectorPanel.contextNote.id))
+            inspectorPanel.setContextNote(n);
+    }
+
+    private void noteDeleted(String id) {
+        ofNullable(openFramesByNoteId.get(id)).ifPresent(frame -> {
+            try {
+                frame.setClosed(true);
+            } catch (java.beans.PropertyVetoException e) {
+                logger.warn("Vetoed closing deleted note frame", e);
+            }
+        });
+    }
+
     private void handleCoreEvent(Netention.Core.CoreEvent event) {
         if (!SwingUtilities.isEventDispatchThread()) {
             SwingUtilities.invokeLater(() -> handleCoreEvent(event));
@@ -310,24 +333,17 @@ public class App extends UI.BaseAppFrame {
 
         switch (event.type()) {
             case NOTE_UPDATED -> {
-                if (event.data() instanceof Netention.Note newNoteData) {
-                    ofNullable(openFramesByNoteId.get(newNoteData.id))
-                            .ifPresent(frame -> frame.handleExternalUpdate(newNoteData));
-                    if (inspectorPanel.contextNote != null && newNoteData.id.equals(inspectorPanel.contextNote.id)) {
-                        inspectorPanel.setContextNote(newNoteData);
-                    }
-                }
+                if (event.data() instanceof Netention.Note newNoteData) noteUpdated(newNoteData);
                 if (navPanel != null) navPanel.refreshNotes();
             }
             case NOTE_DELETED -> {
-                if (event.data() instanceof String deletedNoteId) {
-                    ofNullable(openFramesByNoteId.get(deletedNoteId)).ifPresent(frame -> {
-                        try {
-                            frame.setClosed(true);
-                        } catch (java.beans.PropertyVetoException e) {
-                            logger.warn("Vetoed closing deleted note frame", e);
-                        }
-                    });
+                if (event.data() instanceof String deletedNoteId) noteDeleted(deletedNoteId);
+                if (navPanel != null) navPanel.refreshNotes();
+            }
+            case NOTES_CHANGED -> {
+                if (event.data() instanceof Netention.Notes.Changes changes) {
+                    changes.updated().forEach(this::noteUpdated);
+                    changes.deleted().forEach(this::noteDeleted);
                 }
                 if (navPanel != null) navPanel.refreshNotes();
             }
@@ -585,6 +601,7 @@ public class App extends UI.BaseAppFrame {
         var toolsMenu = new JMenu("Tools 🛠️");
         toolsMenu.add(createMenuItem("💡 LLM Service Status/Settings", UI.ActionID.LLM_SETTINGS));
         toolsMenu.add(createMenuItem("🔄 Synchronize/Refresh All", UI.ActionID.SYNC_ALL));
+        toolsMenu.add(createMenuItem("⏱️ Latency", UI.ActionID.SHOW_LATENCY));
         mb.add(toolsMenu);
 
         var helpMenu = new JMenu("Help ❓");
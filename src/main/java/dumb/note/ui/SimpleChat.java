@@ -144,7 +144,7 @@ public class SimpleChat extends UI.BaseAppFrame {
                 }
                 SwingUtilities.invokeLater(buddyPanel::refreshList);
             }
-            case NOTE_ADDED, NOTE_UPDATED, NOTE_DELETED -> SwingUtilities.invokeLater(buddyPanel::refreshList);
+            case NOTE_ADDED, NOTE_UPDATED, NOTE_DELETED, NOTES_CHANGED -> SwingUtilities.invokeLater(buddyPanel::refreshList);
             case CONFIG_CHANGED -> {
                 updateStatusBasedOnNostrState();
                 buddyPanel.refreshList();
@@ -73,7 +73,7 @@ public class SimpleNote extends UI.BaseAppFrame {
             return;
         }
 
-        if (Set.of(Netention.Core.CoreEventType.NOTE_ADDED, Netention.Core.CoreEventType.NOTE_DELETED).contains(event.type())) {
+        if (Set.of(Netention.Core.CoreEventType.NOTE_ADDED, Netention.Core.CoreEventType.NOTE_DELETED, Netention.Core.CoreEventType.NOTES_CHANGED).contains(event.type())) {
             noteListPanel.refreshNotes();
         } else if (event.type() == Netention.Core.CoreEventType.NOTE_UPDATED && event.data() instanceof Netention.Note updatedNote) {
             getActiveDirtyableSavableComponent()
@@ -2,8 +2,8 @@ package dumb.note.ui;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import dumb.note.Crypto;
-import dumb.note.LM;
 import dumb.note.Netention;
+import dumb.note.StepLog;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
@@ -55,7 +55,7 @@ public class UI {
         PUBLISH_PROFILE, ADD_NOSTR_FRIEND, MANAGE_RELAYS, LLM_SETTINGS, SYNC_ALL, ABOUT,
         SHOW_MY_NOSTR_PROFILE_EDITOR, MANAGE_NOSTR_RELAYS_POPUP, CONFIGURE_NOSTR_IDENTITY_POPUP,
         WINDOW_MENU, CASCADE_WINDOWS, TILE_WINDOWS_HORIZONTALLY, TILE_WINDOWS_VERTICALLY, CLOSE_ACTIVE_WINDOW, CLOSE_ALL_WINDOWS,
-        SHOW_INBOX, VIEW_CONTACT_PROFILE // NEW
+        SHOW_INBOX, VIEW_CONTACT_PROFILE, SHOW_LATENCY
     }
 
     interface Dirtyable {
@@ -379,7 +379,7 @@ public class UI {
             setLayout(new BorderLayout(5, 5));
             setBorder(new EmptyBorder(5, 5, 5, 5));
             core.addCoreEventListener(event -> {
-                if (Set.of(Netention.Core.CoreEventType.NOTE_ADDED, Netention.Core.CoreEventType.NOTE_UPDATED, Netention.Core.CoreEventType.NOTE_DELETED, Netention.Core.CoreEventType.CONFIG_CHANGED, Netention.Core.CoreEventType.CHAT_MESSAGE_ADDED).contains(event.type()))
+                if (Set.of(Netention.Core.CoreEventType.NOTE_ADDED, Netention.Core.CoreEventType.NOTE_UPDATED, Netention.Core.CoreEventType.NOTE_DELETED, Netention.Core.CoreEventType.NOTES_CHANGED, Netention.Core.CoreEventType.CONFIG_CHANGED, Netention.Core.CoreEventType.CHAT_MESSAGE_ADDED).contains(event.type()))
                     SwingUtilities.invokeLater(this::refreshNotes);
             });
             list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
@@ -465,22 +465,14 @@ public class UI {
             if (query == null || query.trim().isEmpty()) return;
 
             core.fireCoreEvent(Netention.Core.CoreEventType.STATUS_MESSAGE, "🧠 Performing semantic search...");
-            CompletableFuture.supplyAsync(() -> core.lm.generateEmbedding(query))
-                    .thenAcceptAsync(queryEmbOpt -> queryEmbOpt.ifPresentOrElse(qEmb -> {
-                        var notesWithEmb = core.notes.getAllNotes().stream().filter(n ->
-                                !n.tags.contains(Netention.SystemTag.CONFIG.value) &&
-                                        n.getEmbeddingV1() != null && n.getEmbeddingV1().length == qEmb.length
-                        ).toList();
-                        if (notesWithEmb.isEmpty()) {
+            CompletableFuture.supplyAsync(() -> core.lm.generateEmbedding(query).map(qEmb -> core.notes.embeddings.search(qEmb, Integer.MAX_VALUE, Math.nextUp(0.1f),
+                            id -> core.notes.get(id).filter(n -> !n.tags.contains(Netention.SystemTag.CONFIG.value)).isPresent())))
+                    .thenAcceptAsync(hitsOpt -> hitsOpt.ifPresentOrElse(hits -> {
+                        if (core.notes.embeddings.size() == 0) {
                             JOptionPane.showMessageDialog(this, "No notes with embeddings found for comparison.", "🧠 Semantic Search", JOptionPane.INFORMATION_MESSAGE);
                             return;
                         }
-                        var scored = notesWithEmb.stream()
-                                .map(n -> Map.entry(n, LM.cosineSimilarity(qEmb, n.getEmbeddingV1())))
-                                .filter(entry -> entry.getValue() > 0.1)
-                                .sorted(Map.Entry.<Netention.Note, Double>comparingByValue().reversed())
-                                .map(Map.Entry::getKey)
-                                .collect(Collectors.toList());
+                        var scored = hits.stream().flatMap(h -> core.notes.get(h.id()).stream()).collect(Collectors.toList());
                         if (scored.isEmpty())
                             JOptionPane.showMessageDialog(this, "No relevant notes found.", "🧠 Semantic Search", JOptionPane.INFORMATION_MESSAGE);
                         else refreshNotes(scored);
@@ -624,16 +616,17 @@ public class UI {
         }
 
         private @NotNull Predicate<Netention.Note> getPredicate() {
-            var viewFilter = ((View) Objects.requireNonNullElse(viewSelector.getSelectedItem(), View.NOTES)).getFilter();
-            Predicate<Netention.Note> tagFilter = n -> activeTagFilters.isEmpty() || n.tags.containsAll(activeTagFilters);
-            Predicate<Netention.Note> searchFilter = n -> {
-                var term = searchField.getText().toLowerCase().trim();
-                if (term.isEmpty()) return true;
-                return n.getTitle().toLowerCase().contains(term) ||
-                        n.getText().toLowerCase().contains(term) ||
-                        n.tags.stream().anyMatch(t -> t.toLowerCase().contains(term));
-            };
-            return viewFilter.and(tagFilter).and(searchFilter);
+            return filter((View) Objects.requireNonNullElse(viewSelector.getSelectedItem(), View.NOTES), Set.copyOf(activeTagFilters), searchField.getText());
+        }
+
+        public static Predicate<Netention.Note> filter(View view, Set<String> tags, String search) {
+            var term = search.toLowerCase().trim();
+            Predicate<Netention.Note> p = view.getFilter();
+            if (!tags.isEmpty()) p = p.and(n -> n.tags.containsAll(tags));
+            if (!term.isEmpty()) p = p.and(n -> n.getTitle().toLowerCase().contains(term) ||
+                    n.getText().toLowerCase().contains(term) ||
+                    n.tags.stream().anyMatch(t -> t.toLowerCase().contains(term)));
+            return p;
         }
 
         private void updateTagFilterPanel(List<Netention.Note> currentNotesInList) {
@@ -1141,14 +1134,10 @@ public class UI {
 
         private void handleEmbedAction() {
             var future = CompletableFuture.runAsync(() ->
-                    core.lm.generateEmbedding(currentNote.getContentForEmbedding()).ifPresentOrElse(emb -> {
-                        currentNote.setEmbeddingV1(emb);
-                        core.saveNote(currentNote);
-                        SwingUtilities.invokeLater(() -> {
-                            updateEmbeddingStatus();
-                            if (inspectorPanelRef != null) inspectorPanelRef.loadRelatedNotes();
-                        });
-                    }, () -> {
+                    core.embed(currentNote).ifPresentOrElse(_ -> SwingUtilities.invokeLater(() -> {
+                        updateEmbeddingStatus();
+                        if (inspectorPanelRef != null) inspectorPanelRef.loadRelatedNotes();
+                    }), () -> {
                         throw new RuntimeException("Failed to generate embedding.");
                     })
             );
@@ -1330,7 +1319,8 @@ public class UI {
 
 
         private void updateEmbeddingStatus() {
-            embStatusL.setText("Embedding: " + (currentNote != null && currentNote.getEmbeddingV1() != null ? "Generated (" + currentNote.getEmbeddingV1().length + "d)" : "N/A"));
+            var e = currentNote == null ? null : core.notes.embedding(currentNote);
+            embStatusL.setText("Embedding: " + (e != null ? "Generated (" + e.length + "d" + (currentNote.chunks != null ? ", " + currentNote.chunks.size() + " chunks" : "") + ")" : "N/A"));
         }
 
         public void updateServiceDependentButtonStates() {
@@ -1403,7 +1393,7 @@ public class UI {
             }
             updateNoteFromFields();
 
-            var savedNote = core.saveNote(this.currentNote);
+            var savedNote = core.saveNoteIfVersion(this.currentNote, this.currentNote.version).orElse(null);
             if (savedNote != null) {
                 this.currentNote = savedNote; // Update currentNote to the saved one (might have new ID, updatedAt)
                 userModified = false;
@@ -1419,7 +1409,8 @@ public class UI {
                 populateFields(this.currentNote); // Repopulate with the (potentially new) note data
                 if (inspectorPanelRef != null) inspectorPanelRef.setContextNote(this.currentNote);
             } else {
-                JOptionPane.showMessageDialog(this, "Failed to save note.", "Error", JOptionPane.ERROR_MESSAGE);
+                setExternallyUpdated(true);
+                JOptionPane.showMessageDialog(this, "Note was modified elsewhere. Refresh to load the latest version before saving.", "Save Conflict", JOptionPane.WARNING_MESSAGE);
             }
         }
 
@@ -1877,7 +1868,7 @@ public class UI {
                         executePlanButton.setText("⏳ Running...");
                         executePlanButton.setEnabled(false);
                         break;
-                    case COMPLETED, FAILED, FAILED_PARSING, FAILED_NO_STEPS, STUCK:
+                    case COMPLETED, FAILED, FAILED_PARSING, FAILED_NO_STEPS, STUCK, CANCELLED:
                         executePlanButton.setText("🔁 Re-run Plan");
                         executePlanButton.setEnabled(true);
                         break;
@@ -1957,7 +1948,7 @@ public class UI {
 
         public void loadRelatedNotes() {
             relatedNotesListModel.clear();
-            if (contextNote != null && contextNote.getEmbeddingV1() != null && core.lm.isReady()) {
+            if (contextNote != null && (contextNote.getEmbeddingV1() != null || core.notes.embeddings.contains(contextNote.id)) && core.lm.isReady()) {
                 CompletableFuture.supplyAsync(() -> core.findRelatedNotes(contextNote, 5, 0.65))
                         .thenAcceptAsync(related -> related.forEach(relatedNotesListModel::addElement), SwingUtilities::invokeLater)
                         .exceptionally(ex -> {
@@ -2148,9 +2139,9 @@ public class UI {
                 return s.substring(0, Math.min(s.length(), 50)) + (s.length() > 50 ? "..." : "");
             }
 
-            private String formatLogs(List<String> logs) {
-                if (logs == null || logs.isEmpty()) return "";
-                String lastLog = logs.get(logs.size() - 1);
+            private String formatLogs(StepLog logs) {
+                var lastLog = logs == null ? null : logs.last();
+                if (lastLog == null) return "";
                 return lastLog.substring(0, Math.min(lastLog.length(), 70)) + (lastLog.length() > 70 ? "..." : "");
             }
         }
@@ -2178,7 +2169,7 @@ public class UI {
                             tooltipText = step.result != null ? String.valueOf(step.result) : "No result";
                         } else if ("Logs/Messages".equals(colName)) {
                              tooltipText = step.logs != null && !step.logs.isEmpty() ?
-                                String.join("\n", step.logs) : "No logs";
+                                step.logs.toString() : "No logs";
                         }
                     }
                 }
@@ -2311,6 +2302,7 @@ public class UI {
                 case "config.ui" -> core.cfg.ui;
                 case "config.nostr_identity" -> core.cfg.net;
                 case "config.llm" -> core.cfg.lm;
+                case "config.retention" -> core.cfg.retention;
                 default -> null;
             };
         }
@@ -2738,6 +2730,85 @@ public class UI {
         }
     }
 
+    public static class LatencyPanel extends JPanel {
+        private final Netention.Core core;
+        private final LatencyTableModel model = new LatencyTableModel();
+        private final Timer refreshTimer = new Timer(2000, _ -> refresh());
+
+        public LatencyPanel(Netention.Core core) {
+            super(new BorderLayout(5, 5));
+            this.core = core;
+            setBorder(new EmptyBorder(5, 5, 5, 5));
+            var table = new JTable(model);
+            table.setAutoCreateRowSorter(true);
+            add(new JScrollPane(table), BorderLayout.CENTER);
+            add(new JLabel("Milliseconds. Wait is time queued for a slot or worker; run is time executing."), BorderLayout.SOUTH);
+            setPreferredSize(new Dimension(820, 360));
+            refreshTimer.setInitialDelay(0);
+        }
+
+        @Override
+        public void addNotify() {
+            super.addNotify();
+            refreshTimer.start();
+        }
+
+        @Override
+        public void removeNotify() {
+            refreshTimer.stop();
+            super.removeNotify();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void refresh() {
+            var rows = new ArrayList<Object[]>();
+            core.traces.metrics().forEach((scope, byName) -> {
+                if (!"export".equals(scope) && byName instanceof Map<?, ?> m) m.forEach((name, s) -> {
+                    var stats = (Map<String, Object>) s;
+                    var wait = (Map<String, Object>) stats.get("wait");
+                    var run = (Map<String, Object>) stats.get("run");
+                    rows.add(new Object[]{scope, name, stats.get("count"), stats.get("errors"), wait.get("p50Ms"), wait.get("p99Ms"), run.get("p50Ms"), run.get("p90Ms"), run.get("p99Ms"), run.get("maxMs")});
+                });
+            });
+            model.setRows(rows);
+        }
+
+        static class LatencyTableModel extends AbstractTableModel {
+            final String[] columnNames = {"Scope", "Name", "Count", "Errors", "Wait p50", "Wait p99", "Run p50", "Run p90", "Run p99", "Run max"};
+            private List<Object[]> rows = new ArrayList<>();
+
+            void setRows(List<Object[]> rows) {
+                this.rows = rows;
+                fireTableDataChanged();
+            }
+
+            @Override
+            public int getRowCount() {
+                return rows.size();
+            }
+
+            @Override
+            public int getColumnCount() {
+                return columnNames.length;
+            }
+
+            @Override
+            public String getColumnName(int column) {
+                return columnNames[column];
+            }
+
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return column < 2 ? String.class : column < 4 ? Long.class : Double.class;
+            }
+
+            @Override
+            public Object getValueAt(int row, int column) {
+                return rows.get(row)[column];
+            }
+        }
+    }
+
     record FieldUpdateListener(Consumer<DocumentEvent> consumer) implements DocumentListener {
         @Override
         public void insertUpdate(DocumentEvent e) {
@@ -0,0 +1,67 @@
+package dumb.note;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+public class FakeLM extends LM {
+    private final long latencyMs;
+    private final int dimensions;
+    private final Map<Pattern, String> script = new LinkedHashMap<>();
+    private final LongAdder chats = new LongAdder(), embeddings = new LongAdder();
+    private volatile String fallback = "- Gather the relevant notes\n- Summarize them\n- Report the result";
+
+    public FakeLM(Netention.Config cfg, long latencyMs, int dimensions) {
+        super(cfg);
+        this.latencyMs = latencyMs;
+        this.dimensions = dimensions;
+    }
+
+    public FakeLM on(String regex, String response) {
+        script.put(Pattern.compile(regex), response);
+        return this;
+    }
+
+    public FakeLM otherwise(String response) {
+        fallback = response;
+        return this;
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public Optional<String> chat(String p) {
+        chats.increment();
+        pause();
+        for (var e : script.entrySet()) if (e.getKey().matcher(p).find()) return Optional.of(e.getValue());
+        return Optional.of(fallback);
+    }
+
+    @Override
+    public Optional<float[]> generateEmbedding(String t) {
+        embeddings.increment();
+        pause();
+        var v = new float[dimensions];
+        for (var w : t.toLowerCase().split("\\W+")) if (!w.isEmpty()) v[Math.floorMod(w.hashCode(), dimensions)] += 1;
+        var norm = 0.0;
+        for (var x : v) norm += x * x;
+        if (norm > 0) for (var i = 0; i < v.length; i++) v[i] /= (float) Math.sqrt(norm);
+        return Optional.of(v);
+    }
+
+    public Map<String, Object> metrics() {
+        return Map.of("chats", chats.sum(), "embeddings", embeddings.sum(), "latencyMs", latencyMs);
+    }
+
+    private void pause() {
+        if (latencyMs <= 0) return;
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
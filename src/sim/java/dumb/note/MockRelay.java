@@ -0,0 +1,158 @@
+package dumb.note;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+public class MockRelay extends WebSocketServer {
+    private static final Logger logger = LoggerFactory.getLogger(MockRelay.class);
+    private static final ObjectMapper json = new ObjectMapper();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final ScheduledExecutorService emitters = Executors.newScheduledThreadPool(3, r -> {
+        var t = new Thread(r, "NetentionSimRelay");
+        t.setDaemon(true);
+        return t;
+    });
+    private final List<byte[]> authors = new ArrayList<>();
+    private final Random random = new Random(42);
+    private final AtomicLong seq = new AtomicLong();
+    private final LongAdder sent = new LongAdder(), published = new LongAdder();
+    private final BiConsumer<String, Long> onSent;
+
+    public MockRelay(int authorCount, BiConsumer<String, Long> onSent) {
+        super(new InetSocketAddress("127.0.0.1", 0));
+        this.onSent = onSent;
+        setReuseAddr(true);
+        for (var i = 0; i < authorCount; i++) authors.add(Crypto.generatePrivateKey());
+    }
+
+    public String url() throws InterruptedException {
+        start();
+        if (!started.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("Mock relay did not start");
+        return "ws://127.0.0.1:" + getPort();
+    }
+
+    public void emit(int kind, double perSecond, String recipientHex) {
+        if (perSecond <= 0) return;
+        emitters.scheduleAtFixedRate(() -> {
+            try {
+                broadcast(event(kind, recipientHex));
+            } catch (Exception e) {
+                logger.warn("Mock relay failed to emit kind {}: {}", kind, e.getMessage());
+            }
+        }, 0, Math.max(1, (long) (1_000_000 / perSecond)), TimeUnit.MICROSECONDS);
+    }
+
+    public void halt() throws InterruptedException {
+        emitters.shutdownNow();
+        stop(1000);
+    }
+
+    public Map<String, Object> metrics() {
+        return Map.of("sent", sent.sum(), "published", published.sum());
+    }
+
+    private Map<String, Object> event(int kind, String recipientHex) throws Exception {
+        var author = authors.get(random.nextInt(authors.size()));
+        var n = seq.incrementAndGet();
+        var e = new LinkedHashMap<String, Object>();
+        e.put("id", hex(32));
+        e.put("pubkey", Crypto.bytesToHex(Crypto.getPublicKeyXOnly(author)));
+        e.put("created_at", System.currentTimeMillis() / 1000);
+        e.put("kind", kind);
+        List<List<String>> tags = new ArrayList<>();
+        e.put("content", switch (kind) {
+            case 0 -> json.writeValueAsString(Map.of("name", "sim-author-" + authors.indexOf(author), "about", "Synthetic profile " + n, "picture", ""));
+            case 4 -> {
+                tags.add(List.of("p", recipientHex));
+                var them = Crypto.hexToBytes(recipientHex);
+                yield Crypto.nip04Encrypt("Synthetic message " + n, Crypto.getSharedSecretWithRetry(author, them), them);
+            }
+            default -> "Synthetic note " + n + " about " + List.of("planning", "notes", "relays", "agents", "search").get((int) (n % 5));
+        });
+        e.put("tags", tags);
+        e.put("sig", hex(64));
+        return e;
+    }
+
+    private void broadcast(Map<String, Object> event) throws Exception {
+        var kind = (Integer) event.get("kind");
+        var tags = (List<?>) event.get("tags");
+        var target = tags.isEmpty() ? null : ((List<?>) tags.getFirst()).get(1);
+        for (var conn : getConnections()) {
+            Map<String, Sub> subs = conn.getAttachment();
+            if (subs == null || !conn.isOpen()) continue;
+            for (var s : subs.entrySet()) {
+                if (!s.getValue().kinds.contains(kind) || (s.getValue().p != null && !s.getValue().p.contains(target))) continue;
+                var frame = json.writeValueAsString(List.of("EVENT", s.getKey(), event));
+                onSent.accept((String) event.get("id"), System.nanoTime());
+                conn.send(frame);
+                sent.increment();
+            }
+        }
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        conn.setAttachment(new ConcurrentHashMap<String, Sub>());
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onMessage(WebSocket conn, String message) {
+        try {
+            var frame = json.readValue(message, new TypeReference<List<Object>>() {
+            });
+            Map<String, Sub> subs = conn.getAttachment();
+            switch ((String) frame.getFirst()) {
+                case "REQ" -> {
+                    var filter = (Map<String, Object>) frame.get(2);
+                    subs.put((String) frame.get(1), new Sub(new HashSet<>((List<Integer>) filter.getOrDefault("kinds", List.of())), (List<String>) filter.get("#p")));
+                    conn.send(json.writeValueAsString(List.of("EOSE", frame.get(1))));
+                }
+                case "CLOSE" -> subs.remove((String) frame.get(1));
+                case "EVENT" -> {
+                    published.increment();
+                    conn.send(json.writeValueAsString(List.of("OK", ((Map<String, Object>) frame.get(1)).get("id"), true, "")));
+                }
+                default -> conn.send(json.writeValueAsString(List.of("NOTICE", "unsupported: " + frame.getFirst())));
+            }
+        } catch (Exception e) {
+            logger.warn("Mock relay could not handle frame: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        logger.warn("Mock relay error: {}", ex.getMessage());
+    }
+
+    @Override
+    public void onStart() {
+        started.countDown();
+    }
+
+    private String hex(int bytes) {
+        var b = new byte[bytes];
+        ThreadLocalRandom.current().nextBytes(b);
+        return Crypto.bytesToHex(b);
+    }
+
+    private record Sub(Set<Integer> kinds, List<String> p) {
+    }
+}
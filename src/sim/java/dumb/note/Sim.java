@@ -0,0 +1,160 @@
+package dumb.note;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import static dumb.note.Netention.*;
+
+public class Sim {
+    private final Map<String, String> opts;
+    private final ConcurrentHashMap<String, Long> inFlight = new ConcurrentHashMap<>(), goalsInFlight = new ConcurrentHashMap<>();
+    private final Traces.Histogram ingestLatency = new Traces.Histogram(), goalLatency = new Traces.Histogram();
+    private final LongAdder processed = new LongAdder(), goalsCompleted = new LongAdder(), goalsFailed = new LongAdder();
+    private final AtomicLong goalSeq = new AtomicLong(), peakHeap = new AtomicLong();
+
+    Sim(Map<String, String> opts) {
+        this.opts = opts;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var opts = new LinkedHashMap<String, String>();
+        for (var a : args) {
+            var kv = a.split("=", 2);
+            if (kv.length == 2) opts.put(kv[0].trim(), kv[1].trim());
+        }
+        new Sim(opts).run();
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        var dir = Files.createDirectories(Path.of(opt("dir", "target/sim")).resolve(Long.toString(System.currentTimeMillis())));
+        var lm = new AtomicReference<FakeLM>();
+        var core = new Core(dir, cfg -> {
+            var f = new FakeLM(cfg, num("lmLatencyMs", 200), 64).on("Decompose", "- Draft the outline\n- Review it");
+            lm.set(f);
+            return f;
+        });
+        var stubs = new StubTools(core, 7);
+        for (var t : opt("tools", "PARSE_JSON,ADD_CONTACT,UPDATE_CHAT_NOTE").split(","))
+            if (!t.isBlank()) stubs.delay(Core.Tool.valueOf(t.trim()), num("toolLatencyMs", 5), dbl("failureRate", 0.02));
+        Thread.sleep(2000);
+
+        core.cfg.generateNewNostrKeysAndUpdateConfig();
+        var relay = new MockRelay((int) num("authors", 50), inFlight::put);
+        var relayNote = new Note("Relay: sim", "");
+        relayNote.tags.add(SystemTag.NOSTR_RELAY.value);
+        relayNote.content.putAll(Map.of(ContentKey.RELAY_URL.getKey(), relay.url(), ContentKey.RELAY_ENABLED.getKey(), true, ContentKey.RELAY_READ.getKey(), true, ContentKey.RELAY_WRITE.getKey(), true));
+        core.saveNote(relayNote);
+        core.addCoreEventListener(this::observe);
+        core.net.setEnabled(true);
+        Thread.sleep(1000);
+
+        var heap = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        var heapStart = heap.getHeapMemoryUsage().getUsed();
+        var sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "NetentionSimSampler");
+            t.setDaemon(true);
+            return t;
+        });
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(heap.getHeapMemoryUsage().getUsed(), Math::max), 0, 250, TimeUnit.MILLISECONDS);
+        var me = core.net.getPublicKeyXOnlyHex();
+        var seconds = num("seconds", 30);
+        var t0 = System.nanoTime();
+        relay.emit(0, dbl("kind0", 2), me);
+        relay.emit(1, dbl("kind1", 50), me);
+        relay.emit(4, dbl("kind4", 5), me);
+        var goals = dbl("goals", 1);
+        if (goals > 0)
+            sampler.scheduleAtFixedRate(() -> startGoal(core), 0, (long) (1_000_000 / goals), TimeUnit.MICROSECONDS);
+        Thread.sleep(seconds * 1000);
+        relay.halt();
+        sampler.shutdownNow();
+        var drainUntil = System.currentTimeMillis() + num("drain", 10) * 1000;
+        while ((!inFlight.isEmpty() || !goalsInFlight.isEmpty()) && System.currentTimeMillis() < drainUntil) Thread.sleep(200);
+        var elapsed = (System.nanoTime() - t0) / 1e9;
+        System.gc();
+        var heapEnd = heap.getHeapMemoryUsage().getUsed();
+
+        var r = new LinkedHashMap<String, Object>();
+        r.put("finishedAt", Instant.now().toString());
+        r.put("options", opts);
+        r.put("elapsedSeconds", Math.round(elapsed * 10) / 10.0);
+        r.put("relay", relay.metrics());
+        r.put("ingest", Map.of("processed", processed.sum(), "unprocessed", inFlight.size(), "perSecond", Math.round(processed.sum() / elapsed * 10) / 10.0, "latency", ingestLatency.snapshot()));
+        r.put("goals", Map.of("started", goalSeq.get(), "completed", goalsCompleted.sum(), "failed", goalsFailed.sum(), "unfinished", goalsInFlight.size(), "perSecond", Math.round(goalsCompleted.sum() / elapsed * 10) / 10.0, "latency", goalLatency.snapshot()));
+        r.put("heapMb", Map.of("start", mb(heapStart), "end", mb(heapEnd), "peak", mb(peakHeap.get()), "growth", mb(heapEnd - heapStart)));
+        r.put("notes", core.notes.getAll(n -> true).size());
+        r.put("lm", lm.get().metrics());
+        r.put("injectedFailures", stubs.injectedFailures());
+        r.put("lanes", core.planner.scheduler.metrics());
+        r.put("watchdog", core.planner.watchdog.metrics());
+        r.put("latency", core.traces.metrics());
+        var out = Path.of(opt("out", "target/sim-report.json"));
+        Files.createDirectories(out.toAbsolutePath().getParent());
+        core.json.writeValue(out.toFile(), r);
+        System.out.printf("Ingest: %d processed (%.1f/s), %d unprocessed, latency %s%n", processed.sum(), processed.sum() / elapsed, inFlight.size(), ingestLatency.snapshot());
+        System.out.printf("Goals: %d of %d completed, %d failed, latency %s%n", goalsCompleted.sum(), goalSeq.get(), goalsFailed.sum(), goalLatency.snapshot());
+        System.out.printf("Heap: %.1f MB -> %.1f MB (peak %.1f MB)%nReport: %s%n", mb(heapStart), mb(heapEnd), mb(peakHeap.get()), out.toAbsolutePath());
+    }
+
+    private void startGoal(Core core) {
+        var n = goalSeq.incrementAndGet();
+        var goal = new Note("Sim goal " + n, "Summarize the latest synthetic notes.");
+        goal.content.put(ContentKey.PLAN_STEPS.getKey(), List.of(
+                Map.of(PlanStepKey.ID.getKey(), "s1", PlanStepKey.TOOL_NAME.getKey(), Core.Tool.GENERATE.name(), PlanStepKey.TOOL_PARAMS.getKey(), Map.of(ToolParam.PROMPT.getKey(), "Summarize goal " + n)),
+                Map.of(PlanStepKey.ID.getKey(), "s2", PlanStepKey.TOOL_NAME.getKey(), Core.Tool.LOG_MESSAGE.name(), PlanStepKey.TOOL_PARAMS.getKey(), Map.of(ToolParam.MESSAGE.getKey(), "$s1.result"), PlanStepKey.DEPENDS_ON_STEP_IDS.getKey(), List.of("s1"))));
+        core.saveNote(goal);
+        goalsInFlight.put(goal.id, System.nanoTime());
+        core.planner.execute(goal);
+    }
+
+    private void observe(Core.CoreEvent e) {
+        switch (e.type()) {
+            case NOTE_UPDATED -> {
+                if (e.data() instanceof Note n && n.tags.contains(SystemTag.SYSTEM_EVENT.value) && "PROCESSED".equals(n.content.get(ContentKey.STATUS.getKey()))
+                        && n.content.get(ContentKey.PAYLOAD.getKey()) instanceof Map<?, ?> p && p.get("id") instanceof String id) {
+                    var sentAt = inFlight.remove(id);
+                    if (sentAt != null) {
+                        ingestLatency.record((System.nanoTime() - sentAt) / 1000);
+                        processed.increment();
+                    }
+                }
+            }
+            case PLAN_UPDATED -> {
+                if (e.data() instanceof Planner.PlanExecution x && !x.isInstance() && (x.currentStatus == PlanState.COMPLETED || x.currentStatus == PlanState.FAILED)) {
+                    var startedAt = goalsInFlight.remove(x.id);
+                    if (startedAt != null) {
+                        goalLatency.record((System.nanoTime() - startedAt) / 1000);
+                        (x.currentStatus == PlanState.COMPLETED ? goalsCompleted : goalsFailed).increment();
+                    }
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private String opt(String key, String def) {
+        return opts.getOrDefault(key, def);
+    }
+
+    private long num(String key, long def) {
+        return Long.parseLong(opt(key, Long.toString(def)));
+    }
+
+    private double dbl(String key, double def) {
+        return Double.parseDouble(opt(key, Double.toString(def)));
+    }
+
+    private static double mb(long bytes) {
+        return Math.round(bytes / 1048576.0 * 10) / 10.0;
+    }
+}
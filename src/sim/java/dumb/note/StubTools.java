@@ -0,0 +1,53 @@
+package dumb.note;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+import static dumb.note.Netention.Core;
+
+public class StubTools {
+    private final Core core;
+    private final Random random;
+    private final Map<Core.Tool, LongAdder> injected = new ConcurrentHashMap<>();
+
+    public StubTools(Core core, long seed) {
+        this.core = core;
+        this.random = new Random(seed);
+    }
+
+    public StubTools delay(Core.Tool tool, long latencyMs, double failureRate) {
+        return install(tool, latencyMs, failureRate, core.tools.get(tool));
+    }
+
+    public StubTools replace(Core.Tool tool, long latencyMs, double failureRate, Object result) {
+        return install(tool, latencyMs, failureRate, (c, p) -> result);
+    }
+
+    private StubTools install(Core.Tool tool, long latencyMs, double failureRate, BiFunction<Core, Map<String, Object>, Object> body) {
+        if (body == null) throw new IllegalArgumentException("Tool not registered: " + tool);
+        var failures = injected.computeIfAbsent(tool, t -> new LongAdder());
+        core.tools.put(tool, (c, p) -> {
+            if (latencyMs > 0) try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted in stub " + tool);
+            }
+            if (failureRate > 0 && random.nextDouble() < failureRate) {
+                failures.increment();
+                throw new IllegalStateException("Injected failure in " + tool);
+            }
+            return body.apply(c, p);
+        });
+        return this;
+    }
+
+    public Map<String, Long> injectedFailures() {
+        var m = new java.util.TreeMap<String, Long>();
+        injected.forEach((t, n) -> m.put(t.name(), n.sum()));
+        return m;
+    }
+}
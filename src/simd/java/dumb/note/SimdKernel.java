@@ -0,0 +1,67 @@
+package dumb.note;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+final class SimdKernel implements Vectors.Kernel {
+    private static final VectorSpecies<Float> S = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> B = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> I = VectorSpecies.of(int.class, B.vectorShape());
+    private static final int PARTS = B.length() / I.length();
+
+    @Override
+    public float dot(float[] a, float[] b, int off, int n) {
+        var acc = FloatVector.zero(S);
+        var i = 0;
+        for (var bound = S.loopBound(n); i < bound; i += S.length())
+            acc = FloatVector.fromArray(S, a, i).fma(FloatVector.fromArray(S, b, off + i), acc);
+        var s = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) s += a[i] * b[off + i];
+        return s;
+    }
+
+    @Override
+    public double cosine(float[] a, float[] b) {
+        var dot = FloatVector.zero(S);
+        var na = FloatVector.zero(S);
+        var nb = FloatVector.zero(S);
+        var i = 0;
+        for (var bound = S.loopBound(a.length); i < bound; i += S.length()) {
+            var va = FloatVector.fromArray(S, a, i);
+            var vb = FloatVector.fromArray(S, b, i);
+            dot = va.fma(vb, dot);
+            na = va.fma(va, na);
+            nb = vb.fma(vb, nb);
+        }
+        double d = dot.reduceLanes(VectorOperators.ADD), x = na.reduceLanes(VectorOperators.ADD), y = nb.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            d += a[i] * b[i];
+            x += a[i] * a[i];
+            y += b[i] * b[i];
+        }
+        return x == 0 || y == 0 ? 0.0 : d / Math.sqrt(x * y);
+    }
+
+    @Override
+    public int dot(byte[] a, byte[] b, int off, int n) {
+        var acc = IntVector.zero(I);
+        var i = 0;
+        for (var bound = B.loopBound(n); i < bound; i += B.length()) {
+            var x = ByteVector.fromArray(B, a, i);
+            var y = ByteVector.fromArray(B, b, off + i);
+            for (var p = 0; p < PARTS; p++)
+                acc = acc.add(((IntVector) x.castShape(I, p)).mul((IntVector) y.castShape(I, p)));
+        }
+        var s = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) s += a[i] * b[off + i];
+        return s;
+    }
+
+    @Override
+    public String toString() {
+        return "simd " + S;
+    }
+}
@@ -0,0 +1,91 @@
+package dumb.note;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static dumb.note.Netention.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiverTest {
+    private static final String TAG = "test_feed";
+    @TempDir
+    Path dir;
+    private Core core;
+
+    @BeforeEach
+    void setUp() {
+        core = Cores.open(dir);
+    }
+
+    private String save(String title, String... tags) throws InterruptedException {
+        var n = new Note(title, "text of " + title);
+        n.tags.add(TAG);
+        n.tags.addAll(List.of(tags));
+        Thread.sleep(5);
+        return core.saveNote(n).id;
+    }
+
+    private List<Map<?, ?>> archived() throws IOException {
+        var records = new ArrayList<Map<?, ?>>();
+        try (var files = Files.list(dir.resolve("archive"))) {
+            for (var f : files.toList())
+                try (var in = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(f)), StandardCharsets.UTF_8))) {
+                    for (String line; (line = in.readLine()) != null; ) records.add(new ObjectMapper().readValue(line, Map.class));
+                }
+        }
+        return records;
+    }
+
+    @Test
+    void archivesTheOldestBeyondMaxCount() throws Exception {
+        var ids = new ArrayList<String>();
+        for (var i = 0; i < 5; i++) ids.add(save("n" + i));
+        var sizes = ids.subList(0, 3).stream().mapToLong(core.notes::size).sum();
+        core.archiver.sweep(new Config.RetentionPolicy(TAG, null, 0, 2, 0));
+        ids.subList(0, 3).forEach(id -> assertTrue(core.notes.get(id).isEmpty()));
+        ids.subList(3, 5).forEach(id -> assertTrue(core.notes.get(id).isPresent()));
+        assertFalse(Files.exists(dir.resolve(ids.getFirst() + ".json")));
+        assertEquals(ids.subList(0, 3), archived().stream().map(r -> r.get("id")).toList());
+        assertEquals(3L, core.archiver.metrics().get("archivedNotes"));
+        assertEquals(sizes, core.archiver.metrics().get("reclaimedBytes"));
+    }
+
+    @Test
+    void keepsProtectedNotes() throws Exception {
+        var kept = save("system", SystemTag.SYSTEM_NOTE.value);
+        save("plain");
+        Thread.sleep(1100);
+        core.archiver.sweep(new Config.RetentionPolicy(TAG, null, 1, 0, 0));
+        assertTrue(core.notes.get(kept).isPresent());
+        assertEquals(1, archived().size());
+    }
+
+    @Test
+    void trimsOldMessagesIntoTheArchive() throws Exception {
+        var chat = new Note("chat", "");
+        chat.tags.add(TAG);
+        chat.content.put(ContentKey.MESSAGES.getKey(), new ArrayList<>(IntStream.range(0, 10).mapToObj(i -> Map.of("text", "message " + i)).toList()));
+        var id = core.saveNote(chat).id;
+        var before = core.notes.size(id);
+        core.archiver.sweep(new Config.RetentionPolicy(TAG, null, 0, 0, 4));
+        var left = (List<?>) core.notes.get(id).orElseThrow().content.get(ContentKey.MESSAGES.getKey());
+        assertEquals(List.of("message 6", "message 7", "message 8", "message 9"), left.stream().map(m -> ((Map<?, ?>) m).get("text")).toList());
+        assertEquals(6, ((List<?>) archived().getFirst().get(ContentKey.MESSAGES.getKey())).size());
+        assertEquals(before - core.notes.size(id), core.archiver.metrics().get("reclaimedBytes"));
+        assertEquals(6L, core.archiver.metrics().get("trimmedMessages"));
+    }
+}
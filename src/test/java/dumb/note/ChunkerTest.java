@@ -0,0 +1,54 @@
+package dumb.note;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkerTest {
+    private static String paragraphs(int n, String last) {
+        return IntStream.range(0, n).mapToObj(i -> i == n - 1 ? last : ("Paragraph " + i + " has a few short sentences. They are about topic " + i + ". Nothing else."))
+                .collect(Collectors.joining("\n\n"));
+    }
+
+    @Test
+    void shortTextIsOneChunk() {
+        var text = "One short sentence.";
+        var chunks = Chunker.split(text, 512, 64);
+        assertEquals(1, chunks.size());
+        assertEquals(0, chunks.getFirst().start());
+        assertEquals(text.length(), chunks.getFirst().end());
+        assertEquals(Chunker.hash(text), chunks.getFirst().hash());
+    }
+
+    @Test
+    void emptyTextIsOneEmptyChunk() {
+        var chunks = Chunker.split("", 512, 64);
+        assertEquals(1, chunks.size());
+        assertEquals(0, chunks.getFirst().end());
+    }
+
+    @Test
+    void chunksCoverTheTextInOrder() {
+        var text = paragraphs(40, "The end.");
+        var chunks = Chunker.split(text, 40, 8);
+        assertTrue(chunks.size() > 1);
+        assertEquals(0, chunks.getFirst().start());
+        assertEquals(text.length(), chunks.getLast().end());
+        for (var i = 1; i < chunks.size(); i++) {
+            assertTrue(chunks.get(i).start() > chunks.get(i - 1).start());
+            assertTrue(chunks.get(i).start() <= chunks.get(i - 1).end() || text.substring(chunks.get(i - 1).end(), chunks.get(i).start()).isBlank());
+        }
+    }
+
+    @Test
+    void editingTheLastParagraphKeepsEarlierChunks() {
+        var before = Chunker.split(paragraphs(20, "The end."), 40, 8);
+        var after = Chunker.split(paragraphs(20, "A different ending, rewritten entirely."), 40, 8);
+        assertEquals(before.size(), after.size());
+        for (var i = 0; i < before.size() - 1; i++) assertEquals(before.get(i).hash(), after.get(i).hash());
+        assertNotEquals(before.getLast().hash(), after.getLast().hash());
+    }
+}
@@ -0,0 +1,96 @@
+package dumb.note;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompletionsTest {
+    @TempDir
+    Path dir;
+    private Path log;
+    private Netention.Config.LMSettings cfg;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        log = dir.resolve("lm-cache.jsonl");
+        cfg = new Netention.Config.LMSettings();
+    }
+
+    private Optional<String> get(Completions c, String key) {
+        return c.get(key, () -> {
+            calls.incrementAndGet();
+            return Optional.of("answer to " + key);
+        });
+    }
+
+    @Test
+    void answersRepeatedKeysFromTheCache() {
+        var c = new Completions(cfg, log);
+        assertEquals("answer to a", get(c, "a").orElseThrow());
+        assertEquals("answer to a", get(c, "a").orElseThrow());
+        assertEquals(1, calls.get());
+        assertEquals(1L, c.metrics().get("hits"));
+    }
+
+    @Test
+    void doesNotCacheFailures() {
+        var c = new Completions(cfg, log);
+        assertTrue(c.get("a", Optional::empty).isEmpty());
+        get(c, "a");
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsed() {
+        cfg.cacheMaxEntries = 2;
+        var c = new Completions(cfg, log);
+        get(c, "a");
+        get(c, "b");
+        get(c, "a");
+        get(c, "c");
+        assertEquals(3, calls.get());
+        get(c, "a");
+        assertEquals(3, calls.get());
+        get(c, "b");
+        assertEquals(4, calls.get());
+        assertEquals(2, c.metrics().get("size"));
+    }
+
+    @Test
+    void reloadsFromTheLog() {
+        var c = new Completions(cfg, log);
+        for (var i = 0; i < 300; i++) get(c, "k" + i);
+        var reloaded = new Completions(cfg, log);
+        calls.set(0);
+        for (var i = 0; i < 300; i++) assertEquals("answer to k" + i, get(reloaded, "k" + i).orElseThrow());
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void reloadKeepsOnlyEntriesWithinTheLimit() {
+        var c = new Completions(cfg, log);
+        for (var i = 0; i < 10; i++) get(c, "k" + i);
+        cfg.cacheMaxEntries = 4;
+        var reloaded = new Completions(cfg, log);
+        assertEquals(4, reloaded.metrics().get("size"));
+        calls.set(0);
+        get(reloaded, "k9");
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void bypassesTheCacheWhenDisabled() {
+        cfg.cacheEnabled = false;
+        var c = new Completions(cfg, null);
+        get(c, "a");
+        get(c, "a");
+        assertEquals(2, calls.get());
+    }
+}
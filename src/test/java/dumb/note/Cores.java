@@ -0,0 +1,36 @@
+package dumb.note;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+final class Cores {
+    private Cores() {
+    }
+
+    static Netention.Core open(Path dir) {
+        return open(dir, _ -> null);
+    }
+
+    static Netention.Core open(Path dir, Function<String, float[]> embed) {
+        return new Netention.Core(dir, cfg -> new LM(cfg) {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public Optional<float[]> generateEmbedding(String text) {
+                return Optional.ofNullable(embed.apply(text));
+            }
+        });
+    }
+
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        for (var deadline = System.currentTimeMillis() + 5000; !condition.getAsBoolean(); Thread.sleep(20))
+            if (System.currentTimeMillis() > deadline) fail("Timed out waiting for the condition.");
+    }
+}
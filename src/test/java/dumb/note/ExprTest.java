@@ -0,0 +1,67 @@
+package dumb.note;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static dumb.note.Netention.Planner.PlanExecution;
+import static dumb.note.Netention.Planner.PlanStep;
+import static dumb.note.Netention.ToolParam;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExprTest {
+    private static PlanExecution exec() {
+        var exec = new PlanExecution("plan", Map.of("a", Map.of("count", 3, "title", "Re: Hello", "tags", List.of("x", "y")), "n", Double.NaN));
+        var s = new PlanStep();
+        s.id = "s1";
+        s.result = Map.of("pubkey", "abc", "content", "");
+        exec.steps.add(s);
+        return exec;
+    }
+
+    @Test
+    void comparesAndCombines() {
+        var e = exec();
+        assertTrue(Expr.compile("$a.count >= 3 && $a.count < 4").test(e));
+        assertTrue(Expr.compile("$s1.result.pubkey == 'abc' and not ($a.count != 3)").test(e));
+        assertTrue(Expr.compile("$s1.result.missing == null || false").test(e));
+        assertFalse(Expr.compile("$a.count > 3").test(e));
+    }
+
+    @Test
+    void callsFunctions() {
+        var e = exec();
+        assertTrue(Expr.compile("startsWith(lower($a.title), 're:')").test(e));
+        assertTrue(Expr.compile("contains($a.tags, 'y') && length($a.tags) == 2").test(e));
+        assertTrue(Expr.compile("isEmpty($s1.result.content) && !isEmpty($a.title)").test(e));
+        assertEquals("RE: HELLO", Expr.compile("upper($a.title)").eval(e));
+    }
+
+    @Test
+    void nanIsNeitherOrderedNorEqualToNumbers() {
+        var e = exec();
+        assertFalse(Expr.compile("$n < 1").test(e));
+        assertFalse(Expr.compile("$n >= 1").test(e));
+        assertFalse(Expr.compile("$n == 1").test(e));
+        assertTrue(Expr.compile("$n != 1").test(e));
+    }
+
+    @Test
+    void interpolatesReferences() {
+        assertEquals("id_abc.", Expr.interpolate("id_$s1.result.pubkey.").eval(exec()));
+    }
+
+    @Test
+    void rejectsMalformedConditions() {
+        assertThrows(IllegalArgumentException.class, () -> Expr.compile("$a.count >="));
+        assertThrows(IllegalArgumentException.class, () -> Expr.compile("nosuch($a)"));
+    }
+
+    @Test
+    void invalidConditionFailsOnlyWhenResolved() {
+        var b = Plans.Binding.of("IF_ELSE", Map.of(ToolParam.CONDITION.getKey(), "$a.count >"));
+        assertThrows(IllegalArgumentException.class, () -> b.resolve(exec()));
+        assertEquals(true, Plans.Binding.of("IF_ELSE", Map.of(ToolParam.CONDITION.getKey(), "$a.count == 3")).resolve(exec()).get(ToolParam.CONDITION.getKey()));
+    }
+}
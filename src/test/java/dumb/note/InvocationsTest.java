@@ -0,0 +1,77 @@
+package dumb.note;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static dumb.note.Netention.Core;
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvocationsTest {
+    private static final Core.Tool TOOL = Core.Tool.LOG_MESSAGE;
+    @TempDir
+    Path dir;
+    private Invocations invocations;
+
+    @BeforeEach
+    void setUp() {
+        invocations = Cores.open(dir).invocations;
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String spin() {
+        for (var end = System.currentTimeMillis() + 3000; System.currentTimeMillis() < end; sleep(10)) Invocations.checkpoint();
+        return "unreached";
+    }
+
+    @Test
+    void inlineCallPastItsDeadlineKeepsItsResult() {
+        invocations.configure(TOOL, new Invocations.Limits(4, Duration.ofMillis(20), false));
+        assertEquals("done", invocations.call(TOOL, null, () -> {
+            sleep(300);
+            return "done";
+        }));
+    }
+
+    @Test
+    void inlineDeadlineOverrunIsNotRetryable() {
+        invocations.configure(TOOL, new Invocations.Limits(4, Duration.ofMillis(20), false));
+        var e = assertThrows(Invocations.DeadlineExceededException.class, () -> invocations.call(TOOL, null, InvocationsTest::spin));
+        assertFalse(e.abandoned);
+        assertFalse(Retries.retryable(e));
+    }
+
+    @Test
+    void abandonedIsolatedCallIsRetryable() {
+        invocations.configure(TOOL, new Invocations.Limits(4, Duration.ofMillis(50), true));
+        var e = assertThrows(Invocations.DeadlineExceededException.class, () -> invocations.call(TOOL, null, () -> {
+            sleep(5000);
+            return "late";
+        }));
+        assertTrue(e.abandoned);
+        assertTrue(Retries.retryable(e));
+    }
+
+    @Test
+    void cancellingAScopeReachesItsSubScopes() throws Exception {
+        invocations.configure(TOOL, new Invocations.Limits(4, Duration.ofSeconds(10), false));
+        var f = CompletableFuture.supplyAsync(() -> invocations.call(TOOL, "plan/1", InvocationsTest::spin));
+        Cores.await(() -> invocations.cancel("plan") == 1);
+        var e = assertThrows(ExecutionException.class, f::get);
+        assertTrue(e.getCause() instanceof CancellationException);
+        assertEquals(0, invocations.cancel("plan"));
+    }
+}
@@ -0,0 +1,108 @@
+package dumb.note;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dumb.note.Netention.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemosTest {
+    private static final Core.Tool TOOL = Core.Tool.LOG_MESSAGE;
+    @TempDir
+    Path dir;
+    private Core core;
+    private final AtomicInteger computed = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        core = Cores.open(dir);
+    }
+
+    private Object get(Map<String, Object> params) {
+        return core.memos.get(TOOL, params, () -> {
+            var m = new HashMap<String, Object>();
+            m.put("run", computed.incrementAndGet());
+            m.put("items", new ArrayList<>(List.of("a")));
+            return m;
+        });
+    }
+
+    private Note stored(String id) {
+        var n = new Note(id, "x");
+        n.id = id;
+        return core.saveNote(n);
+    }
+
+    @Test
+    void equalParametersHitRegardlessOfNumberType() {
+        core.memos.declare(TOOL, Memos.Dependency.PURE);
+        get(Map.of("n", 1, "s", "x"));
+        get(Map.of("s", "x", "n", 1L));
+        assertEquals(1, computed.get());
+    }
+
+    @Test
+    void noteResultsFollowTheNoteVersion() {
+        core.memos.declare(TOOL, Memos.Dependency.NOTE);
+        var params = Map.<String, Object>of(ToolParam.NOTE_ID.getKey(), "memo_note");
+        stored("memo_note");
+        get(params);
+        get(params);
+        assertEquals(1, computed.get());
+        core.updateNote("memo_note", n -> {
+            n.setTitle("changed");
+            return n;
+        });
+        get(params);
+        assertEquals(2, computed.get());
+    }
+
+    @Test
+    void recreatedNoteMisses() {
+        core.memos.declare(TOOL, Memos.Dependency.NOTE);
+        var params = Map.<String, Object>of(ToolParam.NOTE_ID.getKey(), "memo_note");
+        stored("memo_note");
+        get(params);
+        core.deleteNote("memo_note");
+        stored("memo_note");
+        get(params);
+        assertEquals(2, computed.get());
+    }
+
+    @Test
+    void notesResultsExpireOnAnySaveAndConfigResultsOnConfigChange() {
+        core.memos.declare(TOOL, Memos.Dependency.NOTES);
+        get(Map.of());
+        stored("other");
+        get(Map.of());
+        assertEquals(2, computed.get());
+        core.memos.declare(TOOL, Memos.Dependency.CONFIG);
+        get(Map.of());
+        get(Map.of());
+        core.memos.configChanged();
+        get(Map.of());
+        assertEquals(4, computed.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void callersCannotEditCachedResults() {
+        core.memos.declare(TOOL, Memos.Dependency.PURE);
+        var first = (Map<String, Object>) get(Map.of());
+        first.put("run", -1);
+        ((List<Object>) first.get("items")).add("b");
+        var hit = (Map<String, Object>) get(Map.of());
+        assertEquals(1, hit.get("run"));
+        assertEquals(List.of("a"), hit.get("items"));
+        ((List<Object>) hit.get("items")).add("c");
+        assertEquals(List.of("a"), ((Map<String, Object>) get(Map.of())).get("items"));
+    }
+}
@@ -0,0 +1,131 @@
+package dumb.note;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ConcurrentModificationException;
+
+import static dumb.note.Netention.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotesTest {
+    @TempDir
+    Path dir;
+    private Core core;
+
+    @BeforeEach
+    void setUp() {
+        core = Cores.open(dir);
+    }
+
+    private Note stored(String title) {
+        return core.saveNote(new Note(title, "text of " + title));
+    }
+
+    @Test
+    void saveIfVersionAcceptsTheCurrentVersionOnly() {
+        var n = stored("a");
+        var stale = core.notes.copy(n);
+        n.setTitle("b");
+        assertTrue(core.notes.saveIfVersion(n, n.version).isPresent());
+        stale.setTitle("c");
+        assertTrue(core.notes.saveIfVersion(stale, stale.version).isEmpty());
+        assertEquals("b", core.notes.get(n.id).orElseThrow().getTitle());
+    }
+
+    @Test
+    void saveIfVersionDoesNotRecreateADeletedNote() {
+        var n = stored("a");
+        core.deleteNote(n.id);
+        assertTrue(core.notes.saveIfVersion(n, n.version).isEmpty());
+        assertTrue(core.notes.get(n.id).isEmpty());
+    }
+
+    @Test
+    void updateAppliesToTheLatestVersionAndAbortsOnNull() {
+        var n = stored("a");
+        core.updateNote(n.id, x -> {
+            x.content.put("count", 1);
+            return x;
+        });
+        var updated = core.updateNote(n.id, x -> {
+            x.setTitle("b");
+            return x;
+        }).orElseThrow();
+        assertEquals(1, updated.content.get("count"));
+        assertTrue(core.updateNote(n.id, _ -> null).isEmpty());
+        assertEquals("b", core.notes.get(n.id).orElseThrow().getTitle());
+        assertTrue(core.updateNote("missing", x -> x).isEmpty());
+    }
+
+    @Test
+    void batchRejectsAStaleOrDeletedExpectation() {
+        var a = stored("a");
+        var b = stored("b");
+        var version = a.version;
+        core.updateNote(a.id, x -> {
+            x.setTitle("a2");
+            return x;
+        });
+        assertThrows(ConcurrentModificationException.class, () -> core.commit(new Notes.Batch().saveIfVersion(a, version)));
+        core.deleteNote(b.id);
+        assertThrows(ConcurrentModificationException.class, () -> core.commit(new Notes.Batch().saveIfVersion(b, b.version)));
+        assertTrue(core.notes.get(b.id).isEmpty());
+        assertEquals("a2", core.notes.get(a.id).orElseThrow().getTitle());
+    }
+
+    @Test
+    void failedBatchLeavesNothingBehind() {
+        var a = stored("a");
+        var b = new Note("b", "new");
+        var stale = a.version;
+        core.updateNote(a.id, x -> {
+            x.setTitle("a2");
+            return x;
+        });
+        assertThrows(ConcurrentModificationException.class, () -> core.commit(new Notes.Batch().save(b).delete(a.id).saveIfVersion(a, stale)));
+        assertTrue(core.notes.get(b.id).isEmpty());
+        assertEquals("a2", core.notes.get(a.id).orElseThrow().getTitle());
+        assertFalse(Files.exists(dir.resolve(b.id + ".json")));
+    }
+
+    @Test
+    void journalRestoresACommittedBatch() throws IOException {
+        var notes = new Notes(dir);
+        var a = new Note("a", "x");
+        var b = new Note("b", "y");
+        notes.commit(new Notes.Batch().save(a).save(b));
+        Files.delete(dir.resolve(b.id + ".json"));
+        var reopened = new Notes(dir);
+        assertEquals("b", reopened.get(b.id).orElseThrow().getTitle());
+        try (var tx = Files.list(dir.resolve("tx"))) {
+            assertEquals(0L, tx.count());
+        }
+    }
+
+    @Test
+    void journalReplayKeepsLaterSaves() {
+        var notes = new Notes(dir);
+        var a = new Note("a", "x");
+        notes.commit(new Notes.Batch().save(a));
+        notes.update(a.id, x -> {
+            x.setTitle("a2");
+            return x;
+        });
+        assertEquals("a2", new Notes(dir).get(a.id).orElseThrow().getTitle());
+    }
+
+    @Test
+    void checkpointDropsSettledJournals() throws IOException {
+        var notes = new Notes(dir);
+        notes.commit(new Notes.Batch().save(new Note("a", "x")));
+        notes.checkpoint();
+        try (var tx = Files.list(dir.resolve("tx"))) {
+            assertEquals(0L, tx.count());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package dumb.note;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static dumb.note.Netention.*;
+import static dumb.note.Netention.Planner.PlanExecution;
+import static dumb.note.Netention.Planner.PlanStep;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlansTest {
+    private static PlanExecution exec() {
+        var exec = new PlanExecution("plan", Map.of("user", "ann"));
+        var s = new PlanStep();
+        s.id = "s1";
+        s.result = Map.of("pubkey", "abc", "count", 2);
+        exec.steps.add(s);
+        return exec;
+    }
+
+    private static Map<String, Object> step(Core.Tool tool, Map<String, Object> params) {
+        return Map.of(PlanStepKey.TOOL_NAME.getKey(), tool.name(), PlanStepKey.TOOL_PARAMS.getKey(), params);
+    }
+
+    @Test
+    void resolvesReferencesAndPassesConstantsThrough() {
+        var tags = List.of("a", "b");
+        var b = Plans.Binding.of("CREATE_NOTE", Map.of("title", "Note for $user", "text", "$s1.result", "tags", tags, "id", "fixed"));
+        var params = b.resolve(exec());
+        assertEquals(Core.Tool.CREATE_NOTE, b.tool());
+        assertEquals("Note for ann", params.get("title"));
+        assertEquals(Map.of("pubkey", "abc", "count", 2), params.get("text"));
+        assertSame(tags, params.get("tags"));
+        assertEquals("fixed", params.get("id"));
+    }
+
+    @Test
+    void resolvesNestedMaps() {
+        var b = Plans.Binding.of("MODIFY_NOTE_CONTENT", Map.of("content_update", Map.of("owner", "$s1.result.pubkey", "kind", "profile")));
+        assertEquals(Map.of("owner", "abc", "kind", "profile"), b.resolve(exec()).get("content_update"));
+    }
+
+    @Test
+    void unresolvableReferencesEvaluateToTheirSource() {
+        assertEquals("$nowhere.result", Plans.Binding.of("LOG_MESSAGE", Map.of("message", "$nowhere.result")).resolve(exec()).get("message"));
+    }
+
+    @Test
+    void compilesConditionsAndBranches() {
+        var b = Plans.Binding.of("IF_ELSE", Map.of(ToolParam.CONDITION.getKey(), "$s1.result.count > 1", ToolParam.TRUE_STEPS.getKey(), List.of(step(Core.Tool.LOG_MESSAGE, Map.of("message", "yes")))));
+        assertEquals(true, b.resolve(exec()).get(ToolParam.CONDITION.getKey()));
+        assertEquals(1, b.body(ToolParam.TRUE_STEPS.getKey()).steps().size());
+        assertNull(b.body(ToolParam.FALSE_STEPS.getKey()));
+    }
+
+    @Test
+    void nestedUserInteractionIsRejected() {
+        var b = Plans.Binding.of("IF_ELSE", Map.of(ToolParam.CONDITION.getKey(), "true", ToolParam.TRUE_STEPS.getKey(), List.of(step(Core.Tool.USER_INTERACTION, Map.of("prompt", "ok?")))));
+        assertNull(b.body(ToolParam.TRUE_STEPS.getKey()));
+        assertThrows(IllegalArgumentException.class, () -> b.resolve(exec()));
+    }
+}
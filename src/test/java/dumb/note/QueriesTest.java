@@ -0,0 +1,76 @@
+package dumb.note;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static dumb.note.Netention.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueriesTest {
+    @TempDir
+    Path dir;
+    private Core core;
+    private String query;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        core = Cores.open(dir, _ -> new float[]{1, 0});
+        save("a", 1, 0.1f);
+        save("b", 1, 0.5f);
+        save("c", 1, 1);
+        var q = new Note("Query", "");
+        q.tags.add(SystemTag.PERSISTENT_QUERY.value);
+        q.content.putAll(Map.of(ToolParam.QUERY_TEXT.getKey(), "q", ToolParam.MAX_RESULTS.getKey(), 2, ToolParam.MIN_SIMILARITY.getKey(), 0.5));
+        query = core.saveNote(q).id;
+        Cores.await(() -> results().size() == 2);
+    }
+
+    private void save(String id, float x, float y) {
+        var n = new Note(id, id);
+        n.id = id;
+        n.embeddingV1 = new float[]{x, y};
+        core.saveNote(n);
+    }
+
+    private List<?> results() {
+        return core.notes.get(query).map(n -> n.content.get(ContentKey.RESULTS.getKey())).filter(List.class::isInstance).map(List.class::cast).orElse(List.of());
+    }
+
+    private List<Object> ids() {
+        return results().stream().map(r -> ((Map<?, ?>) r).get(NoteProperty.ID.getKey())).map(Object.class::cast).toList();
+    }
+
+    @Test
+    void keepsTheBestMatches() {
+        assertEquals(List.of("a", "b"), ids());
+    }
+
+    @Test
+    void promotesBetterMatches() throws InterruptedException {
+        save("c", 1, 0);
+        Cores.await(() -> ids().equals(List.of("c", "a")));
+    }
+
+    @Test
+    void backfillsWhenAMemberStopsMatching() throws InterruptedException {
+        save("a", 0, 1);
+        Cores.await(() -> ids().equals(List.of("b", "c")));
+    }
+
+    @Test
+    void backfillsWhenAMemberScoresLower() throws InterruptedException {
+        save("a", 1, 1.2f);
+        Cores.await(() -> ids().equals(List.of("b", "c")));
+    }
+
+    @Test
+    void refillsWhenAMemberIsDeleted() throws InterruptedException {
+        core.deleteNote("a");
+        Cores.await(() -> ids().equals(List.of("b", "c")));
+    }
+}
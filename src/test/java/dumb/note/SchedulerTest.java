@@ -0,0 +1,67 @@
+package dumb.note;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static dumb.note.Scheduler.Lane;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchedulerTest {
+    private final ArrayDeque<Runnable> workers = new ArrayDeque<>();
+    private final List<String> ran = new ArrayList<>();
+
+    private void submit(Scheduler s, Lane lane, int priority, String name) {
+        s.submit(lane, priority, () -> ran.add(name));
+    }
+
+    private void drain(int n) {
+        for (var i = 0; i < n && !workers.isEmpty(); i++) workers.poll().run();
+    }
+
+    @Test
+    void lanesShareSlotsByWeight() {
+        var s = new Scheduler(workers::add, 1);
+        for (var i = 0; i < 90; i++) {
+            submit(s, Lane.INTERACTIVE, 0, "i");
+            submit(s, Lane.BULK, 0, "b");
+        }
+        drain(90);
+        var bulk = ran.stream().filter("b"::equals).count();
+        assertTrue(bulk >= 5 && bulk <= 15, "bulk got " + bulk + " of 90");
+    }
+
+    @Test
+    void higherPriorityRunsFirstWithinALane() {
+        var s = new Scheduler(workers::add, 1);
+        submit(s, Lane.BULK, 0, "blocker");
+        submit(s, Lane.BULK, 1, "low");
+        submit(s, Lane.BULK, 5, "high");
+        submit(s, Lane.BULK, 3, "mid");
+        drain(4);
+        assertEquals(List.of("blocker", "high", "mid", "low"), ran);
+    }
+
+    @Test
+    void waitingAgesALaneAheadOfHeavierOnes() throws InterruptedException {
+        var s = new Scheduler(workers::add, 1);
+        submit(s, Lane.INTERACTIVE, 0, "blocker");
+        submit(s, Lane.BULK, 0, "old");
+        Thread.sleep(Scheduler.AGING_MS + 300);
+        for (var i = 0; i < 5; i++) submit(s, Lane.INTERACTIVE, 0, "new");
+        drain(2);
+        assertEquals(List.of("blocker", "old"), ran);
+    }
+
+    @Test
+    void reservedSlotsStayFreeForTheirLanes() {
+        var s = new Scheduler(workers::add, 8);
+        for (var i = 0; i < 20; i++) submit(s, Lane.BULK, 0, "b");
+        assertEquals(4, workers.size());
+        submit(s, Lane.INTERACTIVE, 0, "i");
+        submit(s, Lane.MESSAGE, 0, "m");
+        assertEquals(6, workers.size());
+    }
+}
@@ -0,0 +1,90 @@
+package dumb.note;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimersTest {
+    @TempDir
+    Path dir;
+    private Path log;
+    private Timers timers;
+
+    @BeforeEach
+    void setUp() {
+        log = dir.resolve("timers.jsonl");
+        timers = new Timers(null, log, Runnable::run);
+        timers.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        timers.stop();
+    }
+
+    @Test
+    void firesAfterTheDelay() throws InterruptedException {
+        var fired = new CountDownLatch(1);
+        var t0 = System.nanoTime();
+        timers.schedule(Duration.ofMillis(300), fired::countDown);
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) >= 200);
+    }
+
+    @Test
+    void firesZeroDelayTimersWithinATick() throws InterruptedException {
+        var fired = new CountDownLatch(1);
+        timers.schedule(Duration.ZERO, fired::countDown);
+        assertTrue(fired.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancelledTimersDoNotFire() throws InterruptedException {
+        var fired = new AtomicInteger();
+        var h = timers.schedule(Duration.ofMillis(200), fired::incrementAndGet);
+        assertTrue(timers.cancel(h.timerId()));
+        assertFalse(timers.cancel(h.timerId()));
+        Thread.sleep(500);
+        assertEquals(0, fired.get());
+    }
+
+    @Test
+    void holdsTimersBeyondTheWheel() {
+        var h = timers.schedule(Duration.ofDays(60), () -> {
+        });
+        assertEquals(1, timers.metrics().get("pending"));
+        assertTrue(timers.cancel(h.timerId()));
+        assertEquals(0, timers.metrics().get("pending"));
+    }
+
+    @Test
+    void restoresDurableTimers() {
+        var kept = timers.scheduleEvent("PING", Map.of("n", 1), Duration.ofHours(1));
+        var dropped = timers.scheduleEvent("PING", Map.of("n", 2), Duration.ofHours(2));
+        timers.cancel(dropped.timerId());
+        timers.stop();
+        timers = new Timers(null, log, Runnable::run);
+        assertEquals(1, timers.metrics().get("pending"));
+        assertTrue(timers.cancel(kept.timerId()));
+    }
+
+    @Test
+    void countsTimersThatFellDueWhileStopped() throws InterruptedException {
+        timers.stop();
+        var t = new Timers(null, log, Runnable::run);
+        t.scheduleEvent("PING", Map.of(), Duration.ofMillis(100));
+        Thread.sleep(300);
+        timers = new Timers(null, log, Runnable::run);
+        assertEquals(1L, timers.metrics().get("caughtUp"));
+    }
+}
@@ -0,0 +1,45 @@
+package dumb.note;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static dumb.note.Netention.Planner.PlanExecution;
+import static dumb.note.Netention.Planner.PlanStep;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TracesTest {
+    @Test
+    @SuppressWarnings("unchecked")
+    void goalPlansShareOneHandlerEntry() {
+        var traces = new Traces();
+        for (var i = 0; i < 10; i++) traces.plan(new PlanExecution("goal" + i, Map.of()), System.nanoTime()).end(true);
+        var handlers = (Map<String, Object>) traces.metrics().get("handlers");
+        assertEquals(1, handlers.size());
+        assertEquals(10L, ((Map<String, Object>) handlers.get("goal")).get("count"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void stepStatsAreBounded() {
+        var traces = new Traces();
+        for (var i = 0; i < 1000; i++) {
+            var s = traces.step(null, new PlanStep(), "TOOL_" + i, System.nanoTime());
+            s.start();
+            s.end(true);
+        }
+        var steps = (Map<String, Object>) traces.metrics().get("steps");
+        assertTrue(steps.size() <= 257);
+        assertTrue(steps.containsKey("other"));
+    }
+
+    @Test
+    void percentilesStayWithinABucket() {
+        var h = new Traces.Histogram();
+        for (var v = 1; v <= 1000; v++) h.record(v);
+        assertEquals(1000L, h.count());
+        var p50 = h.percentile(0.5);
+        assertTrue(p50 >= 500 && p50 <= 500 * 17 / 16, "p50 " + p50);
+        assertEquals(1000L, h.percentile(1.0));
+    }
+}